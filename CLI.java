@@ -1,16 +1,29 @@
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Kelsey McKenna
  */
 public class CLI {
 
+    /**
+     * The number of shards for the sharded engines.
+     */
+    static final int SHARDS = 4;
+
     /**
      * Loads words (lines) from the given file and inserts them into
      * a dictionary.
@@ -20,19 +33,167 @@ public class CLI {
      * @throws IOException if there was a problem opening/reading from the file
      */
     static DictionaryTree loadWords(File f) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(f))) {
-            String word;
-            DictionaryTree d = new DictionaryTree();
-            int popularity = 0;
-            while ((word = reader.readLine()) != null) {
-                d.insert(word, popularity++);   
+        return loadWords(f, new DictionaryTree());
+    }
+
+    /**
+     * Loads words (lines) from the given file, which may be gzipped, and
+     * inserts them into the given dictionary, so that any engine can be
+     * used. The file is streamed by WordLoader rather than read in one go.
+     *
+     * @param f the file from which the words will be loaded
+     * @param d the (empty) dictionary to insert the words into
+     * @return the dictionary with the words loaded from the given file
+     * @throws IOException if there was a problem opening/reading from the file
+     */
+    static <D extends Dictionary> D loadWords(File f, D d) throws IOException {
+        return new WordLoader(WordLoader.Format.LINES, false, null).load(f, d);
+    }
+
+    /**
+     * Loads words (lines) from the given file like loadWords, but builds
+     * the tree in parallel with DictionaryTree.build on the common
+     * fork-join pool.
+     *
+     * @param f the file from which the words will be loaded
+     * @return the dictionary with the words loaded from the given file
+     * @throws IOException if there was a problem opening/reading from the file
+     */
+    static DictionaryTree loadWordsParallel(File f) throws IOException {
+        return DictionaryTree.build(readLines(f), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads the lines of a UTF-8 file with a single bulk read, splitting
+     * them the same way as BufferedReader.readLine.
+     *
+     * @param f the file to read
+     * @return the lines of the file
+     * @throws IOException if there was a problem opening/reading from the file
+     */
+    static String[] readLines(File f) throws IOException {
+        CharBuffer text;
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) == -1) {
+                    break;
+                }
             }
+            bytes.flip();
+            text = StandardCharsets.UTF_8.decode(bytes);
+        }
 
-            return d;
-        }catch (FileNotFoundException e) {
-        	e.printStackTrace();
-			return null;
-		}
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.limit(); i++) {
+            char c = text.get(i);
+            if (c == '\n' || c == '\r') {
+                lines.add(text.subSequence(start, i).toString());
+                if (c == '\r' && i + 1 < text.limit() && text.get(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < text.limit()) {
+            lines.add(text.subSequence(start, text.limit()).toString());
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Loads words (lines) from the given UTF-8 file into a read-only DAWG,
+     * giving each word the same popularity as loadWords would (its line
+     * number, with later lines overriding earlier ones).
+     *
+     * @param f the file from which the words will be loaded
+     * @return the dictionary with the words loaded from the given file
+     * @throws IOException if there was a problem opening/reading from the file
+     */
+    static DawgDictionary loadDawg(File f) throws IOException {
+        String[] lines = readLines(f);
+        Map<String, Integer> popularities = new HashMap<>();
+        for (int popularity = 0; popularity < lines.length; popularity++) {
+            if (!lines[popularity].isEmpty()) {
+                popularities.put(lines[popularity], popularity);
+            }
+        }
+
+        List<String> words = new ArrayList<>(popularities.keySet());
+        Collections.sort(words);
+        DawgDictionary.Builder builder = new DawgDictionary.Builder();
+        for (String word : words) {
+            builder.add(word, popularities.get(word));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param engine the name of a dictionary engine, as given on the command line
+     * @return a new, empty dictionary of that kind
+     */
+    static Dictionary newDictionary(String engine) {
+        switch (engine) {
+        case "tree":
+            return new DictionaryTree();
+        case "compact":
+            return new CompactDictionaryTree();
+        case "radix":
+            return new RadixDictionaryTree();
+        case "concurrent":
+            return new ConcurrentDictionaryTree();
+        case "sharded-hash":
+            return new ShardedDictionary(ShardedDictionary.byHash(SHARDS), ForkJoinPool.commonPool());
+        case "sharded-range":
+            return new ShardedDictionary(ShardedDictionary.byRange(ShardedDictionary.DEFAULT_RANGES),
+                    ForkJoinPool.commonPool());
+        default:
+            throw new IllegalArgumentException("Unknown dictionary engine: " + engine);
+        }
+    }
+
+    /**
+     * Loads a dictionary of the given engine from a file, which is a
+     * snapshot for the "mapped" engine and a word list otherwise.
+     *
+     * @param f the file from which the dictionary will be loaded
+     * @param engine the name of a dictionary engine
+     * @return the loaded dictionary
+     * @throws IOException if there was a problem opening/reading from the file
+     */
+    static Dictionary load(File f, String engine) throws IOException {
+        switch (engine) {
+        case "tree":
+            return loadWordsParallel(f);
+        case "dawg":
+            return loadDawg(f);
+        case "mapped":
+            return MappedDictionary.open(f);
+        case "louds":
+            return LoudsDictionary.build(loadWordsParallel(f));
+        case "sharded-hash":
+        case "sharded-range":
+            return buildSharded(readLines(f), engine);
+        default:
+            return loadWords(f, newDictionary(engine));
+        }
+    }
+
+    /**
+     * Builds a sharded dictionary with SHARDS shards, split by hash for the
+     * "sharded-hash" engine and by balanced ranges of first characters for
+     * "sharded-range".
+     *
+     * @param words the words, most popular first
+     * @param engine the name of a sharded engine
+     * @return the dictionary
+     */
+    static ShardedDictionary buildSharded(String[] words, String engine) {
+        ShardedDictionary.Partitioner partitioner = engine.equals("sharded-hash")
+                ? ShardedDictionary.byHash(SHARDS)
+                : ShardedDictionary.byRange(ShardedDictionary.balancedRanges(words, SHARDS));
+        return ShardedDictionary.build(words, partitioner, ForkJoinPool.commonPool());
     }
 
     public static void main(String[] args) throws IOException {
@@ -69,11 +230,14 @@ public class CLI {
     	
         System.out.print("Loading dictionary ... ");
         
-        DictionaryTree d1 = loadWords(new File(args[0]));
+        String engine = args.length > 1 ? args[1] : "tree";
+        Dictionary d1 = load(new File(args[0]), engine);
         System.out.println("done");
 
-        System.out.println("Longest Word: " + d1.longestWord());
-        System.out.println("Maximum Branching: " + d1.maximumBranching());
+        if (d1 instanceof DictionaryTree) {
+            System.out.println("Longest Word: " + ((DictionaryTree) d1).longestWord());
+            System.out.println("Maximum Branching: " + ((DictionaryTree) d1).maximumBranching());
+        }
         
         System.out.println("\nEnter prefixes for prediction below.");
 
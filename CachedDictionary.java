@@ -0,0 +1,111 @@
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Puts a PredictionCache in front of another dictionary's predict(prefix, n),
+ * for engines (or values of n) where predicting costs more than a hash lookup.
+ * Prefix queries follow a power law, so a cache of a few thousand entries
+ * answers most of them.
+ *
+ * insert and remove go to the dictionary and then drop only the cached
+ * predictions for prefixes of the word they changed, as no other prediction can
+ * be affected. Changes made to the dictionary in other ways (such as
+ * DictionaryTree.applySelections) need invalidateAll().
+ *
+ * The cached lists can't be modified. The cache is thread-safe, so this is as
+ * thread-safe as the dictionary it wraps.
+ */
+public class CachedDictionary implements Dictionary {
+
+	private final Dictionary dictionary;
+	private final PredictionCache cache;
+
+	/**
+	 * @param dictionary
+	 *            the dictionary to cache the predictions of
+	 * @param cache
+	 *            an empty cache
+	 */
+	CachedDictionary(Dictionary dictionary, PredictionCache cache) {
+		assert (dictionary != null && cache != null);
+
+		this.dictionary = dictionary;
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the cache, for its statistics
+	 */
+	PredictionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Drops every cached prediction.
+	 */
+	void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public void insert(String word) {
+		dictionary.insert(word);
+		cache.invalidate(word);
+	}
+
+	@Override
+	public void insert(String word, int popularity) {
+		dictionary.insert(word, popularity);
+		cache.invalidate(word);
+	}
+
+	@Override
+	public boolean remove(String word) {
+		boolean deleted = dictionary.remove(word);
+		cache.invalidate(word);
+		return deleted;
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return dictionary.contains(word);
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		return dictionary.isPrefix(word);
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		return dictionary.predict(prefix);
+	}
+
+	/**
+	 * Predicts from the cache, or from the dictionary (caching the result) if it
+	 * doesn't have the prediction.
+	 */
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (prefix != null);
+		assert (n >= 0);
+
+		if (n == 0) {
+			return dictionary.predict(prefix, n);
+		}
+		List<String> words = cache.get(prefix, n);
+		if (words != null) {
+			return words;
+		}
+		long version = cache.version();
+		words = dictionary.predict(prefix, n);
+		cache.put(prefix, n, words, version);
+		return words;
+	}
+
+	@Override
+	public List<String> allWords() {
+		return dictionary.allWords();
+	}
+
+}
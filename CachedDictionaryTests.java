@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class CachedDictionaryTests {
+
+	private static final String[] WORDS = { "the", "then", "there", "these", "theme", "tea", "team", "tear", "to",
+			"toe", "token", "a", "apple", "banana", "band", "zebra" };
+
+	private static DictionaryTree tree() {
+		DictionaryTree tree = new DictionaryTree();
+		for (int i = 0; i < WORDS.length; i++) {
+			tree.insert(WORDS[i], i);
+		}
+		return tree;
+	}
+
+	@Test
+	public void shouldAnswerLikeTheDictionaryWithEitherPolicy() {
+		for (PredictionCache.Policy policy : PredictionCache.Policy.values()) {
+			DictionaryTree expected = tree();
+			CachedDictionary unit = new CachedDictionary(tree(), PredictionCache.ofEntries(100, policy));
+			for (int round = 0; round < 2; round++) {
+				// Larger n first, so that smaller ones are answered from the same entry
+				for (int n : new int[] { 20, 5, 3, 1, 0 }) {
+					for (String prefix : Arrays.asList("", "t", "th", "the", "tea", "b", "x")) {
+						Assertions.assertEquals(expected.predict(prefix, n), unit.predict(prefix, n), prefix + " " + n);
+					}
+				}
+			}
+			Assertions.assertEquals(7, unit.getCache().size());
+			Assertions.assertEquals(7, unit.getCache().misses());
+			Assertions.assertEquals(7 * 7, unit.getCache().hits());
+		}
+	}
+
+	@Test
+	public void shouldMissForMoreWordsThanCached() {
+		CachedDictionary unit = new CachedDictionary(tree(), PredictionCache.ofEntries(100, PredictionCache.Policy.LRU));
+		Assertions.assertEquals(Arrays.asList("the", "then"), unit.predict("th", 2));
+		Assertions.assertEquals(Arrays.asList("the", "then", "there"), unit.predict("th", 3));
+		Assertions.assertEquals(2, unit.getCache().misses());
+		// Only 5 words start with th, so the prediction for 10 answers any n
+		Assertions.assertEquals(5, unit.predict("th", 10).size());
+		Assertions.assertEquals(5, unit.predict("th", 50).size());
+		Assertions.assertEquals(3, unit.getCache().misses());
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> unit.predict("th", 5).add("thaw"));
+	}
+
+	@Test
+	public void shouldInvalidateOnlyThePrefixesOfAChangedWord() {
+		CachedDictionary unit = new CachedDictionary(tree(),
+				PredictionCache.ofEntries(100, PredictionCache.Policy.TINY_LFU));
+		List<String> prefixes = Arrays.asList("", "t", "te", "tea", "th", "to", "b");
+		for (String prefix : prefixes) {
+			unit.predict(prefix, 5);
+		}
+
+		unit.insert("teak", -1);
+		for (String prefix : prefixes) {
+			Assertions.assertEquals(!"tea".startsWith(prefix), unit.getCache().isCached(prefix), prefix);
+		}
+		Assertions.assertEquals("teak", unit.predict("te", 1).get(0));
+		Assertions.assertEquals("teak", unit.predict("", 1).get(0));
+
+		unit.predict("tea", 5);
+		unit.remove("teak");
+		Assertions.assertFalse(unit.getCache().isCached("tea"));
+		Assertions.assertTrue(unit.getCache().isCached("th"));
+		Assertions.assertEquals(Arrays.asList("tea", "team", "tear"), unit.predict("tea", 5));
+		Assertions.assertEquals(7, unit.getCache().invalidations());
+
+		unit.invalidateAll();
+		Assertions.assertEquals(0, unit.getCache().size());
+	}
+
+	@Test
+	public void shouldNotCacheAPredictionMadeBeforeAnInvalidation() {
+		PredictionCache unit = PredictionCache.ofEntries(100, PredictionCache.Policy.LRU);
+		long version = unit.version();
+		unit.invalidate("word");
+		unit.put("wo", 5, Arrays.asList("word"), version);
+		Assertions.assertFalse(unit.isCached("wo"));
+		unit.put("wo", 5, Arrays.asList("word"), unit.version());
+		Assertions.assertTrue(unit.isCached("wo"));
+	}
+
+	@Test
+	public void shouldStayWithinItsBounds() {
+		for (PredictionCache.Policy policy : PredictionCache.Policy.values()) {
+			PredictionCache entries = PredictionCache.ofEntries(50, policy);
+			PredictionCache bytes = PredictionCache.ofBytes(10_000, policy);
+			List<String> words = Arrays.asList("one", "two", "three");
+			for (int i = 0; i < 1000; i++) {
+				String prefix = Integer.toString(i % 300);
+				if (entries.get(prefix, 3) == null) {
+					entries.put(prefix, 3, words, entries.version());
+				}
+				if (bytes.get(prefix, 3) == null) {
+					bytes.put(prefix, 3, words, bytes.version());
+				}
+				Assertions.assertTrue(entries.size() <= 50);
+				Assertions.assertTrue(bytes.weight() <= 10_000);
+			}
+			Assertions.assertEquals(50, entries.size());
+			Assertions.assertTrue(bytes.weight() > 10_000 - 2 * PredictionCache.weigh("100", words), policy.name());
+			Assertions.assertTrue(entries.evictions() > 0);
+		}
+		PredictionCache tiny = PredictionCache.ofEntries(1, PredictionCache.Policy.TINY_LFU);
+		tiny.put("a", 1, Arrays.asList("a"), tiny.version());
+		tiny.put("b", 1, Arrays.asList("b"), tiny.version());
+		Assertions.assertEquals(1, tiny.size());
+	}
+
+	@Test
+	public void aRejectedCandidateShouldNotEvictAnything() {
+		List<String> small = Arrays.asList("a");
+		List<String> medium = Arrays.asList("c", "c", "c", "c", "c");
+		List<String> large = Arrays.asList("c", "c", "c", "c", "c", "c", "c", "c", "c", "c");
+		// Room for the two victims but not for the candidate as well, unless both go
+		long main = PredictionCache.weigh("v1", small) + PredictionCache.weigh("v2", large) + 100;
+		Assertions.assertTrue(PredictionCache.weigh("c", medium) - 100 > PredictionCache.weigh("v1", small));
+		for (boolean frequent : new boolean[] { false, true }) {
+			PredictionCache unit = PredictionCache.ofBytes(main * 100 / 99 + 1, PredictionCache.Policy.TINY_LFU);
+			unit.put("v1", 1, small, unit.version());
+			for (int i = 0; i < 10; i++) {
+				unit.get("v2", 1);
+			}
+			unit.put("v2", 10, large, unit.version());
+			for (int i = 0; i < (frequent ? 20 : 3); i++) {
+				unit.get("c", 5);
+			}
+			unit.put("c", 5, medium, unit.version());
+
+			// Unless the candidate beats both victims, neither is evicted for it
+			Assertions.assertEquals(!frequent, unit.isCached("v1"));
+			Assertions.assertEquals(!frequent, unit.isCached("v2"));
+			Assertions.assertEquals(frequent, unit.isCached("c"));
+			Assertions.assertEquals(frequent ? 2 : 1, unit.evictions());
+		}
+	}
+
+	@Test
+	public void shouldKeepFrequentPrefixesThroughAScan() {
+		// A few prefixes asked for all the time, interrupted by a long run of
+		// prefixes asked for once each
+		int[] hits = new int[2];
+		PredictionCache.Policy[] policies = { PredictionCache.Policy.LRU, PredictionCache.Policy.TINY_LFU };
+		for (int p = 0; p < policies.length; p++) {
+			PredictionCache unit = PredictionCache.ofEntries(100, policies[p]);
+			for (int round = 0; round < 20; round++) {
+				for (int i = 0; i < 50; i++) {
+					lookup(unit, "hot" + i);
+				}
+			}
+			for (int i = 0; i < 500; i++) {
+				lookup(unit, "scan" + i);
+			}
+			unit.resetStatistics();
+			for (int i = 0; i < 50; i++) {
+				lookup(unit, "hot" + i);
+			}
+			hits[p] = (int) unit.hits();
+		}
+		Assertions.assertEquals(0, hits[0]);
+		// The sketch can overestimate a scanned prefix that collides with hot ones,
+		// letting it in at a hot prefix's expense
+		Assertions.assertTrue(hits[1] >= 45, Integer.toString(hits[1]));
+	}
+
+	private static void lookup(PredictionCache cache, String prefix) {
+		if (cache.get(prefix, 1) == null) {
+			cache.put(prefix, 1, Arrays.asList(prefix), cache.version());
+		}
+	}
+
+	@Test
+	public void shouldEstimateFrequencies() {
+		PredictionCache.FrequencySketch unit = new PredictionCache.FrequencySketch(1000);
+		for (int i = 0; i < 10; i++) {
+			unit.increment("often");
+		}
+		unit.increment("once");
+		Assertions.assertTrue(unit.frequency("often") >= 10);
+		Assertions.assertTrue(unit.frequency("once") >= 1);
+		Assertions.assertTrue(unit.frequency("often") > unit.frequency("once"));
+		for (int i = 0; i < 100; i++) {
+			unit.increment("often");
+		}
+		Assertions.assertEquals(15, unit.frequency("often"));
+		// Enough other increments to halve every counter
+		for (int i = 0; i < 10_000; i++) {
+			unit.increment(i);
+		}
+		Assertions.assertTrue(unit.frequency("often") < 15);
+	}
+
+}
@@ -0,0 +1,36 @@
+/**
+ * An entry in the queue used by predict(prefix, n). Either a whole subtree,
+ * ranked by the best popularity in it, or (when node is null) a single word.
+ *
+ * @param <N>
+ *            the type used by the engine to refer to a node
+ */
+class Candidate<N> implements Comparable<Candidate<N>> {
+
+	final N node;
+	final String word;
+	final int popularity;
+
+	Candidate(N node, String word, int popularity) {
+		this.node = node;
+		this.word = word;
+		this.popularity = popularity;
+	}
+
+	/**
+	 * Subtrees come before words of the same popularity, so that every word with
+	 * that popularity is in the queue before any of them is taken out and they can
+	 * be ordered alphabetically, matching DictionaryTree.RANKING.
+	 */
+	@Override
+	public int compareTo(Candidate<N> other) {
+		if (popularity != other.popularity) {
+			return Integer.compare(popularity, other.popularity);
+		}
+		if ((node == null) != (other.node == null)) {
+			return node == null ? 1 : -1;
+		}
+		return word.compareTo(other.word);
+	}
+
+}
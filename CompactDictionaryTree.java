@@ -0,0 +1,348 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * A dictionary with the same behaviour as DictionaryTree, but stored in flat
+ * primitive arrays instead of one object (and one LinkedHashMap) per node. A
+ * node is an index into the arrays, and the children of a node are a linked
+ * list running through firstChild and nextSibling, kept in insertion order like
+ * the LinkedHashMap in DictionaryTree.
+ */
+public class CompactDictionaryTree implements Dictionary {
+
+	/**
+	 * Marks a missing child or sibling.
+	 */
+	static final int NONE = -1;
+
+	private static final int ROOT = 0;
+
+	private int[] firstChild;
+	private int[] nextSibling;
+	private char[] label;
+	/**
+	 * The popularity of each node's word. Words inserted without one get 0, as
+	 * DictionaryTree ranks its Optional.empty() the same as 0, so every int is
+	 * free to be a popularity.
+	 */
+	private int[] popularity;
+
+	/**
+	 * The best (lowest) popularity of any word in each node's subtree, used to
+	 * order the best-first search in predict(prefix, n).
+	 */
+	private int[] best;
+
+	private BitSet wordEnd = new BitSet();
+
+	/**
+	 * The number of array slots used so far, including freed ones.
+	 */
+	private int used = 0;
+
+	/**
+	 * Slots of removed nodes, linked through nextSibling so they can be reused.
+	 */
+	private int free = NONE;
+	private int freeCount = 0;
+
+	public CompactDictionaryTree() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of nodes to allocate space for up front
+	 */
+	public CompactDictionaryTree(int capacity) {
+		assert (capacity > 0);
+		firstChild = new int[capacity];
+		nextSibling = new int[capacity];
+		label = new char[capacity];
+		popularity = new int[capacity];
+		best = new int[capacity];
+		newNode('\0');
+	}
+
+	@Override
+	public void insert(String word) {
+		assert (word != null);
+		inserting(word, 0, false);
+	}
+
+	@Override
+	public void insert(String word, int popularity) {
+		assert (word != null);
+		inserting(word, popularity, true);
+	}
+
+	private void inserting(String word, int newPopularity, boolean overwrite) {
+		if (word.isEmpty()) {
+			return;
+		}
+
+		int[] path = new int[word.length() + 1];
+		path[0] = ROOT;
+		for (int i = 0; i < word.length(); i++) {
+			int child = getChild(path[i], word.charAt(i));
+			if (child == NONE) {
+				child = addChild(path[i], word.charAt(i));
+			}
+			path[i + 1] = child;
+		}
+
+		int end = path[word.length()];
+		if (wordEnd.get(end) && !overwrite) {
+			return;
+		}
+		boolean worse = wordEnd.get(end) && newPopularity > popularity[end];
+		if (overwrite || !wordEnd.get(end)) {
+			popularity[end] = newPopularity;
+		}
+		wordEnd.set(end);
+
+		if (worse) {
+			updateBest(path, word.length());
+		} else {
+			for (int node : path) {
+				best[node] = Math.min(best[node], popularity[end]);
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(String word) {
+		assert (word != null);
+
+		int[] path = getPath(word);
+		if (path == null || !wordEnd.get(path[word.length()])) {
+			return false;
+		}
+
+		int end = path[word.length()];
+		wordEnd.clear(end);
+		popularity[end] = 0;
+
+		// Delete nodes from the end of the word until one is still needed
+		int depth = word.length();
+		while (depth > 0 && firstChild[path[depth]] == NONE && !wordEnd.get(path[depth])) {
+			unlink(path[depth - 1], path[depth]);
+			depth--;
+		}
+
+		updateBest(path, depth);
+		return depth < word.length();
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		int node = getNode(word);
+		return node != NONE && wordEnd.get(node);
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return getNode(word) != NONE;
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		int node = getNode(prefix);
+		if (node == NONE) {
+			return Optional.empty();
+		}
+		StringBuilder word = new StringBuilder(prefix);
+		while (firstChild[node] != NONE && !wordEnd.get(node)) {
+			node = firstChild[node];
+			word.append(label[node]);
+		}
+		return Optional.of(word.toString());
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (n >= 0);
+		assert (prefix != null);
+
+		List<String> sortedList = new LinkedList<String>();
+		int node = getNode(prefix);
+		if (node == NONE || best[node] == Integer.MAX_VALUE) {
+			return sortedList;
+		}
+
+		// The same best-first search as DictionaryTree.predict(prefix, n), using the
+		// best array in place of the cached completions
+		PriorityQueue<Candidate<Integer>> queue = new PriorityQueue<Candidate<Integer>>();
+		queue.add(new Candidate<Integer>(node, prefix, best[node]));
+		while (!queue.isEmpty() && sortedList.size() < n) {
+			Candidate<Integer> next = queue.poll();
+			if (next.node == null) {
+				sortedList.add(next.word);
+				continue;
+			}
+			if (wordEnd.get(next.node)) {
+				queue.add(new Candidate<Integer>(null, next.word, popularity[next.node]));
+			}
+			for (int c = firstChild[next.node]; c != NONE; c = nextSibling[c]) {
+				queue.add(new Candidate<Integer>(c, next.word + label[c], best[c]));
+			}
+		}
+		return sortedList;
+	}
+
+	@Override
+	public List<String> allWords() {
+		LinkedList<String> list = new LinkedList<String>();
+		allWords(ROOT, new StringBuilder(), list);
+		return list;
+	}
+
+	private void allWords(int node, StringBuilder prefix, LinkedList<String> words) {
+		for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+			prefix.append(label[c]);
+			if (wordEnd.get(c)) {
+				words.add(prefix.toString());
+			}
+			allWords(c, prefix, words);
+			prefix.setLength(prefix.length() - 1);
+		}
+	}
+
+	/**
+	 * @return the number of nodes in this tree, counting the root like
+	 *         DictionaryTree.size()
+	 */
+	int size() {
+		return used - freeCount;
+	}
+
+	/**
+	 * Shrinks the arrays to the number of slots in use, e.g. once a dictionary has
+	 * been loaded and won't grow much further.
+	 */
+	void trimToSize() {
+		resize(used);
+	}
+
+	/**
+	 * @return the node reached by following word from the root, or NONE
+	 */
+	private int getNode(String word) {
+		int node = ROOT;
+		for (int i = 0; i < word.length() && node != NONE; i++) {
+			node = getChild(node, word.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * @return the nodes from the root to the end of word, or null if word isn't a
+	 *         prefix in this tree
+	 */
+	private int[] getPath(String word) {
+		int[] path = new int[word.length() + 1];
+		path[0] = ROOT;
+		for (int i = 0; i < word.length(); i++) {
+			path[i + 1] = getChild(path[i], word.charAt(i));
+			if (path[i + 1] == NONE) {
+				return null;
+			}
+		}
+		return path;
+	}
+
+	private int getChild(int node, char c) {
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if (label[child] == c) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Adds a child after the existing children of node, keeping insertion order.
+	 */
+	private int addChild(int node, char c) {
+		int child = newNode(c);
+		if (firstChild[node] == NONE) {
+			firstChild[node] = child;
+		} else {
+			int last = firstChild[node];
+			while (nextSibling[last] != NONE) {
+				last = nextSibling[last];
+			}
+			nextSibling[last] = child;
+		}
+		return child;
+	}
+
+	private void unlink(int parent, int child) {
+		if (firstChild[parent] == child) {
+			firstChild[parent] = nextSibling[child];
+		} else {
+			int previous = firstChild[parent];
+			while (nextSibling[previous] != child) {
+				previous = nextSibling[previous];
+			}
+			nextSibling[previous] = nextSibling[child];
+		}
+		nextSibling[child] = free;
+		free = child;
+		freeCount++;
+	}
+
+	private int newNode(char c) {
+		int node;
+		if (free != NONE) {
+			node = free;
+			free = nextSibling[node];
+			freeCount--;
+		} else {
+			if (used == firstChild.length) {
+				resize(used * 2);
+			}
+			node = used++;
+		}
+		firstChild[node] = NONE;
+		nextSibling[node] = NONE;
+		label[node] = c;
+		popularity[node] = 0;
+		best[node] = Integer.MAX_VALUE;
+		wordEnd.clear(node);
+		return node;
+	}
+
+	private void resize(int capacity) {
+		firstChild = Arrays.copyOf(firstChild, capacity);
+		nextSibling = Arrays.copyOf(nextSibling, capacity);
+		label = Arrays.copyOf(label, capacity);
+		popularity = Arrays.copyOf(popularity, capacity);
+		best = Arrays.copyOf(best, capacity);
+	}
+
+	/**
+	 * Recalculates best for path[depth] up to the root, from each node's own word
+	 * and its children.
+	 */
+	private void updateBest(int[] path, int depth) {
+		for (int i = depth; i >= 0; i--) {
+			int node = path[i];
+			int b = wordEnd.get(node) ? popularity[node] : Integer.MAX_VALUE;
+			for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+				b = Math.min(b, best[c]);
+			}
+			best[node] = b;
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class CompactDictionaryTreeTests {
+
+	@Test
+	public void containsShouldOnlyMatchWholeWords() {
+		CompactDictionaryTree unit = new CompactDictionaryTree();
+		unit.insert("yellow");
+		Assertions.assertTrue(unit.contains("yellow"));
+		Assertions.assertFalse(unit.contains("yell"));
+		Assertions.assertTrue(unit.isPrefix("yell"));
+		Assertions.assertFalse(unit.contains(""));
+	}
+
+	@Test
+	public void removeShouldDeleteOnlyTheNodesNoOtherWordUses() {
+		CompactDictionaryTree unit = new CompactDictionaryTree();
+		unit.insert("word");
+		unit.insert("worded");
+		unit.insert("wore");
+		Assertions.assertFalse(unit.remove("word")); // Only unmarked, "worded" still uses the nodes
+		Assertions.assertEquals(8, unit.size());
+		Assertions.assertTrue(unit.remove("worded")); // Takes the unmarked "d" of "word" with it
+		Assertions.assertEquals(5, unit.size());
+		Assertions.assertFalse(unit.contains("word"));
+		Assertions.assertTrue(unit.contains("wore"));
+	}
+
+	@Test
+	public void removedNodesShouldBeReused() {
+		CompactDictionaryTree unit = new CompactDictionaryTree();
+		unit.insert("feature");
+		unit.remove("feature");
+		unit.insert("femur");
+		Assertions.assertEquals(6, unit.size());
+		Assertions.assertEquals(Optional.of("femur"), unit.predict("f"));
+	}
+
+	@Test
+	public void predictWithPopularityShouldMatchDictionaryTree() {
+		CompactDictionaryTree unit = new CompactDictionaryTree();
+		DictionaryTree tree = new DictionaryTree();
+		String[] words = { "teleport", "telepath", "teleportation", "telekinetic", "telephone", "tele" };
+		int[] popularities = { 100, 32, 79, 89, 378, 50 };
+		for (int i = 0; i < words.length; i++) {
+			unit.insert(words[i], popularities[i]);
+			tree.insert(words[i], popularities[i]);
+		}
+		unit.insert("telepath", 400);
+		tree.insert("telepath", 400);
+
+		for (int n = 0; n <= words.length + 1; n++) {
+			Assertions.assertEquals(tree.predict("tele", n), unit.predict("tele", n));
+		}
+		List<String> all = unit.allWords();
+		Assertions.assertEquals(tree.allWords(), all);
+	}
+
+	@Test
+	public void extremePopularitiesShouldMatchDictionaryTree() {
+		CompactDictionaryTree unit = new CompactDictionaryTree();
+		DictionaryTree tree = new DictionaryTree();
+		for (Dictionary d : new Dictionary[] { unit, tree }) {
+			d.insert("ten", 5);
+			d.insert("tea");
+			d.insert("tee", Integer.MIN_VALUE);
+			d.insert("toe", Integer.MAX_VALUE);
+			d.insert("tee"); // Keeps its popularity
+			d.insert("tan", 0);
+			d.insert("tin", -1);
+		}
+		Assertions.assertEquals(Arrays.asList("tee", "tin", "tan", "tea", "ten", "toe"), tree.predict("t", 10));
+		for (int n = 0; n <= 7; n++) {
+			Assertions.assertEquals(tree.predict("t", n), unit.predict("t", n));
+		}
+		Assertions.assertEquals(tree.predict("t"), unit.predict("t"));
+		unit.remove("tee");
+		tree.remove("tee");
+		Assertions.assertEquals(tree.predict("t", 10), unit.predict("t", 10));
+	}
+
+}
@@ -0,0 +1,368 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A thread-safe dictionary for many readers and occasional writers. Nodes are
+ * immutable: a write copies the nodes on the path to the word (reusing every
+ * other subtree) and then swaps in the new root with a compare-and-set,
+ * retrying if another write got there first. A reader takes the root once and
+ * works on that version of the tree, so reads never lock or wait, and every
+ * insert and remove takes effect at the moment its root is swapped in.
+ *
+ * Like DictionaryTree, every node caches the TOP_K most popular words below it,
+ * so predict(prefix, n) for small n just reads the node for the prefix. The
+ * cache is rebuilt for each copied node from its children's caches.
+ */
+public class ConcurrentDictionaryTree implements Dictionary {
+
+	private final AtomicReference<Node> root;
+
+	public ConcurrentDictionaryTree() {
+		this(Node.EMPTY);
+	}
+
+	private ConcurrentDictionaryTree(Node root) {
+		this.root = new AtomicReference<>(root);
+	}
+
+	/**
+	 * Copies a DictionaryTree in one pass, which is much quicker than inserting
+	 * its words one by one as no path is copied more than once.
+	 *
+	 * @param tree
+	 *            the dictionary to copy
+	 * @return a ConcurrentDictionaryTree with the same words, ranks and order
+	 */
+	static ConcurrentDictionaryTree copyOf(DictionaryTree tree) {
+		return new ConcurrentDictionaryTree(copy(tree, new StringBuilder()));
+	}
+
+	private static Node copy(DictionaryTree d, StringBuilder path) {
+		Map<Character, DictionaryTree> children = d.getChildren();
+		char[] labels = new char[children.size()];
+		Node[] copies = new Node[children.size()];
+		int i = 0;
+		for (Entry<Character, DictionaryTree> child : children.entrySet()) {
+			labels[i] = child.getKey();
+			path.append(labels[i]);
+			copies[i++] = copy(child.getValue(), path);
+			path.setLength(path.length() - 1);
+		}
+		// The tree's cached completions are already the right ones
+		return new Node(labels, copies, d.wordEnd ? new Word<String, Integer>(path.toString(), d.rank()) : null,
+				Collections.unmodifiableList(new ArrayList<>(d.getTopK())));
+	}
+
+	/**
+	 * @return a dictionary holding the words in this one right now, which later
+	 *         writes to either of them don't affect; this takes O(1) as they share
+	 *         their (immutable) nodes
+	 */
+	ConcurrentDictionaryTree snapshot() {
+		return new ConcurrentDictionaryTree(root.get());
+	}
+
+	/**
+	 * Calls action with every word and its popularity, in the same order as
+	 * allWords(), all from the same version of the tree.
+	 *
+	 * @param action
+	 *            the action to call for each word
+	 */
+	void forEachWord(ObjIntConsumer<String> action) {
+		forEachWord(root.get(), action);
+	}
+
+	private static void forEachWord(Node node, ObjIntConsumer<String> action) {
+		for (Node child : node.children) {
+			if (child.entry != null) {
+				action.accept(child.entry.getKey(), child.entry.getValue());
+			}
+			forEachWord(child, action);
+		}
+	}
+
+	@Override
+	public void insert(String word) {
+		assert (word != null);
+
+		if (word.isEmpty()) {
+			return;
+		}
+		update(word, Optional.empty(), false);
+	}
+
+	@Override
+	public void insert(String word, int popularity) {
+		assert (word != null);
+
+		if (word.isEmpty()) {
+			return;
+		}
+		update(word, Optional.of(popularity), false);
+	}
+
+	@Override
+	public boolean remove(String word) {
+		assert (word != null);
+
+		if (word.isEmpty()) {
+			return false;
+		}
+		return update(word, Optional.empty(), true);
+	}
+
+	/**
+	 * Copies the path to word with the word inserted or removed, and swaps the new
+	 * root in, retrying until no other write has changed the root in between.
+	 *
+	 * @return for a removal, whether any nodes were deleted
+	 */
+	private boolean update(String word, Optional<Integer> popularity, boolean remove) {
+		while (true) {
+			Node current = root.get();
+
+			Node[] path = new Node[word.length() + 1];
+			path[0] = current;
+			for (int i = 0; i < word.length() && path[i] != null; i++) {
+				path[i + 1] = path[i].getChild(word.charAt(i));
+			}
+			Node end = path[word.length()];
+
+			Node replacement;
+			if (remove) {
+				if (end == null || end.entry == null) {
+					return false;
+				}
+				replacement = end.withEntry(null);
+			} else {
+				if (end != null && end.entry != null && !popularity.isPresent()) {
+					return false;
+				}
+				int rank = popularity.orElse(0);
+				replacement = (end == null ? Node.EMPTY : end).withEntry(new Word<String, Integer>(word, rank));
+			}
+
+			// Copy each ancestor, dropping children that no longer hold any words
+			boolean deleted = false;
+			for (int i = word.length() - 1; i >= 0; i--) {
+				if (replacement.isEmpty()) {
+					deleted = true;
+					replacement = path[i].withChild(word.charAt(i), null);
+				} else {
+					replacement = (path[i] == null ? Node.EMPTY : path[i]).withChild(word.charAt(i), replacement);
+				}
+			}
+
+			if (root.compareAndSet(current, replacement)) {
+				return deleted;
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		Node node = getNode(root.get(), word);
+		return node != null && node.entry != null;
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return getNode(root.get(), word) != null;
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		Node node = getNode(root.get(), prefix);
+		if (node == null) {
+			return Optional.empty();
+		}
+		StringBuilder word = new StringBuilder(prefix);
+		while (node.children.length > 0 && node.entry == null) {
+			word.append(node.labels[0]);
+			node = node.children[0];
+		}
+		return Optional.of(word.toString());
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (n >= 0);
+		assert (prefix != null);
+
+		List<String> sortedList = new LinkedList<String>();
+		Node node = getNode(root.get(), prefix);
+		if (node == null || node.topK.isEmpty()) {
+			return sortedList;
+		}
+		if (n <= DictionaryTree.TOP_K) {
+			for (int i = 0; i < n && i < node.topK.size(); i++) {
+				sortedList.add(node.topK.get(i).getKey());
+			}
+			return sortedList;
+		}
+
+		// The same best-first search as DictionaryTree.predict(prefix, n)
+		PriorityQueue<Candidate<Node>> queue = new PriorityQueue<Candidate<Node>>();
+		queue.add(new Candidate<Node>(node, prefix, node.bestPopularity()));
+		while (!queue.isEmpty() && sortedList.size() < n) {
+			Candidate<Node> next = queue.poll();
+			if (next.node == null) {
+				sortedList.add(next.word);
+				continue;
+			}
+			if (next.node.entry != null) {
+				queue.add(new Candidate<Node>(null, next.word, next.node.entry.getValue()));
+			}
+			for (int i = 0; i < next.node.children.length; i++) {
+				Node child = next.node.children[i];
+				queue.add(new Candidate<Node>(child, next.word + next.node.labels[i], child.bestPopularity()));
+			}
+		}
+		return sortedList;
+	}
+
+	@Override
+	public List<String> allWords() {
+		LinkedList<String> list = new LinkedList<String>();
+		allWords(root.get(), list);
+		return list;
+	}
+
+	private static void allWords(Node node, LinkedList<String> words) {
+		for (Node child : node.children) {
+			if (child.entry != null) {
+				words.add(child.entry.getKey());
+			}
+			allWords(child, words);
+		}
+	}
+
+	private static Node getNode(Node node, String word) {
+		for (int i = 0; i < word.length() && node != null; i++) {
+			node = node.getChild(word.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * An immutable node. Its children are kept in insertion order, like the
+	 * LinkedHashMap in DictionaryTree.
+	 */
+	static final class Node {
+
+		static final Node EMPTY = new Node(new char[0], new Node[0], null);
+
+		final char[] labels;
+		final Node[] children;
+
+		/**
+		 * The word ending at this node and its popularity, or null if no word ends
+		 * here.
+		 */
+		final Word<String, Integer> entry;
+
+		/**
+		 * The (at most) TOP_K most popular words in this subtree, sorted by
+		 * DictionaryTree.RANKING.
+		 */
+		final List<Word<String, Integer>> topK;
+
+		private Node(char[] labels, Node[] children, Word<String, Integer> entry) {
+			this(labels, children, entry, merge(entry, children));
+		}
+
+		private Node(char[] labels, Node[] children, Word<String, Integer> entry, List<Word<String, Integer>> topK) {
+			this.labels = labels;
+			this.children = children;
+			this.entry = entry;
+			this.topK = topK;
+		}
+
+		private static List<Word<String, Integer>> merge(Word<String, Integer> entry, Node[] children) {
+			List<Word<String, Integer>> merged = new ArrayList<>();
+			if (entry != null) {
+				merged.add(entry);
+			}
+			for (Node child : children) {
+				merged.addAll(child.topK);
+			}
+			merged.sort(DictionaryTree.RANKING);
+			return Collections.unmodifiableList(
+					new ArrayList<>(merged.subList(0, Math.min(DictionaryTree.TOP_K, merged.size()))));
+		}
+
+		Node getChild(char c) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return a copy of this node with the given word entry
+		 */
+		Node withEntry(Word<String, Integer> entry) {
+			return new Node(labels, children, entry);
+		}
+
+		/**
+		 * @return a copy of this node where the child for c is replaced by child
+		 *         (added at the end if there wasn't one, or removed if child is null)
+		 */
+		Node withChild(char c, Node child) {
+			int index = 0;
+			while (index < labels.length && labels[index] != c) {
+				index++;
+			}
+			if (child == null) {
+				if (index == labels.length) {
+					return this;
+				}
+				char[] newLabels = new char[labels.length - 1];
+				Node[] newChildren = new Node[children.length - 1];
+				System.arraycopy(labels, 0, newLabels, 0, index);
+				System.arraycopy(labels, index + 1, newLabels, index, labels.length - index - 1);
+				System.arraycopy(children, 0, newChildren, 0, index);
+				System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+				return new Node(newLabels, newChildren, entry);
+			}
+			// An existing child keeps its label, so the labels (which may be shared with
+			// published nodes) are only copied and written when c is new
+			char[] newLabels = labels;
+			if (index == labels.length) {
+				newLabels = Arrays.copyOf(labels, index + 1);
+				newLabels[index] = c;
+			}
+			Node[] newChildren = Arrays.copyOf(children, Math.max(children.length, index + 1));
+			newChildren[index] = child;
+			return new Node(newLabels, newChildren, entry);
+		}
+
+		boolean isEmpty() {
+			return entry == null && children.length == 0;
+		}
+
+		int bestPopularity() {
+			return topK.isEmpty() ? Integer.MAX_VALUE : topK.get(0).getValue();
+		}
+
+	}
+
+}
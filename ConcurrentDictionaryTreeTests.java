@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ConcurrentDictionaryTreeTests {
+
+	@Test
+	public void shouldAnswerLikeDictionaryTree() {
+		ConcurrentDictionaryTree unit = new ConcurrentDictionaryTree();
+		DictionaryTree expected = new DictionaryTree();
+		String[] words = { "the", "then", "there", "these", "theme", "thermal", "tea", "team", "tear", "to", "toe",
+				"token", "a" };
+		for (int i = 0; i < words.length; i++) {
+			unit.insert(words[i], (i * 7) % words.length);
+			expected.insert(words[i], (i * 7) % words.length);
+		}
+		unit.remove("these");
+		expected.remove("these");
+		unit.insert("the", 20);
+		expected.insert("the", 20);
+
+		Assertions.assertEquals(expected.allWords(), unit.allWords());
+		for (String prefix : Arrays.asList("", "t", "th", "the", "ther", "te", "x")) {
+			Assertions.assertEquals(expected.predict(prefix), unit.predict(prefix));
+			for (int n : new int[] { 1, 3, 10, 11, 20 }) {
+				Assertions.assertEquals(expected.predict(prefix, n), unit.predict(prefix, n));
+			}
+		}
+	}
+
+	@Test
+	public void removeShouldDeleteOnlyTheNodesNoOtherWordUses() {
+		ConcurrentDictionaryTree unit = new ConcurrentDictionaryTree();
+		unit.insert("word");
+		unit.insert("worded");
+		Assertions.assertFalse(unit.remove("word")); // Only unmarked, "worded" still uses the nodes
+		Assertions.assertFalse(unit.contains("word"));
+		Assertions.assertTrue(unit.isPrefix("word"));
+		Assertions.assertTrue(unit.remove("worded"));
+		Assertions.assertFalse(unit.isPrefix("w"));
+		Assertions.assertFalse(unit.remove("worded"));
+		Assertions.assertEquals(Optional.empty(), unit.predict("w"));
+	}
+
+	@Test
+	public void concurrentInsertsShouldAllBeKept() throws Exception {
+		ConcurrentDictionaryTree unit = new ConcurrentDictionaryTree();
+		int threads = 8;
+		int wordsPerThread = 500;
+
+		runThreads(threads, t -> {
+			for (int i = 0; i < wordsPerThread; i++) {
+				unit.insert("w" + i + "t" + t, t * wordsPerThread + i);
+			}
+		});
+
+		Assertions.assertEquals(threads * wordsPerThread, unit.allWords().size());
+		for (int t = 0; t < threads; t++) {
+			for (int i = 0; i < wordsPerThread; i++) {
+				Assertions.assertTrue(unit.contains("w" + i + "t" + t));
+			}
+		}
+		Assertions.assertEquals(Arrays.asList("w0t0", "w1t0", "w2t0"), unit.predict("w", 3));
+	}
+
+	@Test
+	public void readersShouldNeverSeeAHalfFinishedWrite() throws Exception {
+		ConcurrentDictionaryTree unit = new ConcurrentDictionaryTree();
+		List<String> stable = Arrays.asList("stable", "stables", "stabled");
+		for (int i = 0; i < stable.size(); i++) {
+			unit.insert(stable.get(i), i);
+		}
+
+		int writers = 4;
+		int readers = 4;
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicReference<String> failure = new AtomicReference<>();
+		CountDownLatch writersDone = new CountDownLatch(writers);
+
+		runThreads(writers + readers, t -> {
+			if (t < writers) {
+				// Churn words that share nodes with the stable words
+				for (int i = 0; i < 2000; i++) {
+					String word = "stab" + (char) ('a' + t) + (i % 50);
+					unit.insert(word, 100 + i);
+					unit.remove(word);
+				}
+				for (int i = 0; i < 50; i++) {
+					unit.insert("stab" + (char) ('a' + t) + i, 100 + i);
+				}
+				writersDone.countDown();
+				if (writersDone.getCount() == 0) {
+					writing.set(false);
+				}
+				return;
+			}
+			while (writing.get()) {
+				for (String word : stable) {
+					if (!unit.contains(word)) {
+						failure.compareAndSet(null, word + " went missing");
+					}
+				}
+				List<String> top = unit.predict("stab", 3);
+				if (!top.equals(stable)) {
+					failure.compareAndSet(null, "predict(\"stab\", 3) returned " + top);
+				}
+				String partial = "stab" + (char) ('a' + t % writers);
+				for (String word : unit.predict(partial, 20)) {
+					if (!unit.contains(word) && unit.predict(partial, 20).contains(word)) {
+						failure.compareAndSet(null, word + " was predicted but not contained");
+					}
+				}
+			}
+		});
+
+		Assertions.assertNull(failure.get());
+		Assertions.assertEquals(stable.size() + writers * 50, unit.allWords().size());
+		Assertions.assertEquals(stable, unit.predict("stab", 3));
+	}
+
+	private interface ThreadBody {
+
+		void run(int thread) throws Exception;
+
+	}
+
+	/**
+	 * Runs body on the given number of threads, all started together, and waits
+	 * for them to finish.
+	 */
+	private static void runThreads(int count, ThreadBody body) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < count; t++) {
+			int thread = t;
+			threads.add(new Thread(() -> {
+				try {
+					start.await();
+					body.run(thread);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+}
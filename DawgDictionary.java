@@ -0,0 +1,489 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * A read-only dictionary stored as a minimal acyclic automaton (DAWG), where
+ * words that end the same way share the nodes for their common suffix. It is
+ * built once from a sorted word list by a Builder, using Daciuk's incremental
+ * construction, and can't be changed afterwards.
+ *
+ * Shared nodes can't hold a popularity for each word, so every state counts
+ * the words that can be reached from it. Following a word and adding up the
+ * counts of the edges skipped on the way gives its position in the sorted word
+ * list (a minimal perfect hash), which indexes the popularity array. All words
+ * starting with a prefix are next to each other in that list, so predict(prefix,
+ * n) only has to pick the n most popular entries from one range of it.
+ *
+ * Since the word list is sorted, allWords() returns the words alphabetically and
+ * predict(prefix) returns the alphabetically first completion, rather than
+ * following insertion order like DictionaryTree.
+ */
+public class DawgDictionary implements Dictionary {
+
+	/**
+	 * The number of words in each block of the popularity array that shares one
+	 * entry in blockBest.
+	 */
+	static final int BLOCK = 64;
+
+	private static final int ROOT = 0;
+
+	/**
+	 * The edges of state s are firstEdge[s] up to (but not including)
+	 * firstEdge[s + 1], sorted by label.
+	 */
+	private final int[] firstEdge;
+	private final char[] edgeLabel;
+	private final int[] edgeTarget;
+	private final BitSet terminal;
+
+	/**
+	 * The number of words that can be reached from each state.
+	 */
+	private final int[] count;
+
+	/**
+	 * The popularity of each word, in alphabetical order.
+	 */
+	private final int[] popularity;
+
+	/**
+	 * The best (lowest) popularity in each block of BLOCK words.
+	 */
+	private final int[] blockBest;
+
+	private DawgDictionary(int[] firstEdge, char[] edgeLabel, int[] edgeTarget, BitSet terminal, int[] count,
+			int[] popularity) {
+		this.firstEdge = firstEdge;
+		this.edgeLabel = edgeLabel;
+		this.edgeTarget = edgeTarget;
+		this.terminal = terminal;
+		this.count = count;
+		this.popularity = popularity;
+
+		blockBest = new int[(popularity.length + BLOCK - 1) / BLOCK];
+		Arrays.fill(blockBest, Integer.MAX_VALUE);
+		for (int i = 0; i < popularity.length; i++) {
+			blockBest[i / BLOCK] = Math.min(blockBest[i / BLOCK], popularity[i]);
+		}
+	}
+
+	/**
+	 * Always throws, as a DawgDictionary can't be changed once it is built.
+	 */
+	@Override
+	public void insert(String word) {
+		throw new UnsupportedOperationException("A DawgDictionary is read-only");
+	}
+
+	/**
+	 * Always throws, as a DawgDictionary can't be changed once it is built.
+	 */
+	@Override
+	public void insert(String word, int popularity) {
+		throw new UnsupportedOperationException("A DawgDictionary is read-only");
+	}
+
+	/**
+	 * Always throws, as a DawgDictionary can't be changed once it is built.
+	 */
+	@Override
+	public boolean remove(String word) {
+		throw new UnsupportedOperationException("A DawgDictionary is read-only");
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		int state = getState(word);
+		return state != -1 && terminal.get(state);
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return getState(word) != -1;
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		int state = getState(prefix);
+		if (state == -1) {
+			return Optional.empty();
+		}
+		StringBuilder word = new StringBuilder(prefix);
+		while (!terminal.get(state) && firstEdge[state] < firstEdge[state + 1]) {
+			word.append(edgeLabel[firstEdge[state]]);
+			state = edgeTarget[firstEdge[state]];
+		}
+		return Optional.of(word.toString());
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (n >= 0);
+		assert (prefix != null);
+
+		List<String> sortedList = new LinkedList<String>();
+		int lo = indexOf(prefix);
+		if (lo == -1 || n == 0) {
+			return sortedList;
+		}
+		int hi = lo + count[getState(prefix)];
+
+		// Best-first over whole blocks and single words, keyed by popularity and then
+		// position. Blocks get an even key and words an odd one, so a block comes out
+		// before any word that it could beat.
+		PriorityQueue<Long> queue = new PriorityQueue<Long>();
+		int firstBlock = (lo + BLOCK - 1) / BLOCK;
+		int lastBlock = hi / BLOCK;
+		if (firstBlock >= lastBlock) {
+			addWords(queue, lo, hi);
+		} else {
+			addWords(queue, lo, firstBlock * BLOCK);
+			for (int b = firstBlock; b < lastBlock; b++) {
+				queue.add(key(blockBest[b], b * BLOCK, false));
+			}
+			addWords(queue, lastBlock * BLOCK, hi);
+		}
+
+		while (!queue.isEmpty() && sortedList.size() < n) {
+			long next = queue.poll();
+			int index = (int) (next & 0xffffffffL) >>> 1;
+			if ((next & 1) == 1) {
+				sortedList.add(getWord(index));
+			} else {
+				addWords(queue, index, index + BLOCK);
+			}
+		}
+		return sortedList;
+	}
+
+	private void addWords(PriorityQueue<Long> queue, int from, int to) {
+		for (int i = from; i < to; i++) {
+			queue.add(key(popularity[i], i, true));
+		}
+	}
+
+	private static long key(int popularity, int index, boolean word) {
+		return ((long) popularity << 32) | ((long) index << 1) | (word ? 1 : 0);
+	}
+
+	@Override
+	public List<String> allWords() {
+		LinkedList<String> list = new LinkedList<String>();
+		allWords(ROOT, new StringBuilder(), list);
+		return list;
+	}
+
+	private void allWords(int state, StringBuilder prefix, LinkedList<String> words) {
+		for (int e = firstEdge[state]; e < firstEdge[state + 1]; e++) {
+			prefix.append(edgeLabel[e]);
+			if (terminal.get(edgeTarget[e])) {
+				words.add(prefix.toString());
+			}
+			allWords(edgeTarget[e], prefix, words);
+			prefix.setLength(prefix.length() - 1);
+		}
+	}
+
+	/**
+	 * @return the number of words in this dictionary
+	 */
+	int wordCount() {
+		return popularity.length;
+	}
+
+	/**
+	 * @return the number of states in the automaton, including the root
+	 */
+	int stateCount() {
+		return firstEdge.length - 1;
+	}
+
+	/**
+	 * @return the popularity the given word was built with, or an empty optional if
+	 *         it isn't in this dictionary
+	 */
+	Optional<Integer> popularity(String word) {
+		assert (word != null);
+
+		int index = indexOf(word);
+		if (index == -1 || !contains(word)) {
+			return Optional.empty();
+		}
+		return Optional.of(popularity[index]);
+	}
+
+	/**
+	 * @return the state reached by following word from the root, or -1
+	 */
+	private int getState(String word) {
+		int state = ROOT;
+		for (int i = 0; i < word.length() && state != -1; i++) {
+			int e = getEdge(state, word.charAt(i));
+			state = e == -1 ? -1 : edgeTarget[e];
+		}
+		return state;
+	}
+
+	private int getEdge(int state, char c) {
+		int lo = firstEdge[state];
+		int hi = firstEdge[state + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (edgeLabel[mid] < c) {
+				lo = mid + 1;
+			} else if (edgeLabel[mid] > c) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the position in the sorted word list of the first word starting with
+	 *         prefix, or -1 if there is none
+	 */
+	private int indexOf(String prefix) {
+		int state = ROOT;
+		int index = 0;
+		for (int i = 0; i < prefix.length(); i++) {
+			int e = getEdge(state, prefix.charAt(i));
+			if (e == -1) {
+				return -1;
+			}
+			// Skip the word ending here and every word through a smaller edge
+			index += terminal.get(state) ? 1 : 0;
+			for (int skipped = firstEdge[state]; skipped < e; skipped++) {
+				index += count[edgeTarget[skipped]];
+			}
+			state = edgeTarget[e];
+		}
+		return index;
+	}
+
+	/**
+	 * @return the word at the given position in the sorted word list
+	 */
+	private String getWord(int index) {
+		StringBuilder word = new StringBuilder();
+		int state = ROOT;
+		while (true) {
+			if (terminal.get(state)) {
+				if (index == 0) {
+					return word.toString();
+				}
+				index--;
+			}
+			int e = firstEdge[state];
+			while (index >= count[edgeTarget[e]]) {
+				index -= count[edgeTarget[e]];
+				e++;
+			}
+			word.append(edgeLabel[e]);
+			state = edgeTarget[e];
+		}
+	}
+
+	/**
+	 * Builds a DawgDictionary from words added in increasing order (by
+	 * String.compareTo). Once a word has been added, no later word can share the
+	 * nodes after its common prefix with the new word, so those nodes are replaced
+	 * by an equal one already in the register if there is one, or added to it.
+	 */
+	static class Builder {
+
+		private final State root = new State();
+		private final Map<State, State> register = new HashMap<>();
+		private final List<State> path = new ArrayList<>();
+		private final List<Integer> popularities = new ArrayList<>();
+		private String previous = "";
+
+		Builder() {
+			path.add(root);
+		}
+
+		/**
+		 * @param word
+		 *            the next word, which must come after every word added so far
+		 * @param popularity
+		 *            the popularity of the word
+		 * @return this builder
+		 */
+		Builder add(String word, int popularity) {
+			assert (word != null && !word.isEmpty());
+			if (word.compareTo(previous) <= 0) {
+				throw new IllegalArgumentException("Words must be added in increasing order: \"" + word
+						+ "\" after \"" + previous + "\"");
+			}
+
+			int common = 0;
+			while (common < word.length() && common < previous.length()
+					&& word.charAt(common) == previous.charAt(common)) {
+				common++;
+			}
+			minimise(common);
+
+			State state = path.get(common);
+			for (int i = common; i < word.length(); i++) {
+				State next = new State();
+				state.add(word.charAt(i), next);
+				path.add(next);
+				state = next;
+			}
+			state.terminal = true;
+
+			popularities.add(popularity);
+			previous = word;
+			return this;
+		}
+
+		/**
+		 * @return the finished dictionary
+		 */
+		DawgDictionary build() {
+			minimise(0);
+			root.seal();
+
+			// Number the states depth first, so the root is 0
+			IdentityHashMap<State, Integer> ids = new IdentityHashMap<>();
+			List<State> states = new ArrayList<>();
+			number(root, ids, states);
+
+			int edges = 0;
+			for (State s : states) {
+				edges += s.size;
+			}
+			int[] firstEdge = new int[states.size() + 1];
+			char[] edgeLabel = new char[edges];
+			int[] edgeTarget = new int[edges];
+			BitSet terminal = new BitSet(states.size());
+			int[] count = new int[states.size()];
+
+			int e = 0;
+			for (int i = 0; i < states.size(); i++) {
+				State s = states.get(i);
+				firstEdge[i] = e;
+				terminal.set(i, s.terminal);
+				count[i] = s.count;
+				for (int j = 0; j < s.size; j++) {
+					edgeLabel[e] = s.labels[j];
+					edgeTarget[e] = ids.get(s.targets[j]);
+					e++;
+				}
+			}
+			firstEdge[states.size()] = e;
+
+			int[] popularity = new int[popularities.size()];
+			for (int i = 0; i < popularity.length; i++) {
+				popularity[i] = popularities.get(i);
+			}
+			return new DawgDictionary(firstEdge, edgeLabel, edgeTarget, terminal, count, popularity);
+		}
+
+		/**
+		 * Replaces or registers the states on the path of the previous word below
+		 * the given depth, deepest first.
+		 */
+		private void minimise(int depth) {
+			for (int i = path.size() - 1; i > depth; i--) {
+				State child = path.get(i);
+				State parent = path.get(i - 1);
+				child.seal();
+				State existing = register.putIfAbsent(child, child);
+				if (existing != null) {
+					parent.targets[parent.size - 1] = existing;
+				}
+				path.remove(i);
+			}
+		}
+
+		private static void number(State state, IdentityHashMap<State, Integer> ids, List<State> states) {
+			if (ids.containsKey(state)) {
+				return;
+			}
+			ids.put(state, states.size());
+			states.add(state);
+			for (int i = 0; i < state.size; i++) {
+				number(state.targets[i], ids, states);
+			}
+		}
+
+	}
+
+	/**
+	 * A state of the automaton while it is being built. Once sealed it can't
+	 * change, and two sealed states are equal if they accept the same suffixes,
+	 * which (as their targets are already unique) means they have the same
+	 * terminal flag and the same edges to the same targets.
+	 */
+	private static class State {
+
+		char[] labels = new char[1];
+		State[] targets = new State[1];
+		int size = 0;
+		boolean terminal = false;
+		int count;
+		private int hash;
+
+		void add(char label, State target) {
+			if (size == labels.length) {
+				labels = Arrays.copyOf(labels, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+			}
+			labels[size] = label;
+			targets[size] = target;
+			size++;
+		}
+
+		void seal() {
+			labels = Arrays.copyOf(labels, size);
+			targets = Arrays.copyOf(targets, size);
+			count = terminal ? 1 : 0;
+			int h = terminal ? 1 : 0;
+			for (int i = 0; i < size; i++) {
+				count += targets[i].count;
+				h = 31 * (31 * h + labels[i]) + System.identityHashCode(targets[i]);
+			}
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof State)) {
+				return false;
+			}
+			State other = (State) o;
+			if (terminal != other.terminal || size != other.size || hash != other.hash) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class DawgDictionaryTests {
+
+	private static DawgDictionary build(String... words) {
+		DawgDictionary.Builder builder = new DawgDictionary.Builder();
+		for (int i = 0; i < words.length; i++) {
+			builder.add(words[i], i);
+		}
+		return builder.build();
+	}
+
+	@Test
+	public void wordsWithTheSameEndingShouldShareStates() {
+		DawgDictionary unit = build("tapping", "tipping", "topping");
+		// root, t, {a, i, o}, p, p, i, n, g
+		Assertions.assertEquals(8, unit.stateCount());
+		Assertions.assertTrue(unit.contains("tipping"));
+		Assertions.assertFalse(unit.contains("tupping"));
+		Assertions.assertFalse(unit.contains("tip"));
+		Assertions.assertTrue(unit.isPrefix("tip"));
+	}
+
+	@Test
+	public void eachWordShouldKeepItsOwnPopularity() {
+		DawgDictionary.Builder builder = new DawgDictionary.Builder();
+		builder.add("telekinetic", 89);
+		builder.add("telepath", 32);
+		builder.add("telephone", 378);
+		builder.add("teleport", 100);
+		builder.add("teleportation", 79);
+		DawgDictionary unit = builder.build();
+
+		Assertions.assertEquals(Optional.of(378), unit.popularity("telephone"));
+		Assertions.assertEquals(Optional.empty(), unit.popularity("tele"));
+		Assertions.assertEquals(Arrays.asList("telepath", "teleportation", "telekinetic", "teleport", "telephone"),
+				unit.predict("tele", 5));
+		Assertions.assertEquals(Arrays.asList("teleportation", "teleport"), unit.predict("teleport", 5));
+	}
+
+	@Test
+	public void predictShouldSearchAcrossManyBlocks() {
+		DawgDictionary.Builder builder = new DawgDictionary.Builder();
+		int words = DawgDictionary.BLOCK * 5 + 3;
+		for (int i = 0; i < words; i++) {
+			builder.add(String.format("w%04d", i), words - i);
+		}
+		DawgDictionary unit = builder.build();
+		Assertions.assertEquals(Arrays.asList(String.format("w%04d", words - 1), String.format("w%04d", words - 2)),
+				unit.predict("w", 2));
+		Assertions.assertEquals(Arrays.asList("w0009", "w0008"), unit.predict("w000", 2));
+		Assertions.assertEquals(words, unit.allWords().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void wordsOutOfOrderShouldBeRejected() {
+		build("yellow", "yell");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void aBuiltDictionaryShouldBeReadOnly() {
+		build("word").insert("words");
+	}
+
+	@Test
+	public void loadDawgShouldReadUtf8WithLaterLinesOverriding() throws IOException {
+		File f = File.createTempFile("words", ".txt");
+		f.deleteOnExit();
+		Files.write(f.toPath(), "caf\u00e9\ncab\r\n\ncafe\ncab\n".getBytes(StandardCharsets.UTF_8));
+		DawgDictionary unit = CLI.loadDawg(f);
+		Assertions.assertTrue(unit.contains("caf\u00e9"));
+		Assertions.assertEquals(Arrays.asList("caf\u00e9", "cafe", "cab"), unit.predict("ca", 5));
+	}
+
+}
@@ -0,0 +1,83 @@
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The operations shared by the different dictionary engines, so that the CLI
+ * can load words into and predict from whichever one is chosen.
+ */
+public interface Dictionary {
+
+	/**
+	 * Inserts the given word into this dictionary. If the word already exists,
+	 * nothing will change.
+	 *
+	 * @param word
+	 *            the word to insert
+	 */
+	void insert(String word);
+
+	/**
+	 * Inserts the given word into this dictionary with the given popularity. If the
+	 * word already exists, the popularity will be overridden by the given value.
+	 *
+	 * @param word
+	 *            the word to insert
+	 * @param popularity
+	 *            the popularity of the inserted word
+	 */
+	void insert(String word, int popularity);
+
+	/**
+	 * Removes the specified word from this dictionary.
+	 *
+	 * @param word
+	 *            the word to delete from this dictionary
+	 * @return true if nodes were deleted, false if the word was only unmarked as a
+	 *         word end because other words start with it
+	 */
+	boolean remove(String word);
+
+	/**
+	 * Determines whether or not the specified word is in this dictionary.
+	 *
+	 * @param word
+	 *            the word whose presence will be checked
+	 * @return true if the specified word is stored in this dictionary; false
+	 *         otherwise
+	 */
+	boolean contains(String word);
+
+	/**
+	 * @param word
+	 *            the characters to look for
+	 * @return true if some word in this dictionary starts with the given
+	 *         characters
+	 */
+	boolean isPrefix(String word);
+
+	/**
+	 * @param prefix
+	 *            the prefix of the word returned
+	 * @return a word that starts with the given prefix, or an empty optional if no
+	 *         such word is found.
+	 */
+	Optional<String> predict(String prefix);
+
+	/**
+	 * Predicts the (at most) n most popular full English words based on the
+	 * specified prefix. Lower popularity values come first.
+	 *
+	 * @param prefix
+	 *            the prefix of the words found
+	 * @param n
+	 *            the maximum number of words to return
+	 * @return the (at most) n most popular words with the specified prefix
+	 */
+	List<String> predict(String prefix, int n);
+
+	/**
+	 * @return all words stored in this dictionary as a list
+	 */
+	List<String> allWords();
+
+}
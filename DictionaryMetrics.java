@@ -0,0 +1,448 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Counts and times the operations on a DictionaryTree, once attached to it
+ * with setMetrics. Nothing is recorded (and nothing is timed) until then.
+ *
+ * Every operation has a histogram of its latencies, and predict(prefix, n)
+ * also records how many words it returned and how many nodes it visited, with
+ * its latency broken down by the length of the prefix, and keeps the slowest
+ * prefixes seen: short prefixes with an n above TOP_K can search huge
+ * subtrees.
+ *
+ * The histograms are lock-free (see Histogram), so recording costs a few
+ * uncontended LongAdder updates. The metrics can be read with dump(), printed
+ * every so often with dumpEvery(), or registered as MBeans to be read over JMX
+ * (with jconsole, for example).
+ */
+public class DictionaryMetrics {
+
+	/**
+	 * The operations recorded.
+	 */
+	enum Operation {
+		PREDICT, CONTAINS, INSERT, REMOVE;
+
+		String label() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * Predictions are broken down by prefix length up to this, with longer
+	 * prefixes counted with it.
+	 */
+	static final int MAX_PREFIX_LENGTH = 8;
+
+	/**
+	 * The number of slowest prefixes kept.
+	 */
+	static final int SLOWEST = 10;
+
+	static final String DOMAIN = "predictivetext";
+
+	private static final ScheduledExecutorService DUMPER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "metrics-dump");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Histogram[] latencies = new Histogram[Operation.values().length];
+	private final Histogram[] predictLatencies = new Histogram[MAX_PREFIX_LENGTH + 1];
+	private final Histogram results = new Histogram();
+	private final Histogram nodesVisited = new Histogram();
+
+	/**
+	 * The slowest predictions, one per prefix, slowest first.
+	 */
+	private final List<SlowPrefix> slowest = new ArrayList<>();
+
+	/**
+	 * The time of the fastest of slowest once it is full, which a prediction has
+	 * to beat to be added to it, so that most predictions don't take its lock.
+	 */
+	private volatile long slowThreshold = 0;
+
+	private final List<ObjectName> registered = new ArrayList<>();
+
+	DictionaryMetrics() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new Histogram();
+		}
+		for (int i = 0; i < predictLatencies.length; i++) {
+			predictLatencies[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Records an operation that started at the given time.
+	 *
+	 * @param operation
+	 *            the operation
+	 * @param start
+	 *            the System.nanoTime() when it started
+	 */
+	void record(Operation operation, long start) {
+		latencies[operation.ordinal()].record(Math.max(0, System.nanoTime() - start));
+	}
+
+	/**
+	 * Records a prediction that started at the given time.
+	 *
+	 * @param prefix
+	 *            the prefix predicted for
+	 * @param start
+	 *            the System.nanoTime() when it started
+	 * @param words
+	 *            the number of words it returned
+	 * @param nodes
+	 *            the number of nodes it visited
+	 */
+	void recordPredict(String prefix, long start, int words, int nodes) {
+		long nanos = Math.max(0, System.nanoTime() - start);
+		latencies[Operation.PREDICT.ordinal()].record(nanos);
+		predictLatencies[Math.min(prefix.length(), MAX_PREFIX_LENGTH)].record(nanos);
+		results.record(words);
+		nodesVisited.record(nodes);
+		if (nanos > slowThreshold) {
+			slow(new SlowPrefix(prefix, nanos, words, nodes));
+		}
+	}
+
+	private synchronized void slow(SlowPrefix prediction) {
+		for (int i = 0; i < slowest.size(); i++) {
+			if (slowest.get(i).prefix.equals(prediction.prefix)) {
+				if (slowest.get(i).nanos >= prediction.nanos) {
+					return;
+				}
+				slowest.remove(i);
+				break;
+			}
+		}
+		int at = 0;
+		while (at < slowest.size() && slowest.get(at).nanos >= prediction.nanos) {
+			at++;
+		}
+		slowest.add(at, prediction);
+		if (slowest.size() > SLOWEST) {
+			slowest.remove(SLOWEST);
+		}
+		if (slowest.size() == SLOWEST) {
+			slowThreshold = slowest.get(SLOWEST - 1).nanos;
+		}
+	}
+
+	/**
+	 * @return the latencies of the given operation, in nanoseconds
+	 */
+	Histogram latency(Operation operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	/**
+	 * @return the latencies of predictions for prefixes of the given length (or
+	 *         of MAX_PREFIX_LENGTH or more), in nanoseconds
+	 */
+	Histogram predictLatency(int prefixLength) {
+		return predictLatencies[Math.min(prefixLength, MAX_PREFIX_LENGTH)];
+	}
+
+	/**
+	 * @return the number of words each prediction returned
+	 */
+	Histogram results() {
+		return results;
+	}
+
+	/**
+	 * @return the number of nodes each prediction visited: the nodes down to the
+	 *         prefix, and the nodes expanded searching below it
+	 */
+	Histogram nodesVisited() {
+		return nodesVisited;
+	}
+
+	/**
+	 * @return the slowest predictions, one per prefix, slowest first
+	 */
+	synchronized List<SlowPrefix> slowest() {
+		return new ArrayList<>(slowest);
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	void reset() {
+		for (Histogram h : latencies) {
+			h.reset();
+		}
+		for (Histogram h : predictLatencies) {
+			h.reset();
+		}
+		results.reset();
+		nodesVisited.reset();
+		synchronized (this) {
+			slowest.clear();
+			slowThreshold = 0;
+		}
+	}
+
+	/**
+	 * @return the metrics as a table, with times in microseconds
+	 */
+	String dump() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%-12s %12s %9s %9s %9s %9s %9s%n", "operation", "count", "mean us", "p50 us",
+				"p99 us", "p99.9 us", "max us"));
+		for (Operation operation : Operation.values()) {
+			row(s, operation.label(), latency(operation));
+		}
+		for (int length = 0; length <= MAX_PREFIX_LENGTH; length++) {
+			row(s, "predict/" + length + (length == MAX_PREFIX_LENGTH ? "+" : ""), predictLatencies[length]);
+		}
+		s.append(String.format("predict words: p50 %d, p99 %d, max %d; nodes visited: p50 %d, p99 %d, max %d%n",
+				results.percentile(0.5), results.percentile(0.99), results.max(), nodesVisited.percentile(0.5),
+				nodesVisited.percentile(0.99), nodesVisited.max()));
+		s.append("slowest prefixes:");
+		for (SlowPrefix prediction : slowest()) {
+			s.append(String.format("%n  %s", prediction));
+		}
+		return s.append(String.format("%n")).toString();
+	}
+
+	private static void row(StringBuilder s, String label, Histogram h) {
+		s.append(String.format("%-12s %,12d %9.2f %9.2f %9.2f %9.2f %9.2f%n", label, h.count(), h.mean() / 1e3,
+				h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3, h.percentile(0.999) / 1e3, h.max() / 1e3));
+	}
+
+	/**
+	 * Prints dump() every period on a background thread, until the returned
+	 * future is cancelled.
+	 *
+	 * @param out
+	 *            where to print
+	 * @param period
+	 *            the time between dumps
+	 * @param unit
+	 *            the unit of period
+	 * @return the future to cancel to stop
+	 */
+	ScheduledFuture<?> dumpEvery(PrintStream out, long period, TimeUnit unit) {
+		return DUMPER.scheduleAtFixedRate(() -> out.print(dump()), period, period, unit);
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server: one MBean named
+	 * predictivetext:type=DictionaryMetrics,name=<i>name</i> for the predictions,
+	 * and one for each operation's latencies, with operation=<i>operation</i>
+	 * added to the name.
+	 *
+	 * @param name
+	 *            the name to tell these metrics apart from others
+	 * @throws JMException
+	 *             if the name isn't valid or is already registered
+	 */
+	synchronized void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String base = DOMAIN + ":type=DictionaryMetrics,name=" + ObjectName.quote(name);
+		try {
+			ObjectName predictions = new ObjectName(base);
+			server.registerMBean(new StandardMBean(new Predictions(), PredictionsMBean.class), predictions);
+			registered.add(predictions);
+			for (Operation operation : Operation.values()) {
+				ObjectName latency = new ObjectName(base + ",operation=" + operation.label());
+				server.registerMBean(new StandardMBean(new Latencies(latency(operation)), OperationMBean.class),
+						latency);
+				registered.add(latency);
+			}
+		} catch (JMException e) {
+			unregister();
+			throw e;
+		}
+	}
+
+	/**
+	 * Unregisters the MBeans registered by register.
+	 */
+	synchronized void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				// Already unregistered by someone else
+			}
+		}
+		registered.clear();
+	}
+
+	/**
+	 * The latencies of one operation over JMX, in microseconds.
+	 */
+	public interface OperationMBean {
+
+		long getCount();
+
+		double getMeanMicros();
+
+		double getP50Micros();
+
+		double getP99Micros();
+
+		double getP999Micros();
+
+		double getMaxMicros();
+
+	}
+
+	/**
+	 * The sizes of predictions and the slowest prefixes over JMX.
+	 */
+	public interface PredictionsMBean {
+
+		long getP50Words();
+
+		long getP99Words();
+
+		long getP50NodesVisited();
+
+		long getP99NodesVisited();
+
+		long getMaxNodesVisited();
+
+		/**
+		 * @return the slowest prefixes with their times, slowest first
+		 */
+		String[] getSlowestPrefixes();
+
+		/**
+		 * @return every metric, as a table
+		 */
+		String getDump();
+
+		void reset();
+
+	}
+
+	private static class Latencies implements OperationMBean {
+
+		private final Histogram h;
+
+		Latencies(Histogram h) {
+			this.h = h;
+		}
+
+		@Override
+		public long getCount() {
+			return h.count();
+		}
+
+		@Override
+		public double getMeanMicros() {
+			return h.mean() / 1e3;
+		}
+
+		@Override
+		public double getP50Micros() {
+			return h.percentile(0.5) / 1e3;
+		}
+
+		@Override
+		public double getP99Micros() {
+			return h.percentile(0.99) / 1e3;
+		}
+
+		@Override
+		public double getP999Micros() {
+			return h.percentile(0.999) / 1e3;
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return h.max() / 1e3;
+		}
+
+	}
+
+	private class Predictions implements PredictionsMBean {
+
+		@Override
+		public long getP50Words() {
+			return results.percentile(0.5);
+		}
+
+		@Override
+		public long getP99Words() {
+			return results.percentile(0.99);
+		}
+
+		@Override
+		public long getP50NodesVisited() {
+			return nodesVisited.percentile(0.5);
+		}
+
+		@Override
+		public long getP99NodesVisited() {
+			return nodesVisited.percentile(0.99);
+		}
+
+		@Override
+		public long getMaxNodesVisited() {
+			return nodesVisited.max();
+		}
+
+		@Override
+		public String[] getSlowestPrefixes() {
+			return slowest().stream().map(SlowPrefix::toString).toArray(String[]::new);
+		}
+
+		@Override
+		public String getDump() {
+			return dump();
+		}
+
+		@Override
+		public void reset() {
+			DictionaryMetrics.this.reset();
+		}
+
+	}
+
+	/**
+	 * A slow prediction.
+	 */
+	static class SlowPrefix {
+
+		final String prefix;
+		final long nanos;
+		final int words;
+		final int nodes;
+
+		SlowPrefix(String prefix, long nanos, int words, int nodes) {
+			this.prefix = prefix;
+			this.nanos = nanos;
+			this.words = words;
+			this.nodes = nodes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("\"%s\" %.2f us, %,d words, %,d nodes visited", prefix, nanos / 1e3, words, nodes);
+		}
+
+	}
+
+}
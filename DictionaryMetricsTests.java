@@ -0,0 +1,159 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class DictionaryMetricsTests {
+
+	private static DictionaryTree tree(int words) {
+		DictionaryTree tree = new DictionaryTree();
+		for (int i = 0; i < words; i++) {
+			tree.insert("a" + Integer.toString(i, 36), i);
+		}
+		return tree;
+	}
+
+	@Test
+	public void shouldReadPercentilesBackWithinABucket() {
+		Histogram unit = new Histogram();
+		for (long v = 1; v <= 100_000; v++) {
+			unit.record(v);
+		}
+		Assertions.assertEquals(100_000, unit.count());
+		Assertions.assertEquals(50_000.5, unit.mean(), 1e-9);
+		Assertions.assertEquals(100_000, unit.max());
+		Assertions.assertEquals(50_000, unit.percentile(0.5), 50_000 / Histogram.SUB_BUCKETS);
+		Assertions.assertEquals(99_000, unit.percentile(0.99), 99_000 / Histogram.SUB_BUCKETS);
+		Assertions.assertEquals(100_000, unit.percentile(1));
+		Assertions.assertEquals(1, unit.percentile(0));
+		for (long v : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 1L << 40, Long.MAX_VALUE }) {
+			int index = Histogram.index(v);
+			Assertions.assertTrue(Histogram.lowest(index) <= v && v <= Histogram.highest(index), Long.toString(v));
+		}
+
+		unit.reset();
+		Assertions.assertEquals(0, unit.count());
+		Assertions.assertEquals(0, unit.percentile(0.99));
+	}
+
+	@Test
+	public void shouldRecordOnlyWhileAttached() {
+		DictionaryTree tree = tree(0);
+		tree.insert("tea");
+		DictionaryMetrics unit = new DictionaryMetrics();
+		tree.setMetrics(unit);
+
+		tree.insert("team", 1);
+		tree.insert("ten");
+		tree.contains("tea");
+		tree.contains("toe");
+		tree.contains("tear");
+		Assertions.assertEquals(3, tree.predict("te", 5).size());
+		tree.remove("ten");
+		tree.setMetrics(null);
+		tree.contains("tea");
+		tree.predict("t", 5);
+
+		Assertions.assertEquals(2, unit.latency(DictionaryMetrics.Operation.INSERT).count());
+		Assertions.assertEquals(3, unit.latency(DictionaryMetrics.Operation.CONTAINS).count());
+		Assertions.assertEquals(1, unit.latency(DictionaryMetrics.Operation.PREDICT).count());
+		Assertions.assertEquals(1, unit.latency(DictionaryMetrics.Operation.REMOVE).count());
+		Assertions.assertEquals(1, unit.predictLatency(2).count());
+		Assertions.assertEquals(3, unit.results().max());
+		// The root, t and e
+		Assertions.assertEquals(3, unit.nodesVisited().max());
+	}
+
+	@Test
+	public void shouldCountTheNodesSearched() {
+		DictionaryTree tree = tree(2000);
+		DictionaryMetrics unit = new DictionaryMetrics();
+		tree.setMetrics(unit);
+
+		Assertions.assertEquals(tree.predict("a", 0, 1, 500), tree.predict("a", 500));
+		Assertions.assertEquals(500, unit.results().max());
+		Assertions.assertTrue(unit.nodesVisited().max() > 500);
+		tree.predict("a1", 5);
+		tree.predict("b", 5);
+
+		List<DictionaryMetrics.SlowPrefix> slowest = unit.slowest();
+		Assertions.assertEquals(3, slowest.size());
+		Assertions.assertEquals("a", slowest.get(0).prefix);
+		Assertions.assertEquals(unit.nodesVisited().max(), slowest.get(0).nodes);
+		Assertions.assertTrue(slowest.get(0).nanos >= slowest.get(1).nanos);
+		Assertions.assertTrue(unit.dump().contains("\"a\""));
+	}
+
+	@Test
+	public void shouldKeepOnlyTheSlowestPrefixes() {
+		DictionaryMetrics unit = new DictionaryMetrics();
+		long now = System.nanoTime();
+		for (int i = 0; i < 3 * DictionaryMetrics.SLOWEST; i++) {
+			// Later predictions started earlier, so they are slower
+			unit.recordPredict("p" + (i % (2 * DictionaryMetrics.SLOWEST)), now - i * 1_000_000L, 5, 5);
+		}
+		List<DictionaryMetrics.SlowPrefix> slowest = unit.slowest();
+		Assertions.assertEquals(DictionaryMetrics.SLOWEST, slowest.size());
+		Assertions.assertEquals("p9", slowest.get(0).prefix);
+		Assertions.assertEquals("p0", slowest.get(DictionaryMetrics.SLOWEST - 1).prefix);
+
+		unit.reset();
+		Assertions.assertTrue(unit.slowest().isEmpty());
+		Assertions.assertEquals(0, unit.latency(DictionaryMetrics.Operation.PREDICT).count());
+	}
+
+	@Test
+	public void shouldCountEveryOperationFromManyThreads() throws InterruptedException {
+		DictionaryTree tree = tree(100);
+		DictionaryMetrics unit = new DictionaryMetrics();
+		tree.setMetrics(unit);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			pool.execute(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					tree.contains("a" + Integer.toString(i % 100, 36));
+				}
+			});
+		}
+		pool.shutdown();
+		Assertions.assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+		Assertions.assertEquals(40_000, unit.latency(DictionaryMetrics.Operation.CONTAINS).count());
+	}
+
+	@Test
+	public void shouldExposeTheMetricsOverJmx() throws Exception {
+		DictionaryTree tree = tree(100);
+		DictionaryMetrics unit = new DictionaryMetrics();
+		tree.setMetrics(unit);
+		unit.register("test");
+		try {
+			tree.predict("a", 5);
+			tree.predict("a1", 5);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName predict = new ObjectName("predictivetext:type=DictionaryMetrics,name=\"test\",operation=predict");
+			ObjectName predictions = new ObjectName("predictivetext:type=DictionaryMetrics,name=\"test\"");
+			Assertions.assertEquals(2L, server.getAttribute(predict, "Count"));
+			Assertions.assertEquals(5L, server.getAttribute(predictions, "P99Words"));
+			Assertions.assertEquals(2, ((String[]) server.getAttribute(predictions, "SlowestPrefixes")).length);
+			Assertions.assertThrows(InstanceAlreadyExistsException.class, () -> new DictionaryMetrics().register("test"));
+
+			server.invoke(predictions, "reset", null, null);
+			Assertions.assertEquals(0L, server.getAttribute(predict, "Count"));
+		} finally {
+			unit.unregister();
+		}
+		Assertions.assertTrue(ManagementFactory.getPlatformMBeanServer()
+				.queryNames(new ObjectName("predictivetext:name=\"test\",*"), null).isEmpty());
+	}
+
+}
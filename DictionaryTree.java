@@ -1,20 +1,109 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class DictionaryTree {
+public class DictionaryTree implements Dictionary {
+
+	/**
+	 * The number of completions cached at each node, i.e. the largest n for which
+	 * predict(prefix, n) can be answered without searching the subtree.
+	 */
+	static final int TOP_K = 10;
+
+	/**
+	 * The largest number of distinct prefixes predicted for by one thread in
+	 * predictAll.
+	 */
+	static final int BATCH_THRESHOLD = 256;
+
+	/**
+	 * Orders predictions by popularity (lower values first), then alphabetically
+	 * so that words with equal popularity come out in a stable order.
+	 */
+	static final Comparator<Entry<String, Integer>> RANKING = Entry.<String, Integer>comparingByValue()
+			.thenComparing(Entry.comparingByKey());
 
 	private Map<Character, DictionaryTree> children = new LinkedHashMap<>();
 	public Optional<Integer> popularity = Optional.empty();
 	public boolean wordEnd = false;
 
+	/**
+	 * The (at most) TOP_K most popular words in this subtree, sorted by RANKING.
+	 */
+	private List<Word<String, Integer>> topK = new ArrayList<>();
+
+	/**
+	 * The results of size(), height(), numLeaves() and maximumBranching() for this
+	 * subtree, kept up to date by insert and remove.
+	 */
+	private int size = 1;
+	private int height = 0;
+	private int numLeaves = 1;
+	private int maximumBranching = 0;
+
+	/**
+	 * The number of times this node's word has been selected since the last
+	 * applySelections(), created on the first selection.
+	 */
+	private volatile LongAdder selections;
+
+	/**
+	 * The decayed number of selections of this node's word that applySelections()
+	 * has folded into its rank.
+	 */
+	private double usage = 0;
+
+	/**
+	 * On the root, the words with selections or usage, created on the first
+	 * selection.
+	 */
+	private volatile Set<String> selected;
+
+	private static final AtomicReferenceFieldUpdater<DictionaryTree, LongAdder> SELECTIONS = AtomicReferenceFieldUpdater
+			.newUpdater(DictionaryTree.class, LongAdder.class, "selections");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<DictionaryTree, Set> SELECTED = AtomicReferenceFieldUpdater
+			.newUpdater(DictionaryTree.class, Set.class, "selected");
+
+	/**
+	 * Usage below this is dropped by applySelections(), so that words that are no
+	 * longer picked go back to their popularity.
+	 */
+	static final double MINIMUM_USAGE = 0.01;
+
+	/**
+	 * On the root, where insert, remove, contains and predict(prefix, n) record
+	 * their latencies, or null (the default) to record nothing.
+	 */
+	private volatile DictionaryMetrics metrics;
+
 	/**
 	 * Inserts the given word into this dictionary. If the word already exists,
 	 * nothing will change.
@@ -22,26 +111,20 @@ public class DictionaryTree {
 	 * @param word
 	 *            the word to insert
 	 */
-	void insert(String word) {
+	@Override
+	public void insert(String word) {
 		assert (word != null);
 
 		if (word.isEmpty()) {
 			return;
 		}
 
-		Character firstChar = getFirstCharacter(word);
-
-		// If the character isn't already in the tree, add it
-		children.putIfAbsent(firstChar, new DictionaryTree());
-
-		DictionaryTree d = children.get(firstChar);
-
-		if (word.length() == 1) {
-			children.get(firstChar).wordEnd = true;
-			return;
+		DictionaryMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		inserting(word, 0, Optional.empty());
+		if (m != null) {
+			m.record(DictionaryMetrics.Operation.INSERT, start);
 		}
-
-		d.insert(word.substring(1));
 	}
 
 	/**
@@ -53,69 +136,472 @@ public class DictionaryTree {
 	 * @param popularity
 	 *            the popularity of the inserted word
 	 */
-	void insert(String word, int popularity) {
+	@Override
+	public void insert(String word, int popularity) {
 		assert (word != null);
 
 		if (word.isEmpty())
 			return;
 
-		Character firstChar = getFirstCharacter(word);
+		DictionaryMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		inserting(word, 0, Optional.of(popularity));
+		if (m != null) {
+			m.record(DictionaryMetrics.Operation.INSERT, start);
+		}
+	}
 
-		if (children.containsKey(firstChar) != true) {
-			children.put(firstChar, new DictionaryTree());
+	/**
+	 * Inserts the characters of word from index from onwards below this node (so
+	 * this node is at depth from), then updates the cached completions of each node
+	 * on the path from the bottom up.
+	 */
+	private void inserting(String word, int from, Optional<Integer> popularity) {
+		int length = word.length() - from;
+		DictionaryTree[] path = new DictionaryTree[length + 1];
+		path[0] = this;
+		// The deepest node on the path that was already in the tree
+		int existing = length;
+		for (int i = 0; i < length; i++) {
+			DictionaryTree d = path[i].children.get(word.charAt(from + i));
+			// If the character isn't already in the tree, add it
+			if (d == null) {
+				if (existing == length) {
+					existing = i;
+				}
+				d = new DictionaryTree();
+				path[i].children.put(word.charAt(from + i), d);
+			}
+			path[i + 1] = d;
+		}
+		if (existing < length) {
+			grown(path, existing, length);
 		}
 
-		DictionaryTree d = children.get(firstChar);
+		DictionaryTree end = path[length];
+		if (end.wordEnd && !popularity.isPresent()) {
+			return;
+		}
+		if (popularity.isPresent()) {
+			end.popularity = popularity;
+		}
+		end.wordEnd = true;
 
-		if (word.length() == 1) {
-			d.popularity = Optional.of(popularity);
-			d.wordEnd = true;
+		Word<String, Integer> entry = new Word<String, Integer>(word, end.rank());
+		for (int i = length; i >= 0; i--) {
+			path[i].cache(entry, from + i);
+		}
+	}
+
+	/**
+	 * Builds a dictionary from a list of words, in parallel, giving each word its
+	 * index in the list as its popularity (so a word that appears more than once
+	 * gets its last index, as if the words were inserted in order). The result is
+	 * the same tree, with children in the same order, as inserting the words one
+	 * by one.
+	 *
+	 * @param words
+	 *            the words, most popular first; empty words are skipped
+	 * @param pool
+	 *            the pool to build the subtrees on
+	 * @return the dictionary
+	 */
+	static DictionaryTree build(String[] words, ForkJoinPool pool) {
+		int count = 0;
+		int[] indices = new int[words.length];
+		for (int i = 0; i < words.length; i++) {
+			if (!words[i].isEmpty()) {
+				indices[count++] = i;
+			}
+		}
+		return build(words, Arrays.copyOf(indices, count), pool);
+	}
+
+	/**
+	 * Builds a dictionary from some of the words in a list, in parallel, giving
+	 * each word its index in the whole list as its popularity, like build(words,
+	 * pool) does.
+	 *
+	 * @param words
+	 *            the words, most popular first
+	 * @param indices
+	 *            the indices of the words to build from, in increasing order; none
+	 *            of them may be of an empty word
+	 * @param pool
+	 *            the pool to build the subtrees on
+	 * @return the dictionary
+	 */
+	static DictionaryTree build(String[] words, int[] indices, ForkJoinPool pool) {
+		return pool.invoke(new Build(words, indices, 0));
+	}
+
+	/**
+	 * Builds the subtree for some words that share their first depth characters.
+	 * Small subtrees are built by inserting the words in order. Larger ones are
+	 * split by the next character, and the subtrees for each character are built
+	 * in parallel and then attached in the order their first word appears.
+	 */
+	private static class Build extends RecursiveTask<DictionaryTree> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The number of words below which a subtree isn't split any further.
+		 */
+		static final int SEQUENTIAL_THRESHOLD = 4096;
+
+		private final String[] words;
+		private final int[] indices;
+		private final int depth;
+
+		/**
+		 * @param words
+		 *            all of the words
+		 * @param indices
+		 *            the indices of the words in this subtree, in increasing order
+		 * @param depth
+		 *            the depth of the subtree's root
+		 */
+		Build(String[] words, int[] indices, int depth) {
+			this.words = words;
+			this.indices = indices;
+			this.depth = depth;
+		}
+
+		@Override
+		protected DictionaryTree compute() {
+			DictionaryTree d = new DictionaryTree();
+			if (indices.length <= SEQUENTIAL_THRESHOLD) {
+				for (int index : indices) {
+					d.inserting(words[index], depth, Optional.of(index));
+				}
+				return d;
+			}
+
+			// Group the words by their next character, numbering the groups in the
+			// order they first appear
+			Map<Character, Integer> groups = new LinkedHashMap<>();
+			int[] group = new int[indices.length];
+			int[] sizes = new int[indices.length];
+			for (int i = 0; i < indices.length; i++) {
+				String word = words[indices[i]];
+				if (word.length() == depth) {
+					d.wordEnd = true;
+					d.popularity = Optional.of(indices[i]);
+					group[i] = -1;
+					continue;
+				}
+				Integer g = groups.putIfAbsent(word.charAt(depth), groups.size());
+				group[i] = g == null ? groups.size() - 1 : g;
+				sizes[group[i]]++;
+			}
+
+			int[][] split = new int[groups.size()][];
+			for (int g = 0; g < split.length; g++) {
+				split[g] = new int[sizes[g]];
+				sizes[g] = 0;
+			}
+			for (int i = 0; i < indices.length; i++) {
+				if (group[i] != -1) {
+					split[group[i]][sizes[group[i]]++] = indices[i];
+				}
+			}
+
+			List<Build> tasks = new ArrayList<>();
+			for (int[] part : split) {
+				tasks.add(new Build(words, part, depth + 1));
+			}
+			invokeAll(tasks);
+
+			int g = 0;
+			for (Character c : groups.keySet()) {
+				d.children.put(c, tasks.get(g++).join());
+			}
+			d.refreshTopK(words[indices[0]].substring(0, depth));
+			d.updateAggregates();
+			return d;
+		}
+
+	}
+
+	/**
+	 * Updates the aggregates on a path after a chain of new nodes was added below
+	 * path[existing], in O(1) per node.
+	 *
+	 * @param path
+	 *            the nodes on the path, where path[existing + 1] to path[length]
+	 *            are new
+	 */
+	private static void grown(DictionaryTree[] path, int existing, int length) {
+		int added = length - existing;
+		// A new chain below a leaf just makes it longer, otherwise it's a new leaf
+		int addedLeaves = path[existing].children.size() == 1 ? 0 : 1;
+		for (int i = length - 1; i > existing; i--) {
+			DictionaryTree d = path[i];
+			d.size = length - i + 1;
+			d.height = length - i;
+			d.maximumBranching = 1;
+		}
+		for (int i = existing; i >= 0; i--) {
+			DictionaryTree d = path[i];
+			DictionaryTree child = path[i + 1];
+			d.size += added;
+			d.numLeaves += addedLeaves;
+			d.height = Math.max(d.height, child.height + 1);
+			d.maximumBranching = Math.max(d.maximumBranching, Math.max(d.children.size(), child.maximumBranching));
+		}
+	}
+
+	/**
+	 * Recomputes this node's aggregates from those of its children.
+	 */
+	private void updateAggregates() {
+		size = 1;
+		height = 0;
+		numLeaves = children.isEmpty() ? 1 : 0;
+		maximumBranching = children.size();
+		for (DictionaryTree d : children.values()) {
+			size += d.size;
+			height = Math.max(height, d.height + 1);
+			numLeaves += d.numLeaves;
+			maximumBranching = Math.max(maximumBranching, d.maximumBranching);
+		}
+	}
+
+	/**
+	 * Adds (or re-ranks) the given entry in this node's cached completions.
+	 *
+	 * @param entry
+	 *            the word and its popularity
+	 * @param depth
+	 *            the depth of this node, so that the word's first depth characters
+	 *            lead to it
+	 */
+	private void cache(Word<String, Integer> entry, int depth) {
+		boolean wasCached = topK.removeIf(e -> e.getKey().equals(entry.getKey()));
+		boolean wasFull = wasCached && topK.size() == TOP_K - 1;
+
+		int index = Collections.binarySearch(topK, entry, RANKING);
+		index = index < 0 ? -index - 1 : index;
+
+		if (index >= TOP_K) {
+			return;
+		}
+		// A word that was re-ranked into last place might now be beaten by one
+		// that wasn't cached
+		if (wasFull && index == TOP_K - 1) {
+			refreshTopK(entry.getKey().substring(0, depth));
 			return;
 		}
+		topK.add(index, entry);
+		if (topK.size() > TOP_K) {
+			topK.remove(TOP_K);
+		}
+	}
 
-		d.insert(word.substring(1), popularity);
+	/**
+	 * Rebuilds this node's cached completions from its own word and the caches of
+	 * its children.
+	 *
+	 * @param path
+	 *            the characters leading to this node
+	 */
+	private void refreshTopK(String path) {
+		List<Word<String, Integer>> merged = new ArrayList<>();
+		if (wordEnd) {
+			merged.add(new Word<String, Integer>(path, rank()));
+		}
+		for (DictionaryTree d : children.values()) {
+			merged.addAll(d.topK);
+		}
+		merged.sort(RANKING);
+		topK = new ArrayList<>(merged.subList(0, Math.min(TOP_K, merged.size())));
 	}
 
 	/**
-	 * Removes the specified word from this dictionary. Returns true if the caller
-	 * can delete this node without losing part of the dictionary, i.e. if this node
-	 * has no children after deleting the specified word.
+	 * Removes the specified word from this dictionary, along with the nodes leading
+	 * to it that no other word uses.
 	 *
 	 * @param word
 	 *            the word to delete from this dictionary
-	 * @return whether or not the parent can delete this node from its children
+	 * @return true if any nodes were deleted, false if the word was only unmarked
+	 *         (because it is a prefix of another word) or wasn't in the dictionary
 	 */
-	boolean remove(String word) {
+	@Override
+	public boolean remove(String word) {
 		assert (word != null);
-		if (word.length() == 0) {
+
+		DictionaryMetrics m = metrics;
+		if (m == null) {
+			return removing(word);
+		}
+		long start = System.nanoTime();
+		boolean deleted = removing(word);
+		m.record(DictionaryMetrics.Operation.REMOVE, start);
+		return deleted;
+	}
+
+	private boolean removing(String word) {
+		DictionaryTree[] path = new DictionaryTree[word.length() + 1];
+		path[0] = this;
+		for (int i = 0; i < word.length(); i++) {
+			path[i + 1] = path[i].children.get(word.charAt(i));
+			if (path[i + 1] == null) {
+				return false;
+			}
+		}
+		DictionaryTree end = path[word.length()];
+		if (!end.wordEnd || word.isEmpty()) {
 			return false;
 		}
-		Character firstChar = getFirstCharacter(word);
-		if (children.containsKey(firstChar) == false) {
+		end.wordEnd = false;
+		end.popularity = Optional.empty();
+		end.usage = 0;
+		end.selections = null;
+		if (selected != null) {
+			selected.remove(word);
+		}
+
+		// Delete the nodes at the end of the path that no longer lead to a word
+		int depth = word.length();
+		while (depth > 0 && path[depth].children.isEmpty() && !path[depth].wordEnd) {
+			path[depth - 1].children.remove(word.charAt(depth - 1));
+			depth--;
+		}
+		boolean deleted = depth < word.length();
+
+		// Only the nodes that had the word cached need their cache rebuilt, and if a
+		// node didn't have it then neither did any node above it
+		boolean cached = true;
+		for (int i = depth; i >= 0; i--) {
+			if (cached) {
+				cached = path[i].topK.removeIf(e -> e.getKey().equals(word));
+				if (cached) {
+					path[i].refreshTopK(word.substring(0, i));
+				}
+			}
+			if (deleted) {
+				path[i].updateAggregates();
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Records that the given word was selected from the predictions. Selections
+	 * only count a LongAdder on the word's node, so this can be called from any
+	 * number of threads at once (as long as nothing changes the tree at the same
+	 * time); they change the ranking at the next applySelections().
+	 *
+	 * @param word
+	 *            the selected word
+	 * @return false if the word is not in this dictionary, so nothing was recorded
+	 */
+	boolean recordSelection(String word) {
+		assert (word != null);
+
+		DictionaryTree d = getSubtree(word);
+		if (d == null || !d.wordEnd) {
 			return false;
 		}
-		if (word.length() == 1) { // A 0 length string should never be added
+		LongAdder counter = d.selections;
+		if (counter == null) {
+			SELECTIONS.compareAndSet(d, null, new LongAdder());
+			counter = d.selections;
+		}
+		counter.increment();
+
+		if (selected == null) {
+			SELECTED.compareAndSet(this, null, ConcurrentHashMap.newKeySet());
+		}
+		selected.add(word);
+		return true;
+	}
 
-			// If height == 1 then
-			if (height() == 1) {
-				children.remove(firstChar);
-			} else {
-				children.get(firstChar).wordEnd = false;
-				children.get(firstChar).popularity = Optional.empty();
+	/**
+	 * Folds the selections recorded since the last call into the ranking, after
+	 * multiplying the usage of every selected word by decay, so that selections
+	 * count for less as they get older. Meant to be called periodically, like
+	 * insert (i.e. not at the same time as other reads or writes).
+	 *
+	 * Each word whose rank changes is re-cached on the path to it, like an insert,
+	 * so this is O(length) for each word that has been selected.
+	 *
+	 * @param decay
+	 *            the factor (between 0 and 1) to multiply the old usage by
+	 */
+	void applySelections(double decay) {
+		assert (decay >= 0 && decay <= 1);
+
+		if (selected == null) {
+			return;
+		}
+		for (String word : selected) {
+			DictionaryTree[] path = new DictionaryTree[word.length() + 1];
+			path[0] = this;
+			for (int i = 0; i < word.length(); i++) {
+				path[i + 1] = path[i].children.get(word.charAt(i));
+			}
+			DictionaryTree end = path[word.length()];
+
+			int before = end.rank();
+			LongAdder counter = end.selections;
+			end.usage = end.usage * decay + (counter == null ? 0 : counter.sumThenReset());
+			if (end.usage < MINIMUM_USAGE) {
+				end.usage = 0;
+				end.selections = null;
+				selected.remove(word);
+			}
+			if (end.rank() == before) {
+				continue;
 			}
 
-			return true;
-		} else {
-			if (maximumBranching() < 2 && height() == word.length()) {
-				children.remove(firstChar);
-				return true;
-			} else {
-				children.get(firstChar).remove(word.substring(1));
-				return false;
+			Word<String, Integer> entry = new Word<String, Integer>(word, end.rank());
+			for (int depth = word.length(); depth >= 0; depth--) {
+				path[depth].cache(entry, depth);
 			}
 		}
 	}
 
+	/**
+	 * @param word
+	 *            a word in the dictionary
+	 * @return the usage of the word as of the last applySelections()
+	 */
+	double getUsage(String word) {
+		DictionaryTree d = getSubtree(word);
+		return d == null ? 0 : d.usage;
+	}
+
+	/**
+	 * @return the value this node's word is ranked by: its popularity, divided by
+	 *         one more than its usage (if it is positive) so that selected words
+	 *         move up, and at least ceil(usage) less than its popularity, so that
+	 *         more usage always moves a word up, even from a popularity of 0 or
+	 *         less
+	 */
+	int rank() {
+		int base = popularity.orElse(0);
+		if (usage == 0) {
+			return base;
+		}
+		long divided = base > 0 ? (long) Math.floor(base / (1 + usage)) : base;
+		long shifted = base - (long) Math.ceil(Math.min(usage, Integer.MAX_VALUE));
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(divided, shifted));
+	}
+
+	/**
+	 * Starts or stops recording the latencies of insert, remove, contains and
+	 * predict(prefix, n) called on this node (normally the root). Other ways of
+	 * reaching the tree, like predictAll or a PredictionSession, aren't recorded.
+	 *
+	 * @param metrics
+	 *            where to record them, or null to stop
+	 */
+	void setMetrics(DictionaryMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	/**
 	 * Determines whether or not the specified word is in this dictionary.
 	 *
@@ -123,20 +609,37 @@ public class DictionaryTree {
 	 *            the word whose presence will be checked
 	 * @return true if the specified word is stored in this tree; false otherwise
 	 */
-	boolean contains(String word) {
+	@Override
+	public boolean contains(String word) {
 		assert (word != null);
 
-		if (word.isEmpty()) {
-			return wordEnd;
-		} else if (children.containsKey(getFirstCharacter(word))) {
-			if (word.length() == 1) {
-				System.out.println(word.substring(1));
-			}
-			return children.get(getFirstCharacter(word)).contains(word.substring(1));
-		} else {
-			return false;
+		DictionaryMetrics m = metrics;
+		if (m == null) {
+			return contains(word, 0, word.length());
 		}
+		long start = System.nanoTime();
+		boolean found = contains(word, 0, word.length());
+		m.record(DictionaryMetrics.Operation.CONTAINS, start);
+		return found;
+	}
 
+	/**
+	 * Determines whether or not the specified part of a character sequence is a
+	 * word in this dictionary, without copying it.
+	 *
+	 * @param word
+	 *            the characters holding the word
+	 * @param offset
+	 *            the index of the first character of the word
+	 * @param length
+	 *            the number of characters in the word
+	 * @return true if the specified word is stored in this tree; false otherwise
+	 */
+	boolean contains(CharSequence word, int offset, int length) {
+		assert (word != null);
+
+		DictionaryTree d = getSubtree(word, offset, length);
+		return d != null && d.wordEnd;
 	}
 
 	/**
@@ -145,7 +648,8 @@ public class DictionaryTree {
 	 * @return a word that starts with the given prefix, or an empty optional if no
 	 *         such word is found.
 	 */
-	Optional<String> predict(String prefix) {
+	@Override
+	public Optional<String> predict(String prefix) {
 		assert (prefix != null);
 		if (isPrefix(prefix) != true) {
 			return Optional.empty();
@@ -154,21 +658,19 @@ public class DictionaryTree {
 		}
 	}
 
+	/**
+	 * Follows prefix, then keeps taking the first child until it reaches a word
+	 * end or a leaf. Assumes prefix is in the tree.
+	 */
 	Optional<String> predicting(String prefix) {
-		if (prefix.isEmpty()) {
-			if (children.keySet().iterator().hasNext() && wordEnd == false) {
-				Character nextChar = children.keySet().iterator().next();
-				return Optional.of(nextChar.toString() + children.get(nextChar).predicting(prefix).get());
-			} else {
-				return Optional.of("");
-			}
-		} else {
-			Character firstChar = getFirstCharacter(prefix);
-
-			return Optional.of(firstChar.toString() + children.get(firstChar).predicting(prefix.substring(1)).get());
-
+		StringBuilder word = new StringBuilder(prefix);
+		DictionaryTree d = getSubtree(prefix);
+		while (!d.children.isEmpty() && d.wordEnd == false) {
+			Entry<Character, DictionaryTree> next = d.children.entrySet().iterator().next();
+			word.append(next.getKey().charValue());
+			d = next.getValue();
 		}
-
+		return Optional.of(word.toString());
 	}
 
 	/**
@@ -180,117 +682,498 @@ public class DictionaryTree {
 	 *            the prefix of the words found
 	 * @return the (at most) n most popular words with the specified prefix
 	 */
-	List<String> predict(String prefix, int n) {
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (prefix != null);
+
+		DictionaryMetrics m = metrics;
+		if (m == null) {
+			return predict(prefix, 0, prefix.length(), n);
+		}
+		long start = System.nanoTime();
+		int[] visited = { 0 };
+		List<String> words = predicting(prefix, n, visited);
+		m.recordPredict(prefix, start, words.size(), visited[0]);
+		return words;
+	}
+
+	/**
+	 * Does what predict(prefix, 0, prefix.length(), n) does, counting the nodes it
+	 * visits on the way.
+	 *
+	 * @param visited
+	 *            where the number of nodes visited is added, at index 0
+	 */
+	private List<String> predicting(String prefix, int n, int[] visited) {
+		assert (n >= 0);
+
+		DictionaryTree d = this;
+		visited[0]++;
+		for (int i = 0; i < prefix.length() && d != null; i++) {
+			d = d.children.get(prefix.charAt(i));
+			visited[0] += d == null ? 0 : 1;
+		}
+		if (d == null) {
+			return new LinkedList<String>();
+		}
+		return d.completions(prefix, 0, prefix.length(), n, visited);
+	}
+
+	/**
+	 * Predicts the (at most) n most popular words starting with the specified part
+	 * of a character sequence. The prefix is only copied if n is greater than
+	 * TOP_K.
+	 *
+	 * @param prefix
+	 *            the characters holding the prefix
+	 * @param offset
+	 *            the index of the first character of the prefix
+	 * @param length
+	 *            the number of characters in the prefix
+	 * @param n
+	 *            the maximum number of words to return
+	 * @return the (at most) n most popular words with the specified prefix
+	 */
+	List<String> predict(CharSequence prefix, int offset, int length, int n) {
 		assert (n >= 0);
 		assert (prefix != null);
 
-		ArrayList<Entry<String, Integer>> list = new ArrayList<Entry<String, Integer>>();
+		DictionaryTree d = getSubtree(prefix, offset, length);
+		if (d == null) {
+			return new LinkedList<String>();
+		}
+		return d.completions(prefix, offset, length, n);
+	}
 
-		predicting(prefix, "", list);
+	/**
+	 * Predicts the (at most) n most popular words in this subtree, which is the
+	 * node reached by the given prefix. The prefix is only copied if n is greater
+	 * than TOP_K.
+	 *
+	 * @param prefix
+	 *            the characters holding the prefix that leads to this node
+	 * @param offset
+	 *            the index of the first character of the prefix
+	 * @param length
+	 *            the number of characters in the prefix
+	 * @param n
+	 *            the maximum number of words to return
+	 * @return the (at most) n most popular words in this subtree
+	 */
+	List<String> completions(CharSequence prefix, int offset, int length, int n) {
+		return completions(prefix, offset, length, n, null);
+	}
 
-		list.sort(Entry.comparingByValue());
-		int index = 0;
+	/**
+	 * Does what completions(prefix, offset, length, n) does, and if visited isn't
+	 * null, adds the number of nodes below this one expanded by the search (if
+	 * any) to visited[0].
+	 */
+	private List<String> completions(CharSequence prefix, int offset, int length, int n, int[] visited) {
 		List<String> sortedList = new LinkedList<String>();
-		while (index < n && index < list.size()) {
-			// System.out.println("Adding: " + list.get(index).getKey());
-			sortedList.add(index, list.get(index).getKey());
-			index++;
+		if (n <= TOP_K) {
+			for (int i = 0; i < n && i < topK.size(); i++) {
+				sortedList.add(topK.get(i).getKey());
+			}
+			return sortedList;
+		}
+		if (topK.isEmpty()) {
+			return sortedList;
+		}
+
+		// Best-first search: a subtree is only expanded once nothing left in the
+		// queue can beat the best word it holds, so it stops after n words instead
+		// of visiting the whole subtree
+		PriorityQueue<Candidate<DictionaryTree>> queue = new PriorityQueue<Candidate<DictionaryTree>>();
+		queue.add(new Candidate<DictionaryTree>(this, prefix.subSequence(offset, offset + length).toString(),
+				bestPopularity()));
+		int expanded = search(queue, sortedList, n);
+		if (visited != null) {
+			// Less this node, which the search starts by expanding
+			visited[0] += expanded - 1;
 		}
 		return sortedList;
 	}
 
-	void predicting(String prefix, String word, List<Entry<String, Integer>> list) {
-		assert (prefix != null);
+	/**
+	 * Predicts the (at most) n most popular words for each of a batch of prefixes,
+	 * on the common fork-join pool if the batch is large.
+	 *
+	 * @param prefixes
+	 *            the prefixes
+	 * @param n
+	 *            the maximum number of words to return for each prefix
+	 * @return the predictions for each prefix, in the same order as prefixes
+	 */
+	List<List<String>> predictAll(List<String> prefixes, int n) {
+		return predictAll(prefixes, n, ForkJoinPool.commonPool());
+	}
 
-		if (prefix.isEmpty()) { //
-			for (Character c : children.keySet()) {
-				if (children.get(c).wordEnd == true) {
-					list.add(new Word<String, Integer>(new String(word + c.toString()),
-							children.get(c).popularity.orElse(0)));
-				}
-				children.get(c).predicting(prefix, word + c.toString(), list);
+	/**
+	 * Predicts the (at most) n most popular words for each of a batch of prefixes.
+	 * The prefixes are deduplicated and sorted, so that prefixes that share their
+	 * first characters come one after the other and the walk down from the root
+	 * for each only goes on from where the last one's left off. Batches of more
+	 * than BATCH_THRESHOLD distinct prefixes are split up between the threads of
+	 * the given pool. Small batches with n of at most TOP_K are just predicted one
+	 * by one, as their predictions are read from the cached completions anyway.
+	 *
+	 * @param prefixes
+	 *            the prefixes
+	 * @param n
+	 *            the maximum number of words to return for each prefix
+	 * @param pool
+	 *            the pool to split large batches over
+	 * @return the predictions for each prefix, in the same order as prefixes (a
+	 *         list of its own for each, even for a prefix that appears more than
+	 *         once)
+	 */
+	List<List<String>> predictAll(List<String> prefixes, int n, ForkJoinPool pool) {
+		assert (prefixes != null);
+		assert (n >= 0);
+
+		if (n <= TOP_K && prefixes.size() <= BATCH_THRESHOLD) {
+			// Each prediction is just a short walk and a copy of a cached list, which
+			// is cheaper than sorting the batch to share the walks
+			List<List<String>> results = new ArrayList<>(prefixes.size());
+			for (String prefix : prefixes) {
+				results.add(predict(prefix, n));
+			}
+			return results;
+		}
+
+		Map<String, List<String>> byPrefix = new HashMap<>();
+		for (String prefix : prefixes) {
+			byPrefix.put(prefix, null);
+		}
+		String[] sorted = byPrefix.keySet().toArray(new String[0]);
+		Arrays.sort(sorted);
+
+		List<List<String>> found = new ArrayList<>(Collections.<List<String>>nCopies(sorted.length, null));
+		if (sorted.length <= BATCH_THRESHOLD) {
+			predictSorted(sorted, 0, sorted.length, n, found);
+		} else {
+			pool.invoke(new PredictBatch(sorted, 0, sorted.length, n, found));
+		}
+		for (int i = 0; i < sorted.length; i++) {
+			byPrefix.put(sorted[i], found.get(i));
+		}
 
+		// A repeated prefix gets a copy, so that changing one list can't change another
+		Set<String> returned = new HashSet<>();
+		List<List<String>> results = new ArrayList<>(prefixes.size());
+		for (String prefix : prefixes) {
+			List<String> predicted = byPrefix.get(prefix);
+			results.add(returned.add(prefix) ? predicted : new LinkedList<String>(predicted));
+		}
+		return results;
+	}
+
+	/**
+	 * Predicts for the sorted prefixes in [from, to), keeping the path to the last
+	 * prefix so that the next one starts from the node they have in common.
+	 *
+	 * @param results
+	 *            where the predictions for prefixes[i] are put, at index i
+	 */
+	private void predictSorted(String[] prefixes, int from, int to, int n, List<List<String>> results) {
+		DictionaryTree[] path = new DictionaryTree[16];
+		path[0] = this;
+		String previous = "";
+		for (int i = from; i < to; i++) {
+			String prefix = prefixes[i];
+			int common = 0;
+			while (common < previous.length() && common < prefix.length()
+					&& previous.charAt(common) == prefix.charAt(common)) {
+				common++;
+			}
+			if (prefix.length() >= path.length) {
+				path = Arrays.copyOf(path, Math.max(2 * path.length, prefix.length() + 1));
 			}
+			for (int k = common; k < prefix.length(); k++) {
+				path[k + 1] = path[k] == null ? null : path[k].children.get(prefix.charAt(k));
+			}
+
+			DictionaryTree d = path[prefix.length()];
+			results.set(i, d == null ? new LinkedList<String>() : d.completions(prefix, 0, prefix.length(), n));
+			previous = prefix;
+		}
+	}
 
-		} else if (prefix.length() == 1) {
-			if (children.containsKey(getFirstCharacter(prefix))) {
-				if (children.get(getFirstCharacter(prefix)).wordEnd == true) {
-					list.add(new Word<String, Integer>(word + new String(prefix),
-							children.get(getFirstCharacter(prefix)).popularity.orElse(0)));
+	/**
+	 * Splits a range of sorted prefixes in half until each part is small enough
+	 * for predictSorted.
+	 */
+	private class PredictBatch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String[] prefixes;
+		private final int from;
+		private final int to;
+		private final int n;
+		private final List<List<String>> results;
+
+		PredictBatch(String[] prefixes, int from, int to, int n, List<List<String>> results) {
+			this.prefixes = prefixes;
+			this.from = from;
+			this.to = to;
+			this.n = n;
+			this.results = results;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_THRESHOLD) {
+				predictSorted(prefixes, from, to, n, results);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new PredictBatch(prefixes, from, middle, n, results),
+					new PredictBatch(prefixes, middle, to, n, results));
+		}
+
+	}
+
+	/**
+	 * Takes candidates out of the queue in order, expanding the subtrees, and adds
+	 * the words to results until it holds n words or the queue is empty.
+	 *
+	 * @param queue
+	 *            the subtrees (and words) to search
+	 * @param results
+	 *            the collection to add the words to; if it is a set, words already
+	 *            in it are skipped
+	 * @param n
+	 *            the number of words results should end up with
+	 * @return the number of subtrees expanded
+	 */
+	private static int search(PriorityQueue<Candidate<DictionaryTree>> queue, Collection<String> results, int n) {
+		int expanded = 0;
+		while (!queue.isEmpty() && results.size() < n) {
+			Candidate<DictionaryTree> next = queue.poll();
+			if (next.node == null) {
+				results.add(next.word);
+				continue;
+			}
+			if (next.node.wordEnd) {
+				queue.add(new Candidate<DictionaryTree>(null, next.word, next.node.rank()));
+			}
+			for (Entry<Character, DictionaryTree> child : next.node.children.entrySet()) {
+				if (!child.getValue().topK.isEmpty()) {
+					queue.add(new Candidate<DictionaryTree>(child.getValue(), next.word + child.getKey(),
+							child.getValue().bestPopularity()));
 				}
-				children.get(getFirstCharacter(prefix)).predicting("", word + getFirstCharacter(prefix), list);
 			}
+			expanded++;
+		}
+		return expanded;
+	}
 
-		} else {
-			if (children.containsKey(getFirstCharacter(prefix))) {
-				children.get(getFirstCharacter(prefix)).predicting(prefix.substring(1),
-						word + getFirstCharacter(prefix), list);
+	/**
+	 * Predicts the (at most) n best words that start with something within maxEdits
+	 * edits (insertions, deletions or substitutions) of the given prefix, so that
+	 * a typo in the prefix doesn't stop the prediction. Words are ranked by that
+	 * distance, then by popularity.
+	 *
+	 * @param prefix
+	 *            the typed prefix, which may contain mistakes
+	 * @param maxEdits
+	 *            the largest number of edits allowed
+	 * @param n
+	 *            the maximum number of words to return
+	 * @return the (at most) n best words
+	 */
+	List<String> predictFuzzy(String prefix, int maxEdits, int n) {
+		assert (prefix != null);
+		assert (maxEdits >= 0);
+		assert (n >= 0);
+
+		// A node deeper than this is more than maxEdits away from prefix
+		int[][] rows = new int[prefix.length() + maxEdits + 2][prefix.length() + 1];
+		for (int j = 0; j <= prefix.length(); j++) {
+			rows[0][j] = j;
+		}
+		List<FuzzyMatch> matches = new ArrayList<>();
+		fuzzyMatches(prefix, maxEdits, rows, 0, new StringBuilder(), Integer.MAX_VALUE, matches);
+
+		// The words within distance d are the subtrees of the highest matches
+		// within d, which don't overlap, so each distance is one best-first search
+		// over them that skips the words already found at a smaller distance
+		Set<String> results = new LinkedHashSet<>();
+		for (int distance = 0; distance <= maxEdits && results.size() < n; distance++) {
+			PriorityQueue<Candidate<DictionaryTree>> queue = new PriorityQueue<Candidate<DictionaryTree>>();
+			for (FuzzyMatch match : matches) {
+				if (match.distance <= distance && distance < match.above && !match.node.topK.isEmpty()) {
+					queue.add(new Candidate<DictionaryTree>(match.node, match.word, match.node.bestPopularity()));
+				}
 			}
+			search(queue, results, n);
 		}
+		return new LinkedList<String>(results);
 	}
 
 	/**
-	 * @return the number of leaves in this tree, i.e. the number of words which are
-	 *         not prefixes of any other word.
+	 * Walks this subtree working out the edit distance between prefix and the
+	 * characters leading to each node, one row of the Levenshtein table per node,
+	 * and collects the nodes that match more closely than any node above them.
+	 *
+	 * @param rows
+	 *            rows[depth] holds the distances between the characters leading to
+	 *            this node and each prefix of prefix, and the rows below it are
+	 *            used for the children
+	 * @param path
+	 *            the characters leading to this node
+	 * @param above
+	 *            the smallest distance of a match above this node
+	 * @param matches
+	 *            collects the matches
 	 */
-	int numLeaves() {
+	private void fuzzyMatches(String prefix, int maxEdits, int[][] rows, int depth, StringBuilder path, int above,
+			List<FuzzyMatch> matches) {
+		int[] row = rows[depth];
+		int distance = row[prefix.length()];
+		if (distance <= maxEdits && distance < above) {
+			matches.add(new FuzzyMatch(this, path.toString(), distance, above));
+			above = distance;
+		}
 
-		return fold(numLeavesFun);
+		// No entry in a child's row can be smaller than the smallest in this one
+		int closest = Integer.MAX_VALUE;
+		for (int d : row) {
+			closest = Math.min(closest, d);
+		}
+		if (closest > maxEdits || closest >= above) {
+			return;
+		}
 
-		/*
-		 * int numLeaves = 0;
-		 * 
-		 * for (Character c : children.keySet()) { if (children.get(c).size() > 1) {
-		 * numLeaves += children.get(c).numLeaves(); } else { numLeaves += 1; } }
-		 * 
-		 * return numLeaves;
+		int[] next = rows[depth + 1];
+		for (Entry<Character, DictionaryTree> child : children.entrySet()) {
+			char c = child.getKey();
+			next[0] = depth + 1;
+			for (int j = 1; j <= prefix.length(); j++) {
+				int substitution = row[j - 1] + (prefix.charAt(j - 1) == c ? 0 : 1);
+				next[j] = Math.min(substitution, Math.min(row[j], next[j - 1]) + 1);
+			}
+			path.append(c);
+			child.getValue().fuzzyMatches(prefix, maxEdits, rows, depth + 1, path, above, matches);
+			path.setLength(depth);
+		}
+	}
+
+	/**
+	 * A node found by predictFuzzy, whose words are all within distance of the
+	 * prefix.
+	 */
+	private static class FuzzyMatch {
+
+		final DictionaryTree node;
+		final String word;
+		final int distance;
+
+		/**
+		 * The smallest distance of a match above this one, so this is the highest
+		 * match within d for distance <= d < above.
 		 */
+		final int above;
+
+		FuzzyMatch(DictionaryTree node, String word, int distance, int above) {
+			this.node = node;
+			this.word = word;
+			this.distance = distance;
+			this.above = above;
+		}
+
+	}
+
+	/**
+	 * @return the popularity of the most popular word in this subtree, or
+	 *         Integer.MAX_VALUE if there are no words in it
+	 */
+	int bestPopularity() {
+		return topK.isEmpty() ? Integer.MAX_VALUE : topK.get(0).getValue();
+	}
+
+	/**
+	 * @return a read-only view of the (at most) TOP_K most popular words in this
+	 *         subtree, sorted by RANKING
+	 */
+	List<Word<String, Integer>> getTopK() {
+		return Collections.unmodifiableList(topK);
+	}
+
+	/**
+	 * @return a read-only view of this node's children, in insertion order
+	 */
+	Map<Character, DictionaryTree> getChildren() {
+		return Collections.unmodifiableMap(children);
+	}
+
+	/**
+	 * @param c
+	 *            the character on the edge to the child
+	 * @return the child for c, or null if there isn't one
+	 */
+	DictionaryTree getChild(char c) {
+		return children.get(c);
+	}
+
+	/**
+	 * @param prefix
+	 *            the characters to follow from this node
+	 * @return the node reached by following prefix, or null if prefix is not in
+	 *         this tree
+	 */
+	DictionaryTree getSubtree(String prefix) {
+		return getSubtree(prefix, 0, prefix.length());
+	}
+
+	/**
+	 * @param prefix
+	 *            the characters holding the prefix
+	 * @param offset
+	 *            the index of the first character of the prefix
+	 * @param length
+	 *            the number of characters in the prefix
+	 * @return the node reached by following the prefix, or null if it is not in
+	 *         this tree
+	 */
+	DictionaryTree getSubtree(CharSequence prefix, int offset, int length) {
+		DictionaryTree d = this;
+		for (int i = offset; i < offset + length && d != null; i++) {
+			// Boxing a char below 128 uses Character's cache, so this doesn't allocate
+			d = d.children.get(prefix.charAt(i));
+		}
+		return d;
+	}
+
+	/**
+	 * @return the number of leaves in this tree, i.e. the number of words which are
+	 *         not prefixes of any other word.
+	 */
+	int numLeaves() {
+		return numLeaves;
 	}
 
 	/**
 	 * @return the maximum number of children held by any node in this tree
 	 */
 	int maximumBranching() {
-		return fold(maximumBranchingFun);
-
-		/*
-		 * int maxBranch = children.size();
-		 * 
-		 * for (Character c : children.keySet()) { int childBranchNo =
-		 * children.get(c).maximumBranching(); if (childBranchNo > maxBranch) {
-		 * maxBranch = childBranchNo; } }
-		 * 
-		 * return maxBranch;
-		 */
+		return maximumBranching;
 	}
 
 	/**
 	 * @return the height of this tree, i.e. the length of the longest branch
 	 */
 	int height() {
-		return fold(heightFun);
-
-		/*
-		 * if (children.size() == 0) { return 0; } int maxHeight = 0; for (Character c :
-		 * children.keySet()) { int childHeight = children.get(c).height(); if
-		 * (childHeight > maxHeight) { maxHeight = childHeight; } }
-		 * 
-		 * return maxHeight + 1;
-		 */
+		return height;
 	}
 
 	/**
 	 * @return the number of nodes in this tree
 	 */
 	int size() {
-		return fold(sizeFun);
-		/*
-		 * int size = 1;
-		 * 
-		 * for (Character c : children.keySet()) { size += children.get(c).size(); }
-		 * 
-		 * return size;
-		 */
+		return size;
 	}
 
 	/**
@@ -302,7 +1185,7 @@ public class DictionaryTree {
 			return "";
 		} else {
 			int maxHeight = 0;
-			Character currentChar = new Character(children.keySet().iterator().next());
+			Character currentChar = children.keySet().iterator().next();
 			for (Character c : children.keySet()) {
 				int childHeight = children.get(c).height();
 				if (childHeight > maxHeight) {
@@ -318,19 +1201,156 @@ public class DictionaryTree {
 	/**
 	 * @return all words stored in this tree as a list
 	 */
-	List<String> allWords() {
+	@Override
+	public List<String> allWords() {
 		LinkedList<String> list = new LinkedList<String>();
-		allWords2("", list);
+		wordIterator("").forEachRemaining(word -> list.add(word.toString()));
 		return list;
 	}
 
-	void allWords2(String prefix, LinkedList<String> words) {
-		for (Character c : children.keySet()) {
-			if (children.get(c).wordEnd == true) {
-				words.add(new String(prefix + c.toString()));
+	/**
+	 * Lazily enumerates the words starting with a prefix (including the prefix
+	 * itself, if it is a word), in the same order as allWords(). The iterator
+	 * returns the same StringBuilder every time, changed in place, so a word has to
+	 * be copied (e.g. with toString()) to keep it past the next call to next(). The
+	 * tree must not be changed while the iterator is in use.
+	 *
+	 * @param prefix
+	 *            the prefix of the words
+	 * @return an iterator over the words, which is empty if no word starts with the
+	 *         prefix
+	 */
+	Iterator<CharSequence> wordIterator(String prefix) {
+		assert (prefix != null);
+		return new WordIterator(prefix, null);
+	}
+
+	/**
+	 * Lazily enumerates the words starting with a prefix that come after a given
+	 * word in the order of allWords(), without visiting the words before it, so
+	 * the next page of a listing starts straight away.
+	 *
+	 * @param prefix
+	 *            the prefix of the words
+	 * @param after
+	 *            the word to start after, which must start with prefix and be a
+	 *            prefix of the tree (usually the last word of the previous page)
+	 * @return an iterator over the words after the given one, which returns the
+	 *         same StringBuilder every time like wordIterator(prefix)
+	 * @throws IllegalArgumentException
+	 *             if after doesn't start with prefix or isn't in the tree
+	 */
+	Iterator<CharSequence> wordIterator(String prefix, String after) {
+		assert (prefix != null);
+		assert (after != null);
+
+		if (!after.startsWith(prefix) || !isPrefix(after)) {
+			throw new IllegalArgumentException(after + " is not in the tree under " + prefix);
+		}
+		return new WordIterator(prefix, after);
+	}
+
+	/**
+	 * @param prefix
+	 *            the prefix of the words
+	 * @return a lazy stream of the words starting with the prefix, in the same
+	 *         order as allWords()
+	 */
+	Stream<String> words(String prefix) {
+		return toStream(wordIterator(prefix));
+	}
+
+	/**
+	 * @param prefix
+	 *            the prefix of the words
+	 * @param after
+	 *            the word to start after, as for wordIterator(prefix, after)
+	 * @return a lazy stream of the words starting with the prefix that come after
+	 *         the given word, e.g. words(prefix, last).limit(50) for the next page
+	 */
+	Stream<String> words(String prefix, String after) {
+		return toStream(wordIterator(prefix, after));
+	}
+
+	private static Stream<String> toStream(Iterator<CharSequence> words) {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(words, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.map(CharSequence::toString);
+	}
+
+	/**
+	 * A pre-order walk driven by an explicit stack with an iterator over the
+	 * children of each node on the path to the current word, which is built in a
+	 * single StringBuilder.
+	 */
+	private class WordIterator implements Iterator<CharSequence> {
+
+		private final List<Iterator<Entry<Character, DictionaryTree>>> stack = new ArrayList<>();
+		private final StringBuilder word;
+
+		/**
+		 * The length of word when only the node at the bottom of the stack has been
+		 * entered.
+		 */
+		private final int base;
+
+		/**
+		 * Whether word holds a word that next() hasn't returned yet.
+		 */
+		private boolean ready = false;
+
+		WordIterator(String prefix, String after) {
+			word = new StringBuilder(after == null ? prefix : after);
+			base = prefix.length();
+
+			DictionaryTree d = getSubtree(prefix);
+			if (d == null) {
+				return;
+			}
+			ready = d.wordEnd && !prefix.isEmpty() && after == null;
+			stack.add(d.children.entrySet().iterator());
+			if (after == null) {
+				return;
+			}
+
+			// Move each iterator on the path to after just past the character it
+			// took, so the walk carries on from after's subtree
+			for (int i = prefix.length(); i < after.length(); i++) {
+				Iterator<Entry<Character, DictionaryTree>> children = stack.get(stack.size() - 1);
+				Entry<Character, DictionaryTree> child;
+				do {
+					child = children.next();
+				} while (child.getKey() != after.charAt(i));
+				stack.add(child.getValue().children.entrySet().iterator());
 			}
-			children.get(c).allWords2(new String(prefix + c.toString()), words);
 		}
+
+		@Override
+		public boolean hasNext() {
+			while (!ready && !stack.isEmpty()) {
+				Iterator<Entry<Character, DictionaryTree>> children = stack.get(stack.size() - 1);
+				if (!children.hasNext()) {
+					stack.remove(stack.size() - 1);
+					continue;
+				}
+				Entry<Character, DictionaryTree> child = children.next();
+				word.setLength(base + stack.size() - 1);
+				word.append(child.getKey().charValue());
+				stack.add(child.getValue().children.entrySet().iterator());
+				ready = child.getValue().wordEnd;
+			}
+			return ready;
+		}
+
+		@Override
+		public CharSequence next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ready = false;
+			return word;
+		}
+
 	}
 
 	/**
@@ -391,48 +1411,140 @@ public class DictionaryTree {
 		return y.stream().mapToInt(Integer::intValue).sum() + (x.children.size() == 0 ? 1 : 0);
 	};
 
-	Character getFirstCharacter(String word) {
-		assert (word != null && !word.isEmpty());
-		return new Character(word.charAt(0));
+	/**
+	 * The same folds as sizeFun, heightFun, maximumBranchingFun and numLeavesFun,
+	 * for fold(IntFold).
+	 */
+	static final IntFold SIZE_FOLD = new IntFold(0, Integer::sum, (x, c) -> c + 1);
+	static final IntFold HEIGHT_FOLD = new IntFold(-1, Math::max, (x, c) -> c + 1);
+	static final IntFold MAXIMUM_BRANCHING_FOLD = new IntFold(0, Math::max, (x, c) -> Math.max(c, x.children.size()));
+	static final IntFold NUM_LEAVES_FOLD = new IntFold(0, Integer::sum, (x, c) -> x.children.isEmpty() ? 1 : c);
+
+	/**
+	 * Folds the tree using the given int-valued fold.
+	 *
+	 * @param f
+	 *            the fold
+	 * @return the result of folding the tree using f
+	 */
+	int fold(IntFold f) {
+		return (int) fold(f.asLongFold());
 	}
 
-	boolean isPrefix(String word) {
-		assert (word != null);
+	/**
+	 * Folds the tree using the given long-valued fold. Unlike fold(BiFunction) this
+	 * is a loop over an explicit stack rather than a recursion, so deep trees
+	 * can't overflow the Java stack. Apart from growing the stack, the only
+	 * allocation is an iterator over each node's children, which the JIT can
+	 * usually remove by escape analysis once the loop is compiled.
+	 *
+	 * @param f
+	 *            the fold
+	 * @return the result of folding the tree using f
+	 */
+	long fold(LongFold f) {
+		// Each entry is a node waiting for its children, with the index of its
+		// parent's entry and the values of the children combined so far. A node's
+		// children are pushed above it, so its entry stays put until it is done,
+		// in reverse so that they are popped, and combined, in order.
+		DictionaryTree[] nodes = new DictionaryTree[64];
+		int[] parents = new int[64];
+		long[] values = new long[64];
+		boolean[] expanded = new boolean[64];
+		nodes[0] = this;
+		parents[0] = -1;
+		values[0] = f.identity;
+		int top = 0;
+
+		while (true) {
+			DictionaryTree d = nodes[top];
+			if (!expanded[top] && !d.children.isEmpty()) {
+				expanded[top] = true;
+				int parent = top;
+				if (top + d.children.size() >= nodes.length) {
+					int capacity = Math.max(2 * nodes.length, top + d.children.size() + 1);
+					nodes = Arrays.copyOf(nodes, capacity);
+					parents = Arrays.copyOf(parents, capacity);
+					values = Arrays.copyOf(values, capacity);
+					expanded = Arrays.copyOf(expanded, capacity);
+				}
+				int slot = top + d.children.size();
+				for (DictionaryTree child : d.children.values()) {
+					nodes[slot] = child;
+					parents[slot] = parent;
+					values[slot] = f.identity;
+					expanded[slot] = false;
+					slot--;
+				}
+				top += d.children.size();
+				continue;
+			}
 
-		if (word.isEmpty()) {
-			return true;
-		} else if (children.containsKey(getFirstCharacter(word))) {
-			return children.get(getFirstCharacter(word)).isPrefix(word.substring(1));
-		} else {
-			return false;
+			long value = f.node.apply(d, values[top]);
+			int parent = parents[top];
+			nodes[top] = null;
+			if (parent == -1) {
+				return value;
+			}
+			values[parent] = f.combine.applyAsLong(values[parent], value);
+			top--;
 		}
 	}
 
-}
-
-class Word<K, V> implements Map.Entry<K, V> {
-
-	private final K key;
-	private V value;
-
-	public Word(K key, V value) {
-		this.key = key;
-		this.value = value;
+	/**
+	 * Folds the tree using the given int-valued fold, folding the subtree of each
+	 * of the root's children on the given pool.
+	 *
+	 * @param f
+	 *            the fold
+	 * @param pool
+	 *            the pool to fold the subtrees on
+	 * @return the result of folding the tree using f
+	 */
+	int parallelFold(IntFold f, ForkJoinPool pool) {
+		return (int) parallelFold(f.asLongFold(), pool);
 	}
 
-	@Override
-	public K getKey() {
-		return key;
+	/**
+	 * Folds the tree using the given long-valued fold, folding the subtree of each
+	 * of the root's children on the given pool.
+	 *
+	 * @param f
+	 *            the fold
+	 * @param pool
+	 *            the pool to fold the subtrees on
+	 * @return the result of folding the tree using f
+	 */
+	long parallelFold(LongFold f, ForkJoinPool pool) {
+		List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+		for (DictionaryTree child : children.values()) {
+			tasks.add(pool.submit(() -> child.fold(f)));
+		}
+		long value = f.identity;
+		for (ForkJoinTask<Long> task : tasks) {
+			value = f.combine.applyAsLong(value, task.join());
+		}
+		return f.node.apply(this, value);
 	}
 
 	@Override
-	public V getValue() {
-		return value;
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return isPrefix(word, 0, word.length());
 	}
 
-	@Override
-	public V setValue(V value) {
-		return this.value = value;
+	/**
+	 * @param word
+	 *            the characters holding the prefix
+	 * @param offset
+	 *            the index of the first character of the prefix
+	 * @param length
+	 *            the number of characters in the prefix
+	 * @return true if some word in this tree starts with the given characters
+	 */
+	boolean isPrefix(CharSequence word, int offset, int length) {
+		assert (word != null);
+		return getSubtree(word, offset, length) != null;
 	}
 
-}
\ No newline at end of file
+}
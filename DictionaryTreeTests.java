@@ -1,6 +1,11 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
@@ -235,4 +240,331 @@ public class DictionaryTreeTests {
 		Assertions.assertTrue(unit.fold(unit.numLeavesFun) == 4);
 	}
 	
+
+	@Test
+	public void predictShouldReplaceARemovedWordWithTheNextMostPopular() {
+		DictionaryTree unit = new DictionaryTree();
+		for (int i = 0; i <= DictionaryTree.TOP_K; i++) {
+			unit.insert("tele" + (char) ('a' + i), i);
+		}
+		unit.remove("telea");
+		List<String> list = unit.predict("tele", DictionaryTree.TOP_K);
+		Assertions.assertEquals(DictionaryTree.TOP_K, list.size());
+		Assertions.assertEquals("teleb", list.get(0));
+		Assertions.assertEquals("tele" + (char) ('a' + DictionaryTree.TOP_K), list.get(DictionaryTree.TOP_K - 1));
+	}
+
+	@Test
+	public void reinsertingWithALowerPopularityShouldReorderPredictions() {
+		DictionaryTree unit = new DictionaryTree();
+		for (int i = 0; i <= DictionaryTree.TOP_K; i++) {
+			unit.insert("tele" + (char) ('a' + i), i);
+		}
+		unit.insert("telea", 100);
+		List<String> list = unit.predict("", DictionaryTree.TOP_K);
+		Assertions.assertFalse(list.contains("telea"));
+		Assertions.assertEquals("tele" + (char) ('a' + DictionaryTree.TOP_K), list.get(DictionaryTree.TOP_K - 1));
+	}
+
+	@Test
+	public void lookupsShouldWorkOnPartOfACharSequence() {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("yellow", 2);
+		unit.insert("yell", 1);
+		StringBuilder typed = new StringBuilder("I yelled");
+		Assertions.assertTrue(unit.contains(typed, 2, 4));
+		Assertions.assertFalse(unit.contains(typed, 2, 5));
+		Assertions.assertTrue(unit.isPrefix(typed, 2, 3));
+		Assertions.assertFalse(unit.isPrefix(typed, 2, 6));
+		Assertions.assertEquals(unit.predict("yel", 2), unit.predict(typed, 2, 3, 2));
+		Assertions.assertEquals(unit.predict("yel", 20), unit.predict(typed, 2, 3, 20));
+	}
+
+	@Test
+	public void buildShouldGiveTheSameTreeAsInsertingInOrder() {
+		Random random = new Random(3);
+		String[] words = new String[20000];
+		for (int i = 0; i < words.length; i++) {
+			// Few enough letters that there are repeats, and a few empty words
+			StringBuilder word = new StringBuilder();
+			for (int length = random.nextInt(7); length > 0; length--) {
+				word.append((char) ('a' + random.nextInt(4)));
+			}
+			words[i] = word.toString();
+		}
+		DictionaryTree expected = new DictionaryTree();
+		for (int i = 0; i < words.length; i++) {
+			expected.insert(words[i], i);
+		}
+
+		DictionaryTree unit = DictionaryTree.build(words, new ForkJoinPool(4));
+		Assertions.assertEquals(expected.size(), unit.size());
+		Assertions.assertEquals(expected.allWords(), unit.allWords());
+		for (String prefix : new String[] { "", "a", "bc", "dda", "abcd" }) {
+			Assertions.assertEquals(expected.predict(prefix), unit.predict(prefix));
+			Assertions.assertEquals(expected.predict(prefix, 5), unit.predict(prefix, 5));
+			Assertions.assertEquals(expected.predict(prefix, 50), unit.predict(prefix, 50));
+		}
+	}
+
+	@Test
+	public void removeShouldOnlyDeleteTheEndOfTheWordNoOtherWordUses() {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("there", 1);
+		unit.insert("thermal", 2);
+		Assertions.assertTrue(unit.remove("there"));
+		Assertions.assertEquals(8, unit.size());
+		Assertions.assertEquals(1, unit.numLeaves());
+		Assertions.assertEquals(Optional.of("thermal"), unit.predict("ther"));
+		Assertions.assertFalse(unit.remove("there"));
+		Assertions.assertTrue(unit.remove("thermal"));
+		Assertions.assertEquals(1, unit.size());
+		Assertions.assertEquals(0, unit.height());
+	}
+
+	@Test
+	public void aggregatesShouldMatchFoldAfterInsertsAndRemoves() {
+		DictionaryTree unit = new DictionaryTree();
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int length = 1 + random.nextInt(6); length > 0; length--) {
+				word.append((char) ('a' + random.nextInt(3)));
+			}
+			if (random.nextInt(3) == 0) {
+				unit.remove(word.toString());
+			} else {
+				unit.insert(word.toString(), i);
+			}
+			Assertions.assertEquals(unit.fold(unit.sizeFun), unit.size());
+			Assertions.assertEquals(unit.fold(unit.heightFun), unit.height());
+			Assertions.assertEquals(unit.fold(unit.numLeavesFun), unit.numLeaves());
+			Assertions.assertEquals(unit.fold(unit.maximumBranchingFun), unit.maximumBranching());
+		}
+	}
+
+	@Test
+	public void primitiveFoldsShouldMatchBoxedFolds() {
+		DictionaryTree unit = new DictionaryTree();
+		String[] words = { "femur", "yellow", "yell", "feature", "telepathic", "teleport", "telophase", "telephone" };
+		for (int i = 0; i < words.length; i++) {
+			unit.insert(words[i], i);
+		}
+		ForkJoinPool pool = new ForkJoinPool(2);
+		Assertions.assertEquals(unit.fold(unit.sizeFun).intValue(), unit.fold(DictionaryTree.SIZE_FOLD));
+		Assertions.assertEquals(unit.fold(unit.heightFun).intValue(), unit.fold(DictionaryTree.HEIGHT_FOLD));
+		Assertions.assertEquals(unit.fold(unit.numLeavesFun).intValue(), unit.fold(DictionaryTree.NUM_LEAVES_FOLD));
+		Assertions.assertEquals(unit.fold(unit.maximumBranchingFun).intValue(),
+				unit.fold(DictionaryTree.MAXIMUM_BRANCHING_FOLD));
+		Assertions.assertEquals(unit.size(), unit.parallelFold(DictionaryTree.SIZE_FOLD, pool));
+		Assertions.assertEquals(unit.height(), unit.parallelFold(DictionaryTree.HEIGHT_FOLD, pool));
+
+		// The sum of the popularities of all of the words
+		LongFold popularity = new LongFold(0, Long::sum, (x, c) -> c + (x.wordEnd ? x.popularity.get() : 0));
+		Assertions.assertEquals(28L, unit.fold(popularity));
+		Assertions.assertEquals(28L, unit.parallelFold(popularity, pool));
+		Assertions.assertEquals(1, new DictionaryTree().fold(DictionaryTree.SIZE_FOLD));
+		Assertions.assertEquals(0, new DictionaryTree().fold(DictionaryTree.HEIGHT_FOLD));
+	}
+
+	@Test
+	public void foldsShouldCombineChildrenInOrder() {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("ab", 1);
+		unit.insert("cd", 2);
+		unit.insert("ef", 3);
+		unit.insert("cx", 4);
+		// Associative but not commutative: the first and the last word's popularity
+		LongFold first = new LongFold(0, (a, b) -> a != 0 ? a : b, (x, c) -> x.wordEnd ? x.popularity.get() : c);
+		LongFold last = new LongFold(0, (a, b) -> b != 0 ? b : a, (x, c) -> x.wordEnd ? x.popularity.get() : c);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		Assertions.assertEquals(1L, unit.fold(first));
+		Assertions.assertEquals(1L, unit.parallelFold(first, pool));
+		Assertions.assertEquals(3L, unit.fold(last));
+		Assertions.assertEquals(3L, unit.parallelFold(last, pool));
+		Assertions.assertEquals(4L, unit.getSubtree("c").fold(last));
+	}
+
+	@Test
+	public void primitiveFoldsShouldNotOverflowOnDeepTrees() {
+		DictionaryTree unit = new DictionaryTree();
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			word.append((char) ('a' + i % 26));
+		}
+		unit.insert(word.toString());
+		Assertions.assertEquals(50001, unit.fold(DictionaryTree.SIZE_FOLD));
+		Assertions.assertEquals(50000, unit.fold(DictionaryTree.HEIGHT_FOLD));
+	}
+
+	@Test
+	public void wordIteratorShouldListTheWordsUnderAPrefixLazily() {
+		DictionaryTree unit = new DictionaryTree();
+		String[] words = { "yell", "femur", "yellow", "feature", "telepathic", "teleport", "telophase", "yelled", "tele" };
+		for (String word : words) {
+			unit.insert(word);
+		}
+		Assertions.assertEquals(unit.allWords(), unit.words("").collect(Collectors.toList()));
+		Assertions.assertEquals(Arrays.asList("yell", "yellow", "yelled"), unit.words("yel").collect(Collectors.toList()));
+		Assertions.assertEquals(Arrays.asList("tele", "telepathic", "teleport"),
+				unit.words("tele").collect(Collectors.toList()));
+		Assertions.assertEquals(0, unit.words("x").count());
+
+		Iterator<CharSequence> iterator = unit.wordIterator("fe");
+		Assertions.assertEquals("femur", iterator.next().toString());
+		Assertions.assertEquals("feature", iterator.next().toString());
+		Assertions.assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void wordIteratorShouldPageThroughTheWords() {
+		DictionaryTree unit = new DictionaryTree();
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int length = 1 + random.nextInt(6); length > 0; length--) {
+				word.append((char) ('a' + random.nextInt(5)));
+			}
+			unit.insert(word.toString());
+		}
+
+		List<String> all = unit.words("b").collect(Collectors.toList());
+		List<String> paged = new ArrayList<>();
+		List<String> page = unit.words("b").limit(50).collect(Collectors.toList());
+		while (!page.isEmpty()) {
+			paged.addAll(page);
+			page = unit.words("b", page.get(page.size() - 1)).limit(50).collect(Collectors.toList());
+		}
+		Assertions.assertEquals(all, paged);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> unit.wordIterator("b", "a"));
+	}
+
+	@Test
+	public void predictFuzzyShouldRankByDistanceThenPopularity() {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("then", 3);
+		unit.insert("the", 1);
+		unit.insert("tea", 0);
+		unit.insert("thx", 5);
+		unit.insert("other", 2);
+		Assertions.assertEquals(Arrays.asList("thx", "the", "then"), unit.predictFuzzy("thx", 1, 10));
+		Assertions.assertEquals(Arrays.asList("tea", "the", "then", "thx", "other"), unit.predictFuzzy("tha", 2, 10));
+		Assertions.assertEquals(Arrays.asList("tea", "the"), unit.predictFuzzy("tha", 2, 2));
+		Assertions.assertEquals(Arrays.asList("the", "then"), unit.predictFuzzy("the", 0, 10));
+		Assertions.assertEquals(unit.predict("", 10), unit.predictFuzzy("", 1, 10));
+		Assertions.assertTrue(unit.predictFuzzy("xyz", 1, 10).isEmpty());
+	}
+
+	@Test
+	public void predictAllShouldMatchPredictForEachPrefix() {
+		DictionaryTree unit = new DictionaryTree();
+		Random random = new Random(13);
+		List<String> prefixes = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int length = 1 + random.nextInt(6); length > 0; length--) {
+				word.append((char) ('a' + random.nextInt(4)));
+			}
+			unit.insert(word.toString(), random.nextInt(1000));
+			// Some prefixes that aren't in the tree, and plenty of repeats
+			prefixes.add(word.substring(0, random.nextInt(word.length() + 1)) + (i % 10 == 0 ? "z" : ""));
+		}
+
+		for (int n : new int[] { 5, 30 }) {
+			List<List<String>> unitResults = unit.predictAll(prefixes, n, new ForkJoinPool(4));
+			Assertions.assertEquals(prefixes.size(), unitResults.size());
+			for (int i = 0; i < prefixes.size(); i++) {
+				Assertions.assertEquals(unit.predict(prefixes.get(i), n), unitResults.get(i));
+			}
+		}
+		Assertions.assertEquals(Arrays.asList(unit.predict("ab", 3), unit.predict("a", 3)),
+				unit.predictAll(Arrays.asList("ab", "a"), 3));
+
+		// Repeats get lists of their own
+		List<List<String>> repeated = unit.predictAll(Arrays.asList("a", "a"), 30);
+		repeated.get(0).clear();
+		Assertions.assertEquals(unit.predict("a", 30), repeated.get(1));
+	}
+
+	@Test
+	public void selectionsShouldMoveAWordUpUntilTheyDecay() {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("the", 1);
+		unit.insert("then", 4);
+		unit.insert("there", 9);
+		for (int i = 0; i < 10; i++) {
+			Assertions.assertTrue(unit.recordSelection("there"));
+		}
+		Assertions.assertFalse(unit.recordSelection("thereby"));
+		Assertions.assertEquals(Arrays.asList("the", "then", "there"), unit.predict("th", 3)); // Not applied yet
+
+		unit.applySelections(0.5);
+		Assertions.assertEquals(Arrays.asList("there", "the", "then"), unit.predict("th", 3));
+		Assertions.assertEquals(Arrays.asList("there", "the", "then"), unit.predict("", 20));
+		unit.applySelections(0.5); // Usage 5, so there ranks 9 / 6 = 1, tied with the
+		Assertions.assertEquals(Arrays.asList("the", "there", "then"), unit.predict("th", 3));
+
+		for (int i = 0; i < 20; i++) {
+			unit.applySelections(0.5);
+		}
+		Assertions.assertEquals(0, unit.getUsage("there"));
+		Assertions.assertEquals(Arrays.asList("the", "then", "there"), unit.predict("th", 3));
+	}
+
+	@Test
+	public void moreUsageShouldNeverRankAWordLower() {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("tea", -3);
+		unit.insert("ten", 0);
+		unit.insert("toe", 1);
+		unit.recordSelection("ten");
+		unit.applySelections(1);
+		// Dividing a popularity of 0 would leave it at 0
+		Assertions.assertEquals(-1, unit.getSubtree("ten").rank());
+		Assertions.assertEquals(Arrays.asList("tea", "ten", "toe"), unit.predict("t", 3));
+		for (int i = 0; i < 3; i++) {
+			unit.recordSelection("ten");
+		}
+		unit.applySelections(1);
+		Assertions.assertEquals(-4, unit.getSubtree("ten").rank());
+		Assertions.assertEquals(Arrays.asList("ten", "tea", "toe"), unit.predict("t", 3));
+
+		for (int base : new int[] { Integer.MIN_VALUE, -5, 0, 1, 2, 7, 1000, Integer.MAX_VALUE }) {
+			DictionaryTree d = new DictionaryTree();
+			d.insert("w", base);
+			int previous = base;
+			for (int selections = 1; selections <= 64; selections *= 2) {
+				for (int i = 0; i < selections; i++) {
+					d.recordSelection("w");
+				}
+				d.applySelections(1);
+				int rank = d.getSubtree("w").rank();
+				Assertions.assertTrue(rank < previous || rank == Integer.MIN_VALUE, base + " " + selections);
+				previous = rank;
+			}
+		}
+	}
+
+	@Test
+	public void selectionsShouldBeCountedFromManyThreads() throws Exception {
+		DictionaryTree unit = new DictionaryTree();
+		unit.insert("then", 4);
+		unit.insert("there", 9);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					unit.recordSelection(i % 2 == 0 ? "then" : "there");
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		unit.applySelections(1);
+		Assertions.assertEquals(40000, unit.getUsage("then"));
+		Assertions.assertEquals(40000, unit.getUsage("there"));
+	}
+	
 }
@@ -0,0 +1,475 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A dictionary whose changes survive a crash. It keeps its words in a
+ * ConcurrentDictionaryTree, and a directory holding:
+ *
+ * <ul>
+ * <li>checkpoint: a snapshot of every word and its popularity, and the
+ * generation of the log that was started when it was taken</li>
+ * <li>log-&lt;generation&gt;: the MutationLog of the changes made since</li>
+ * </ul>
+ *
+ * Every insert and remove is applied to the tree and appended to the log, and
+ * returns once the log has been synced (other threads can see the change a
+ * little before that). Writes from many threads share their fsyncs (see
+ * MutationLog).
+ *
+ * After every checkpointInterval changes a checkpoint is taken in the
+ * background: a new log is started, the snapshot of the tree at that moment
+ * (which takes O(1), as its nodes are immutable) is written to a temporary file
+ * that then replaces the old checkpoint, and the logs before the new one are
+ * deleted. Writes carry on while the snapshot is being written. open() recovers
+ * the dictionary by loading the checkpoint and replaying the logs from its
+ * generation on; a crash at any point of a checkpoint leaves either the old
+ * checkpoint with all the logs it needs, or the new one. If a background
+ * checkpoint fails, the next insert or remove (which is then not applied) or
+ * close() throws its exception.
+ */
+public class DurableDictionary implements Dictionary, Closeable {
+
+	static final int CHECKPOINT_MAGIC = 0x44434b50; // "DCKP"
+	static final int CHECKPOINT_VERSION = 1;
+	static final String CHECKPOINT = "checkpoint";
+	static final String LOG_PREFIX = "log-";
+	static final int DEFAULT_CHECKPOINT_INTERVAL = 100_000;
+
+	private final File directory;
+	private final ConcurrentDictionaryTree tree;
+	private final int checkpointInterval;
+
+	/**
+	 * The log being appended to and its generation, and the number of changes
+	 * appended since the last checkpoint was started. Changes are applied and
+	 * appended while holding the lock on this, so the log has them in the order
+	 * they were applied.
+	 */
+	private MutationLog log;
+	private int generation;
+	private int changes;
+
+	private final Object checkpointLock = new Object();
+	private final ExecutorService checkpointer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "checkpointer");
+		t.setDaemon(true);
+		return t;
+	});
+	private boolean checkpointQueued;
+
+	/**
+	 * Why the last background checkpoint failed, until it has been thrown. Guarded
+	 * by the lock on this.
+	 */
+	private IOException checkpointFailure;
+
+	private DurableDictionary(File directory, ConcurrentDictionaryTree tree, MutationLog log, int generation,
+			int checkpointInterval) {
+		this.directory = directory;
+		this.tree = tree;
+		this.log = log;
+		this.generation = generation;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Opens (or creates) a durable dictionary with the default checkpoint
+	 * interval.
+	 *
+	 * @param directory
+	 *            the directory holding the checkpoint and logs
+	 * @return the dictionary as it was when last changed
+	 * @throws IOException
+	 *             if the checkpoint or logs can't be read
+	 */
+	static DurableDictionary open(File directory) throws IOException {
+		return open(directory, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Opens (or creates) a durable dictionary, recovering its words from the
+	 * checkpoint and logs in the directory.
+	 *
+	 * @param directory
+	 *            the directory holding the checkpoint and logs
+	 * @param checkpointInterval
+	 *            the number of changes after which a checkpoint is taken
+	 * @return the dictionary as it was when last changed
+	 * @throws IOException
+	 *             if the checkpoint or logs can't be read
+	 */
+	static DurableDictionary open(File directory, int checkpointInterval) throws IOException {
+		assert (checkpointInterval > 0);
+
+		Files.createDirectories(directory.toPath());
+
+		// Rebuild in a DictionaryTree, which is much quicker to change, and copy it
+		// into a ConcurrentDictionaryTree in one go at the end
+		DictionaryTree recovered = new DictionaryTree();
+		File checkpoint = new File(directory, CHECKPOINT);
+		int first = checkpoint.exists() ? readCheckpoint(checkpoint, recovered) : 0;
+		int last = first;
+		for (int g : logGenerations(directory)) {
+			if (g < first) {
+				// Left over from a crash after the last checkpoint was written
+				Files.delete(logFile(directory, g).toPath());
+			} else {
+				MutationLog.replay(logFile(directory, g), recovered);
+				last = g;
+			}
+		}
+
+		MutationLog log = new MutationLog(logFile(directory, last));
+		syncDirectory(directory);
+		return new DurableDictionary(directory, ConcurrentDictionaryTree.copyOf(recovered), log, last,
+				checkpointInterval);
+	}
+
+	@Override
+	public void insert(String word) {
+		assert (word != null);
+
+		if (!word.isEmpty()) {
+			MutationLog current;
+			long record;
+			synchronized (this) {
+				throwCheckpointFailure();
+				tree.insert(word);
+				current = log;
+				record = log.append(MutationLog.INSERT, word, 0);
+				changed();
+			}
+			sync(current, record);
+		}
+	}
+
+	@Override
+	public void insert(String word, int popularity) {
+		assert (word != null);
+
+		if (!word.isEmpty()) {
+			MutationLog current;
+			long record;
+			synchronized (this) {
+				throwCheckpointFailure();
+				tree.insert(word, popularity);
+				current = log;
+				record = log.append(MutationLog.INSERT_WITH_POPULARITY, word, popularity);
+				changed();
+			}
+			sync(current, record);
+		}
+	}
+
+	@Override
+	public boolean remove(String word) {
+		assert (word != null);
+
+		MutationLog current;
+		long record;
+		boolean deleted;
+		synchronized (this) {
+			throwCheckpointFailure();
+			if (!tree.contains(word)) {
+				return false;
+			}
+			deleted = tree.remove(word);
+			current = log;
+			record = log.append(MutationLog.REMOVE, word, 0);
+			changed();
+		}
+		sync(current, record);
+		return deleted;
+	}
+
+	private static void sync(MutationLog log, long record) {
+		try {
+			// If a checkpoint has moved on to a new log since, the old one was synced
+			// before it was closed, so this returns straight away
+			log.sync(record);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Throws the exception a background checkpoint failed with, if it hasn't been
+	 * thrown yet. Must be called holding the lock on this.
+	 */
+	private void throwCheckpointFailure() {
+		IOException e = checkpointFailure;
+		if (e != null) {
+			checkpointFailure = null;
+			throw new UncheckedIOException("Checkpoint failed", e);
+		}
+	}
+
+	/**
+	 * Counts a change, queueing a checkpoint if there have been enough since the
+	 * last one. Must be called holding the lock on this.
+	 */
+	private void changed() {
+		if (++changes >= checkpointInterval && !checkpointQueued) {
+			checkpointQueued = true;
+			checkpointer.execute(() -> {
+				try {
+					checkpoint();
+				} catch (IOException e) {
+					// The logs are still there, so nothing is lost: report it, and try again
+					// after the next checkpointInterval changes
+					synchronized (this) {
+						checkpointFailure = e;
+					}
+				} finally {
+					synchronized (this) {
+						checkpointQueued = false;
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the words in the dictionary now and deletes the logs
+	 * that it replaces. This is done in the background every checkpointInterval
+	 * changes, but can also be called directly; changes can carry on while it
+	 * runs.
+	 *
+	 * @throws IOException
+	 *             if the checkpoint couldn't be written
+	 */
+	void checkpoint() throws IOException {
+		synchronized (checkpointLock) {
+			int next;
+			synchronized (this) {
+				next = generation + 1;
+			}
+			// Only this thread changes the generation, so the new log can be created
+			// (and its directory entry made durable) before writes are switched to it
+			MutationLog created = new MutationLog(logFile(directory, next));
+			try {
+				syncDirectory(directory);
+			} catch (IOException e) {
+				created.close();
+				throw e;
+			}
+
+			MutationLog old;
+			ConcurrentDictionaryTree snapshot;
+			synchronized (this) {
+				// The snapshot has exactly the changes in the logs before the new one
+				old = log;
+				log = created;
+				generation = next;
+				changes = 0;
+				snapshot = tree.snapshot();
+			}
+			// Nothing is appended to the old log any more, so it can be synced and
+			// closed without holding up writes
+			old.close();
+
+			File temporary = new File(directory, CHECKPOINT + ".tmp");
+			writeCheckpoint(snapshot, next, temporary);
+			Files.move(temporary.toPath(), new File(directory, CHECKPOINT).toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			syncDirectory(directory);
+
+			for (int g : logGenerations(directory)) {
+				if (g < next) {
+					Files.delete(logFile(directory, g).toPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for any background checkpoint to finish, then syncs and closes the
+	 * log.
+	 *
+	 * @throws IOException
+	 *             if the log couldn't be written, or a background checkpoint
+	 *             failed and that hasn't been thrown yet
+	 */
+	@Override
+	public void close() throws IOException {
+		checkpointer.shutdown();
+		try {
+			checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			IOException failure = checkpointFailure;
+			checkpointFailure = null;
+			try {
+				log.close();
+			} catch (IOException e) {
+				if (failure != null) {
+					e.addSuppressed(failure);
+				}
+				throw e;
+			}
+			if (failure != null) {
+				throw new IOException("Checkpoint failed", failure);
+			}
+		}
+	}
+
+	/**
+	 * Syncs a directory, so that the files created in or moved into it since are
+	 * still there after a crash.
+	 */
+	private static void syncDirectory(File directory) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	private static void writeCheckpoint(ConcurrentDictionaryTree snapshot, int generation, File f)
+			throws IOException {
+		List<String> words = new ArrayList<>();
+		List<Integer> popularities = new ArrayList<>();
+		snapshot.forEachWord((word, popularity) -> {
+			words.add(word);
+			popularities.add(popularity);
+		});
+
+		CRC32 crc = new CRC32();
+		try (FileOutputStream file = new FileOutputStream(f);
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new CheckedOutputStream(file, crc)))) {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(generation);
+			out.writeInt(words.size());
+			for (int i = 0; i < words.size(); i++) {
+				byte[] bytes = words.get(i).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				out.writeInt(popularities.get(i));
+			}
+			out.flush();
+			// The checksum covers everything before it
+			new DataOutputStream(file).writeLong(crc.getValue());
+			file.getFD().sync();
+		}
+	}
+
+	/**
+	 * Reads a checkpoint into a dictionary. The words are inserted as they are
+	 * read, before the checksum at the end is checked, so if this throws the
+	 * dictionary may hold some of them and should be thrown away.
+	 *
+	 * @return the generation of the first log to replay after it
+	 */
+	private static int readCheckpoint(File f, Dictionary d) throws IOException {
+		CRC32 crc = new CRC32();
+		try (FileInputStream file = new FileInputStream(f);
+				BufferedInputStream buffered = new BufferedInputStream(file);
+				DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc))) {
+			if (in.readInt() != CHECKPOINT_MAGIC) {
+				throw new IOException(f + " is not a dictionary checkpoint");
+			}
+			int version = in.readInt();
+			if (version != CHECKPOINT_VERSION) {
+				throw new IOException(f + " has checkpoint version " + version + ", expected " + CHECKPOINT_VERSION);
+			}
+			int generation = in.readInt();
+			int count = in.readInt();
+			byte[] bytes = new byte[64];
+			long size = f.length();
+			for (int i = 0; i < count; i++) {
+				int length = in.readInt();
+				if (length < 0 || length > size) {
+					// Not worth allocating for: the checksum would fail anyway
+					throw new IOException(f + " is corrupt");
+				}
+				if (length > bytes.length) {
+					bytes = new byte[Math.max(2 * bytes.length, length)];
+				}
+				in.readFully(bytes, 0, length);
+				d.insert(new String(bytes, 0, length, StandardCharsets.UTF_8), in.readInt());
+			}
+			long expected = crc.getValue();
+			if (new DataInputStream(buffered).readLong() != expected) {
+				throw new IOException(f + " failed its checksum");
+			}
+			return generation;
+		} catch (EOFException e) {
+			throw new IOException(f + " is truncated", e);
+		}
+	}
+
+	static File logFile(File directory, int generation) {
+		return new File(directory, LOG_PREFIX + generation);
+	}
+
+	/**
+	 * @return the generations of the logs in the directory, in order
+	 */
+	static List<Integer> logGenerations(File directory) {
+		List<Integer> generations = new ArrayList<>();
+		String[] names = directory.list();
+		for (String name : names == null ? new String[0] : names) {
+			if (name.startsWith(LOG_PREFIX)) {
+				try {
+					generations.add(Integer.parseInt(name.substring(LOG_PREFIX.length())));
+				} catch (NumberFormatException e) {
+					// Not one of ours
+				}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return tree.contains(word);
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		return tree.isPrefix(word);
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		return tree.predict(prefix);
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		return tree.predict(prefix, n);
+	}
+
+	@Override
+	public List<String> allWords() {
+		return tree.allWords();
+	}
+
+}
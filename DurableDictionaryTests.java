@@ -0,0 +1,149 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class DurableDictionaryTests {
+
+	private static File directory() throws IOException {
+		File d = Files.createTempDirectory("dictionary").toFile();
+		d.deleteOnExit();
+		return d;
+	}
+
+	@Test
+	public void changesShouldBeRecoveredAfterReopening() throws IOException {
+		File directory = directory();
+		DictionaryTree expected = new DictionaryTree();
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			for (Dictionary d : Arrays.asList(unit, expected)) {
+				d.insert("the", 3);
+				d.insert("then", 1);
+				d.insert("there");
+				d.insert("tea", 2);
+				d.remove("then");
+				d.insert("the", 0);
+				d.insert("zeal", 5);
+			}
+		}
+
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			Assertions.assertEquals(expected.allWords(), unit.allWords());
+			Assertions.assertEquals(expected.predict("t", 10), unit.predict("t", 10));
+			Assertions.assertFalse(unit.contains("then"));
+		}
+	}
+
+	@Test
+	public void aCheckpointShouldReplaceTheLogsBeforeIt() throws IOException {
+		File directory = directory();
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			unit.insert("alpha", 1);
+			unit.insert("beta", 2);
+			unit.checkpoint();
+			unit.remove("alpha");
+			unit.insert("gamma", 0);
+			Assertions.assertEquals(Arrays.asList(1), DurableDictionary.logGenerations(directory));
+			Assertions.assertTrue(new File(directory, DurableDictionary.CHECKPOINT).exists());
+		}
+
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			Assertions.assertEquals(Arrays.asList("gamma", "beta"), unit.predict("", 5));
+		}
+	}
+
+	@Test
+	public void aTornRecordAtTheEndOfTheLogShouldBeDropped() throws IOException {
+		File directory = directory();
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			unit.insert("kept", 1);
+			unit.insert("torn", 2);
+		}
+		File log = DurableDictionary.logFile(directory, 0);
+		try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+			file.setLength(file.length() - 3);
+		}
+
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			Assertions.assertEquals(Arrays.asList("kept"), unit.allWords());
+			// New records go after the last good one
+			unit.insert("after", 0);
+		}
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			Assertions.assertEquals(Arrays.asList("after", "kept"), unit.predict("", 5));
+		}
+	}
+
+	@Test
+	public void concurrentWritesShouldSurviveBackgroundCheckpoints() throws Exception {
+		File directory = directory();
+		int threadCount = 4;
+		int wordsPerThread = 500;
+		try (DurableDictionary unit = DurableDictionary.open(directory, 300)) {
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < threadCount; t++) {
+				int thread = t;
+				threads.add(new Thread(() -> {
+					for (int i = 0; i < wordsPerThread; i++) {
+						unit.insert("w" + thread + "x" + i, i);
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		try (DurableDictionary unit = DurableDictionary.open(directory)) {
+			Assertions.assertEquals(threadCount * wordsPerThread, unit.allWords().size());
+			Assertions.assertTrue(unit.contains("w3x499"));
+			Assertions.assertTrue(DurableDictionary.logGenerations(directory).get(0) > 0);
+		}
+	}
+
+	@Test
+	public void aFailedBackgroundCheckpointShouldBeThrownByClose() throws IOException {
+		File directory = directory();
+		// A non-empty directory in the way of the temporary checkpoint file
+		File blocked = new File(directory, DurableDictionary.CHECKPOINT + ".tmp");
+		Assertions.assertTrue(blocked.mkdir());
+		Assertions.assertTrue(new File(blocked, "file").createNewFile());
+		DurableDictionary unit = DurableDictionary.open(directory, 1);
+		unit.insert("kept", 1);
+		IOException e = Assertions.assertThrows(IOException.class, unit::close);
+		Assertions.assertEquals("Checkpoint failed", e.getMessage());
+
+		Files.delete(new File(blocked, "file").toPath());
+		Files.delete(blocked.toPath());
+		try (DurableDictionary reopened = DurableDictionary.open(directory)) {
+			Assertions.assertEquals(Arrays.asList("kept"), reopened.allWords());
+		}
+	}
+
+	@Test
+	public void aCorruptWordLengthShouldBeRejected() throws IOException {
+		for (int length : new int[] { -5, Integer.MAX_VALUE }) {
+			File directory = directory();
+			try (DurableDictionary unit = DurableDictionary.open(directory)) {
+				unit.insert("alpha", 1);
+				unit.checkpoint();
+			}
+			// The length of the first word, after the magic number, version, generation
+			// and count
+			try (RandomAccessFile file = new RandomAccessFile(new File(directory, DurableDictionary.CHECKPOINT), "rw")) {
+				file.seek(16);
+				file.writeInt(length);
+			}
+			IOException e = Assertions.assertThrows(IOException.class, () -> DurableDictionary.open(directory));
+			Assertions.assertTrue(e.getMessage().endsWith("is corrupt"), e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative longs (times in nanoseconds, or sizes) that any
+ * number of threads can record into without locking, like HdrHistogram's.
+ *
+ * Values below SUB_BUCKETS get a bucket each, and above that every power of
+ * two is split into SUB_BUCKETS equal buckets, so a value read back from the
+ * histogram is within 1 / SUB_BUCKETS (6.25%) of the values recorded in its
+ * bucket, whatever their size. Each bucket is a LongAdder, which spreads
+ * updates from different threads over separate cells, and is only created when
+ * a value first lands in it, as most never do.
+ */
+class Histogram {
+
+	static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param value
+	 *            the value to record, at least 0
+	 */
+	void record(long value) {
+		assert (value >= 0);
+
+		int index = index(value);
+		LongAdder bucket = buckets.get(index);
+		if (bucket == null) {
+			buckets.compareAndSet(index, null, new LongAdder());
+			bucket = buckets.get(index);
+		}
+		bucket.increment();
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return the bucket value falls in
+	 */
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		// The highest bit picks the power of two, and the next SUB_BUCKET_BITS bits
+		// the bucket within it
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return the smallest value that falls in the given bucket
+	 */
+	static long lowest(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+	}
+
+	/**
+	 * @return the largest value that falls in the given bucket
+	 */
+	static long highest(int index) {
+		return index == BUCKETS - 1 ? Long.MAX_VALUE : lowest(index + 1) - 1;
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the mean of the values recorded, or 0 if there are none
+	 */
+	double mean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return the largest value recorded, or 0 if there are none
+	 */
+	long max() {
+		return max.get();
+	}
+
+	/**
+	 * Finds the value that the given fraction of the values recorded are at most.
+	 * Values being recorded at the same time may or may not be counted.
+	 *
+	 * @param quantile
+	 *            the fraction, from 0 to 1 (0.99 for the 99th percentile)
+	 * @return the highest value in the bucket holding that value (but no more than
+	 *         the largest value recorded), or 0 if there are none
+	 */
+	long percentile(double quantile) {
+		assert (quantile >= 0 && quantile <= 1);
+
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null) {
+				counts[i] = bucket.sum();
+				total += counts[i];
+			}
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highest(i), max());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Forgets every value recorded. Values recorded at the same time may be partly
+	 * forgotten.
+	 */
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null) {
+				bucket.reset();
+			}
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+}
@@ -0,0 +1,47 @@
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An int-valued fold over a DictionaryTree, for DictionaryTree.fold(IntFold),
+ * which works on primitives instead of collections of boxed values. The value
+ * of a node is node.apply(d, c), where c is the values of its children combined
+ * with combine, starting from identity.
+ */
+class IntFold {
+
+	/**
+	 * Computes the value of a node from the combined values of its children.
+	 */
+	interface NodeFunction {
+
+		int apply(DictionaryTree d, int children);
+
+	}
+
+	final int identity;
+	final IntBinaryOperator combine;
+	final NodeFunction node;
+
+	/**
+	 * @param identity
+	 *            the combined value of no children
+	 * @param combine
+	 *            combines the values of two children (or a value so far and
+	 *            another child's), which must be associative
+	 * @param node
+	 *            computes the value of a node
+	 */
+	IntFold(int identity, IntBinaryOperator combine, NodeFunction node) {
+		this.identity = identity;
+		this.combine = combine;
+		this.node = node;
+	}
+
+	/**
+	 * @return the same fold over longs, so that DictionaryTree only needs one walk
+	 */
+	LongFold asLongFold() {
+		return new LongFold(identity, (a, b) -> combine.applyAsInt((int) a, (int) b),
+				(d, children) -> node.apply(d, (int) children));
+	}
+
+}
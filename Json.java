@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Just enough JSON for PredictionServer: writing strings and arrays of them,
+ * and reading an array of strings.
+ */
+class Json {
+
+	private Json() {
+	}
+
+	/**
+	 * @return s as a JSON string, with quotes around it
+	 */
+	static String quote(String s) {
+		StringBuilder json = new StringBuilder(s.length() + 2);
+		appendQuoted(json, s);
+		return json.toString();
+	}
+
+	/**
+	 * @return the strings as a JSON array
+	 */
+	static String array(List<String> strings) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < strings.size(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			appendQuoted(json, strings.get(i));
+		}
+		return json.append(']').toString();
+	}
+
+	private static void appendQuoted(StringBuilder json, String s) {
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Reads a JSON array of strings, e.g. ["te", "th"].
+	 *
+	 * @param json
+	 *            the JSON text
+	 * @return the strings
+	 * @throws IllegalArgumentException
+	 *             if the text isn't an array of strings
+	 */
+	static List<String> parseStrings(String json) {
+		List<String> strings = new ArrayList<>();
+		int i = skipSpace(json, 0);
+		i = expect(json, i, '[');
+		i = skipSpace(json, i);
+		if (i < json.length() && json.charAt(i) == ']') {
+			i++;
+		} else {
+			while (true) {
+				StringBuilder s = new StringBuilder();
+				i = readString(json, skipSpace(json, i), s);
+				strings.add(s.toString());
+				i = skipSpace(json, i);
+				if (i < json.length() && json.charAt(i) == ',') {
+					i++;
+					continue;
+				}
+				i = expect(json, i, ']');
+				break;
+			}
+		}
+		if (skipSpace(json, i) != json.length()) {
+			throw new IllegalArgumentException("Unexpected text after the array at " + i);
+		}
+		return strings;
+	}
+
+	/**
+	 * Reads the string starting at index i into s.
+	 *
+	 * @return the index after the closing quote
+	 */
+	private static int readString(String json, int i, StringBuilder s) {
+		i = expect(json, i, '"');
+		while (i < json.length()) {
+			char c = json.charAt(i++);
+			if (c == '"') {
+				return i;
+			}
+			if (c != '\\') {
+				s.append(c);
+				continue;
+			}
+			if (i >= json.length()) {
+				break;
+			}
+			char escaped = json.charAt(i++);
+			switch (escaped) {
+			case '"':
+			case '\\':
+			case '/':
+				s.append(escaped);
+				break;
+			case 'b':
+				s.append('\b');
+				break;
+			case 'f':
+				s.append('\f');
+				break;
+			case 'n':
+				s.append('\n');
+				break;
+			case 'r':
+				s.append('\r');
+				break;
+			case 't':
+				s.append('\t');
+				break;
+			case 'u':
+				if (i + 4 > json.length()) {
+					throw new IllegalArgumentException("Unfinished \\u escape at " + (i - 2));
+				}
+				try {
+					s.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad \\u escape at " + (i - 2));
+				}
+				i += 4;
+				break;
+			default:
+				throw new IllegalArgumentException("Bad escape at " + (i - 2));
+			}
+		}
+		throw new IllegalArgumentException("Unfinished string");
+	}
+
+	private static int expect(String json, int i, char c) {
+		if (i >= json.length() || json.charAt(i) != c) {
+			throw new IllegalArgumentException("Expected '" + c + "' at " + i);
+		}
+		return i + 1;
+	}
+
+	private static int skipSpace(String json, int i) {
+		while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+}
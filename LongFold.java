@@ -0,0 +1,38 @@
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A long-valued fold over a DictionaryTree, for DictionaryTree.fold(LongFold).
+ * The value of a node is node.apply(d, c), where c is the values of its
+ * children combined with combine, starting from identity.
+ */
+class LongFold {
+
+	/**
+	 * Computes the value of a node from the combined values of its children.
+	 */
+	interface NodeFunction {
+
+		long apply(DictionaryTree d, long children);
+
+	}
+
+	final long identity;
+	final LongBinaryOperator combine;
+	final NodeFunction node;
+
+	/**
+	 * @param identity
+	 *            the combined value of no children
+	 * @param combine
+	 *            combines the values of two children (or a value so far and
+	 *            another child's), which must be associative
+	 * @param node
+	 *            computes the value of a node
+	 */
+	LongFold(long identity, LongBinaryOperator combine, NodeFunction node) {
+		this.identity = identity;
+		this.combine = combine;
+		this.node = node;
+	}
+
+}
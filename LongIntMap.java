@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * A hash map from non-negative long keys to int values, for counting without
+ * boxing. The keys and values are kept in two arrays with open addressing
+ * (linear probing), so an entry takes 12 bytes of table and no objects, and
+ * the table doubles when it gets half full.
+ */
+class LongIntMap {
+
+	private static final long EMPTY = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	LongIntMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expected
+	 *            the number of keys to make room for
+	 */
+	LongIntMap(int expected) {
+		assert (expected >= 0);
+
+		int capacity = Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1;
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @return the value for key, or absent if there isn't one
+	 */
+	int get(long key, int absent) {
+		int slot = find(key);
+		return keys[slot] == EMPTY ? absent : values[slot];
+	}
+
+	/**
+	 * Sets the value for key.
+	 */
+	void put(long key, int value) {
+		int slot = find(key);
+		if (keys[slot] == EMPTY) {
+			slot = add(slot, key);
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Adds one to the value for key, treating a missing key as 0.
+	 */
+	void increment(long key) {
+		int slot = find(key);
+		if (keys[slot] == EMPTY) {
+			slot = add(slot, key);
+		}
+		values[slot]++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the keys, in no particular order
+	 */
+	long[] keys() {
+		long[] result = new long[size];
+		int i = 0;
+		for (long key : keys) {
+			if (key != EMPTY) {
+				result[i++] = key;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the slot holding key, or the empty slot where it would go
+	 */
+	private int find(long key) {
+		assert (key >= 0);
+
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Puts key into the given empty slot, growing the table if it is now half
+	 * full.
+	 *
+	 * @return the slot key ended up in
+	 */
+	private int add(int slot, long key) {
+		keys[slot] = key;
+		if (++size * 2 <= keys.length) {
+			return slot;
+		}
+
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[2 * oldKeys.length];
+		Arrays.fill(keys, EMPTY);
+		values = new int[keys.length];
+		mask = keys.length - 1;
+		int moved = slot;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int to = find(oldKeys[i]);
+				keys[to] = oldKeys[i];
+				values[to] = oldValues[i];
+				if (i == slot) {
+					moved = to;
+				}
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * Spreads the bits of the key (the finaliser of MurmurHash3), as the keys
+	 * here are packed word IDs whose low bits are far from random.
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb53cfe1a85c3L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}
@@ -0,0 +1,549 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * A read-only dictionary stored as a LOUDS (level-order unary degree sequence)
+ * succinct trie, for large static word lists. It is built from a DictionaryTree
+ * by build(), and takes a few bytes per node instead of a DictionaryTree's
+ * hundreds.
+ *
+ * The nodes are numbered breadth first from the root (node 0), with the
+ * children of a node next to each other in insertion order, as in a
+ * MappedDictionary snapshot. The shape of the tree is the bit string "10"
+ * followed by, for each node, a 1 for each of its children and then a 0. So
+ * 2 bits a node, and node i's children are the nodes from select0(i) - i
+ * on, up to the next 0. The rest is kept in arrays indexed by node, packed
+ * into as few bits as their values need:
+ *
+ * <pre>
+ * labels        the code of the character on the edge into the node (its
+ *               index in the sorted alphabet of all labels)
+ * wordEnds      a bit per node, with rank support
+ * popularities  the rank of each word (indexed by the number of word ends
+ *               before its node), less the smallest rank
+ * bests         the best rank in the subtree, less the smallest rank, rounded
+ *               down to BEST_SUB_BITS significant bits and stored as a bucket
+ *               number
+ * </pre>
+ *
+ * predict(prefix, n) is the same best-first search as MappedDictionary's, but
+ * a subtree's place in the queue is the lower bound of its bucket rather than
+ * its exact best. A word still only comes out of the queue once every subtree
+ * that could hold a better one has been expanded, so the results are the same;
+ * the search just expands a few more nodes.
+ */
+public class LoudsDictionary implements Dictionary {
+
+	/**
+	 * The significant bits kept of each subtree's best rank, so bounds are within
+	 * 1 / 2^BEST_SUB_BITS of it.
+	 */
+	static final int BEST_SUB_BITS = 2;
+
+	private final BitVector louds;
+	private final BitVector wordEnds;
+	private final char[] alphabet;
+	private final PackedArray labels;
+	private final PackedArray popularities;
+	private final PackedArray bests;
+	private final int minRank;
+	private final int noWords;
+	private final int nodeCount;
+
+	private LoudsDictionary(BitVector louds, BitVector wordEnds, char[] alphabet, PackedArray labels,
+			PackedArray popularities, PackedArray bests, int minRank, int noWords, int nodeCount) {
+		this.louds = louds;
+		this.wordEnds = wordEnds;
+		this.alphabet = alphabet;
+		this.labels = labels;
+		this.popularities = popularities;
+		this.bests = bests;
+		this.minRank = minRank;
+		this.noWords = noWords;
+		this.nodeCount = nodeCount;
+	}
+
+	/**
+	 * Encodes a tree as a LoudsDictionary, with each word ranked by its rank().
+	 *
+	 * @param tree
+	 *            the dictionary to encode, which can be changed afterwards without
+	 *            affecting the result
+	 * @return the encoded dictionary
+	 */
+	static LoudsDictionary build(DictionaryTree tree) {
+		assert (tree != null);
+
+		// Number the nodes breadth first
+		List<DictionaryTree> order = new ArrayList<>();
+		List<Character> edges = new ArrayList<>();
+		order.add(tree);
+		edges.add('\0');
+		for (int i = 0; i < order.size(); i++) {
+			for (Entry<Character, DictionaryTree> child : order.get(i).getChildren().entrySet()) {
+				order.add(child.getValue());
+				edges.add(child.getKey());
+			}
+		}
+		int nodes = order.size();
+
+		TreeSet<Character> letters = new TreeSet<>(edges.subList(1, nodes));
+		char[] alphabet = new char[letters.size()];
+		int a = 0;
+		for (char c : letters) {
+			alphabet[a++] = c;
+		}
+
+		long[] shape = new long[(2 * nodes + 1 + 63) >>> 6];
+		long[] ends = new long[(nodes + 63) >>> 6];
+		int words = 0;
+		int minRank = Integer.MAX_VALUE;
+		int maxRank = Integer.MIN_VALUE;
+		// "10" for the root's (imaginary) parent
+		int bit = 2;
+		shape[0] = 1;
+		for (int i = 0; i < nodes; i++) {
+			DictionaryTree d = order.get(i);
+			for (int c = 0; c < d.getChildren().size(); c++, bit++) {
+				shape[bit >>> 6] |= 1L << bit;
+			}
+			bit++;
+			if (d.wordEnd) {
+				ends[i >>> 6] |= 1L << i;
+				words++;
+				minRank = Math.min(minRank, d.rank());
+				maxRank = Math.max(maxRank, d.rank());
+			}
+		}
+		if (words == 0) {
+			minRank = maxRank = 0;
+		}
+
+		PackedArray labels = new PackedArray(nodes, PackedArray.bitsFor(Math.max(0, alphabet.length - 1)));
+		PackedArray popularities = new PackedArray(words, PackedArray.bitsFor((long) maxRank - minRank));
+		int noWords = bucket((long) maxRank - minRank) + 1;
+		PackedArray bests = new PackedArray(nodes, PackedArray.bitsFor(noWords));
+		int word = 0;
+		for (int i = 0; i < nodes; i++) {
+			DictionaryTree d = order.get(i);
+			if (i > 0) {
+				labels.set(i, Arrays.binarySearch(alphabet, edges.get(i)));
+			}
+			if (d.wordEnd) {
+				popularities.set(word++, (long) d.rank() - minRank);
+			}
+			int best = d.bestPopularity();
+			bests.set(i, best == Integer.MAX_VALUE ? noWords : bucket((long) best - minRank));
+		}
+		return new LoudsDictionary(new BitVector(shape, 2 * nodes + 1), new BitVector(ends, nodes), alphabet,
+				labels, popularities, bests, minRank, noWords, nodes);
+	}
+
+	/**
+	 * @return the bucket of a non-negative value: the value itself below
+	 *         2^BEST_SUB_BITS, and otherwise its exponent and the BEST_SUB_BITS
+	 *         bits after its leading one
+	 */
+	static int bucket(long value) {
+		if (value < 1 << BEST_SUB_BITS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		return (exponent - BEST_SUB_BITS + 1) << BEST_SUB_BITS
+				| (int) ((value >>> (exponent - BEST_SUB_BITS)) & ((1 << BEST_SUB_BITS) - 1));
+	}
+
+	/**
+	 * @return the smallest value in a bucket
+	 */
+	static long lowest(int bucket) {
+		if (bucket < 1 << BEST_SUB_BITS) {
+			return bucket;
+		}
+		int exponent = (bucket >>> BEST_SUB_BITS) + BEST_SUB_BITS - 1;
+		long mantissa = 1 << BEST_SUB_BITS | (bucket & ((1 << BEST_SUB_BITS) - 1));
+		return mantissa << (exponent - BEST_SUB_BITS);
+	}
+
+	/**
+	 * Always throws, as a LoudsDictionary can't be changed.
+	 */
+	@Override
+	public void insert(String word) {
+		throw new UnsupportedOperationException("A LoudsDictionary is read-only");
+	}
+
+	/**
+	 * Always throws, as a LoudsDictionary can't be changed.
+	 */
+	@Override
+	public void insert(String word, int popularity) {
+		throw new UnsupportedOperationException("A LoudsDictionary is read-only");
+	}
+
+	/**
+	 * Always throws, as a LoudsDictionary can't be changed.
+	 */
+	@Override
+	public boolean remove(String word) {
+		throw new UnsupportedOperationException("A LoudsDictionary is read-only");
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		int node = getNode(word);
+		return node != -1 && wordEnds.get(node);
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return getNode(word) != -1;
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		int node = getNode(prefix);
+		if (node == -1) {
+			return Optional.empty();
+		}
+		StringBuilder word = new StringBuilder(prefix);
+		while (!wordEnds.get(node)) {
+			int first = firstChild(node);
+			if (childCount(node, first) == 0) {
+				break;
+			}
+			node = first;
+			word.append(label(node));
+		}
+		return Optional.of(word.toString());
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (n >= 0);
+		assert (prefix != null);
+
+		List<String> sortedList = new LinkedList<String>();
+		int node = getNode(prefix);
+		if (node == -1 || (int) bests.get(node) == noWords) {
+			return sortedList;
+		}
+
+		// The same best-first search as MappedDictionary.predict(prefix, n), with
+		// subtrees ranked by the lower bound of their best
+		PriorityQueue<Candidate<Integer>> queue = new PriorityQueue<Candidate<Integer>>();
+		queue.add(new Candidate<Integer>(node, prefix, bound(node)));
+		while (!queue.isEmpty() && sortedList.size() < n) {
+			Candidate<Integer> next = queue.poll();
+			if (next.node == null) {
+				sortedList.add(next.word);
+				continue;
+			}
+			if (wordEnds.get(next.node)) {
+				queue.add(new Candidate<Integer>(null, next.word, popularity(next.node)));
+			}
+			int first = firstChild(next.node);
+			int end = first + childCount(next.node, first);
+			for (int c = first; c < end; c++) {
+				if ((int) bests.get(c) != noWords) {
+					queue.add(new Candidate<Integer>(c, next.word + label(c), bound(c)));
+				}
+			}
+		}
+		return sortedList;
+	}
+
+	@Override
+	public List<String> allWords() {
+		LinkedList<String> list = new LinkedList<String>();
+		allWords(0, new StringBuilder(), list);
+		return list;
+	}
+
+	private void allWords(int node, StringBuilder prefix, LinkedList<String> words) {
+		int first = firstChild(node);
+		int end = first + childCount(node, first);
+		for (int c = first; c < end; c++) {
+			prefix.append(label(c));
+			if (wordEnds.get(c)) {
+				words.add(prefix.toString());
+			}
+			allWords(c, prefix, words);
+			prefix.setLength(prefix.length() - 1);
+		}
+	}
+
+	/**
+	 * @return the number of nodes, including the root
+	 */
+	int size() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return the bytes taken by the arrays holding the dictionary (not counting
+	 *         object headers)
+	 */
+	long bytes() {
+		return louds.bytes() + wordEnds.bytes() + 2L * alphabet.length + labels.bytes() + popularities.bytes()
+				+ bests.bytes();
+	}
+
+	private int getNode(String word) {
+		int node = 0;
+		for (int i = 0; i < word.length(); i++) {
+			int code = Arrays.binarySearch(alphabet, word.charAt(i));
+			if (code < 0) {
+				return -1;
+			}
+			int first = firstChild(node);
+			int end = first + childCount(node, first);
+			node = -1;
+			for (int c = first; c < end; c++) {
+				if (labels.get(c) == code) {
+					node = c;
+					break;
+				}
+			}
+			if (node == -1) {
+				return -1;
+			}
+		}
+		return node;
+	}
+
+	private int firstChild(int node) {
+		return louds.select0(node) - node;
+	}
+
+	/**
+	 * @param first
+	 *            firstChild(node)
+	 */
+	private int childCount(int node, int first) {
+		// The node's 1s start just after its 0 in the shape, at first + node + 1
+		int start = first + node + 1;
+		return louds.nextClear(start) - start;
+	}
+
+	private char label(int node) {
+		return alphabet[(int) labels.get(node)];
+	}
+
+	private int popularity(int node) {
+		return (int) (minRank + popularities.get(wordEnds.rank1(node)));
+	}
+
+	private int bound(int node) {
+		return (int) (minRank + lowest((int) bests.get(node)));
+	}
+
+	/**
+	 * Builds the LOUDS form of a word file (loaded like CLI.loadWords) and prints
+	 * how many bytes each of its arrays takes. MemoryFootprint compares its heap
+	 * with the other engines'.
+	 *
+	 * Usage: java LoudsDictionary word-popularity.txt
+	 */
+	public static void main(String[] args) throws IOException {
+		DictionaryTree tree = CLI.loadWords(new File(args[0]));
+		long start = System.nanoTime();
+		LoudsDictionary d = build(tree);
+		System.out.printf("Built %,d nodes in %.1f ms: %,d bytes, %.2f bytes/node%n", d.size(),
+				(System.nanoTime() - start) / 1e6, d.bytes(), (double) d.bytes() / d.size());
+		System.out.printf("shape %,d, word ends %,d, labels %,d (%d bits), popularities %,d (%d bits), bests %,d (%d bits)%n",
+				d.louds.bytes(), d.wordEnds.bytes(), d.labels.bytes(), d.labels.width, d.popularities.bytes(),
+				d.popularities.width, d.bests.bytes(), d.bests.width);
+	}
+
+	/**
+	 * A fixed bit string with rank and select. Every block of BLOCK_BITS bits has
+	 * the number of 1s before it, and the position of every SAMPLE_ZEROS-th 0 is
+	 * kept, so rank1 is a lookup and at most a block of bitCounts, and select0 a
+	 * lookup and a scan of (usually) one or two longs. The directories add about
+	 * 6% to the bits, and 1/2 a bit per 0.
+	 */
+	static class BitVector {
+
+		static final int BLOCK_BITS = 512;
+		static final int SAMPLE_ZEROS = 64;
+
+		private final long[] bits;
+		private final int length;
+		private final int[] ranks;
+		private final int[] zeroSamples;
+		private final int zeros;
+
+		/**
+		 * @param bits
+		 *            the bits, with bit i at bits[i / 64] &gt;&gt; (i % 64), and 0
+		 *            from length on
+		 * @param length
+		 *            the number of bits
+		 */
+		BitVector(long[] bits, int length) {
+			assert (bits.length == (length + 63) >>> 6);
+
+			this.bits = bits;
+			this.length = length;
+			int blocks = (length + BLOCK_BITS - 1) / BLOCK_BITS;
+			ranks = new int[blocks + 1];
+			int words = BLOCK_BITS / 64;
+			for (int b = 0; b < blocks; b++) {
+				int ones = 0;
+				for (int w = b * words; w < Math.min(bits.length, (b + 1) * words); w++) {
+					ones += Long.bitCount(bits[w]);
+				}
+				ranks[b + 1] = ranks[b] + ones;
+			}
+			zeros = length - ranks[blocks];
+			zeroSamples = new int[(zeros + SAMPLE_ZEROS - 1) / SAMPLE_ZEROS];
+			for (int i = 0, zero = 0; i < length; i++) {
+				if (!get(i)) {
+					if (zero % SAMPLE_ZEROS == 0) {
+						zeroSamples[zero / SAMPLE_ZEROS] = i;
+					}
+					zero++;
+				}
+			}
+		}
+
+		boolean get(int i) {
+			return (bits[i >>> 6] & (1L << i)) != 0;
+		}
+
+		/**
+		 * @return the number of 1s before position i
+		 */
+		int rank1(int i) {
+			int block = i / BLOCK_BITS;
+			int rank = ranks[block];
+			for (int w = block * (BLOCK_BITS / 64); w < i >>> 6; w++) {
+				rank += Long.bitCount(bits[w]);
+			}
+			if ((i & 63) != 0) {
+				rank += Long.bitCount(bits[i >>> 6] & (-1L >>> (64 - (i & 63))));
+			}
+			return rank;
+		}
+
+		/**
+		 * @return the position of the 0 with k 0s before it
+		 */
+		int select0(int k) {
+			assert (k >= 0 && k < zeros);
+
+			int sample = zeroSamples[k / SAMPLE_ZEROS];
+			int remaining = k % SAMPLE_ZEROS;
+			int w = sample >>> 6;
+			long clear = ~bits[w] & (-1L << sample);
+			for (int count; remaining >= (count = Long.bitCount(clear));) {
+				remaining -= count;
+				clear = ~bits[++w];
+			}
+			return (w << 6) + select(clear, remaining);
+		}
+
+		/**
+		 * @return the position of the first 0 at or after i, or length if there
+		 *         is none
+		 */
+		int nextClear(int i) {
+			int w = i >>> 6;
+			long clear = ~bits[w] & (-1L << i);
+			while (clear == 0 && ++w < bits.length) {
+				clear = ~bits[w];
+			}
+			return clear == 0 ? length : Math.min(length, (w << 6) + Long.numberOfTrailingZeros(clear));
+		}
+
+		long bytes() {
+			return 8L * bits.length + 4L * ranks.length + 4L * zeroSamples.length;
+		}
+
+		/**
+		 * @return the position of the 1 in word with k 1s before it
+		 */
+		private static int select(long word, int k) {
+			// Skip whole bytes, then clear the 1s before it in its byte
+			int shift = 0;
+			for (int ones; k >= (ones = Long.bitCount(word & 0xff)); shift += 8) {
+				k -= ones;
+				word >>>= 8;
+			}
+			for (int i = 0; i < k; i++) {
+				word &= word - 1;
+			}
+			return shift + Long.numberOfTrailingZeros(word);
+		}
+
+	}
+
+	/**
+	 * A fixed number of unsigned values, each stored in width bits.
+	 */
+	static class PackedArray {
+
+		final int width;
+		private final long[] words;
+		private final long mask;
+
+		PackedArray(int size, int width) {
+			assert (width > 0 && width < 64);
+
+			this.width = width;
+			this.mask = (1L << width) - 1;
+			words = new long[(int) (((long) size * width + 63) >>> 6)];
+		}
+
+		/**
+		 * @return the number of bits needed for values up to max
+		 */
+		static int bitsFor(long max) {
+			return Math.max(1, 64 - Long.numberOfLeadingZeros(max));
+		}
+
+		long get(int i) {
+			long bit = (long) i * width;
+			int w = (int) (bit >>> 6);
+			int offset = (int) (bit & 63);
+			long value = words[w] >>> offset;
+			if (offset + width > 64) {
+				value |= words[w + 1] << (64 - offset);
+			}
+			return value & mask;
+		}
+
+		void set(int i, long value) {
+			assert (value >= 0 && value <= mask);
+
+			long bit = (long) i * width;
+			int w = (int) (bit >>> 6);
+			int offset = (int) (bit & 63);
+			words[w] = words[w] & ~(mask << offset) | value << offset;
+			if (offset + width > 64) {
+				int spilled = offset + width - 64;
+				words[w + 1] = words[w + 1] & (-1L << spilled) | value >>> (64 - offset);
+			}
+		}
+
+		long bytes() {
+			return 8L * words.length;
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class LoudsDictionaryTests {
+
+	@Test
+	public void shouldAnswerLikeTheTreeItWasBuiltFrom() {
+		DictionaryTree tree = new DictionaryTree();
+		tree.insert("teleport", 100);
+		tree.insert("telepath", 32);
+		tree.insert("teleportation", 79);
+		tree.insert("telekinetic", 89);
+		tree.insert("telephone", 378);
+		tree.insert("yell");
+
+		LoudsDictionary unit = LoudsDictionary.build(tree);
+		Assertions.assertEquals(tree.size(), unit.size());
+		Assertions.assertTrue(unit.contains("telepath"));
+		Assertions.assertTrue(unit.contains("yell"));
+		Assertions.assertFalse(unit.contains("tele"));
+		Assertions.assertFalse(unit.contains("telephones"));
+		Assertions.assertFalse(unit.contains("q"));
+		Assertions.assertTrue(unit.isPrefix("tele"));
+		Assertions.assertTrue(unit.isPrefix(""));
+		Assertions.assertFalse(unit.isPrefix("tex"));
+		Assertions.assertEquals(tree.allWords(), unit.allWords());
+		Assertions.assertEquals(tree.predict("tele", 5), unit.predict("tele", 5));
+		Assertions.assertEquals(tree.predict("", 3), unit.predict("", 3));
+		Assertions.assertEquals(tree.predict("tel"), unit.predict("tel"));
+		Assertions.assertEquals(Optional.empty(), unit.predict("x"));
+		Assertions.assertEquals(0, unit.predict("x", 5).size());
+
+		tree.insert("telegram", 1);
+		Assertions.assertFalse(unit.contains("telegram"));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> unit.insert("telegram"));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> unit.remove("yell"));
+	}
+
+	@Test
+	public void shouldPredictLikeTheTreeForRandomWords() {
+		Random random = new Random(7);
+		DictionaryTree tree = new DictionaryTree();
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int length = 1 + random.nextInt(8); length > 0; length--) {
+				word.append((char) ('a' + random.nextInt(6)));
+			}
+			if (random.nextInt(50) == 0) {
+				word.append('\u00e9');
+			}
+			words.add(word.toString());
+			// Plenty of ties, some negative, and a few large enough to need many bits
+			int popularity = random.nextInt(10) == 0 ? random.nextInt(1 << 30) : random.nextInt(500) - 20;
+			tree.insert(word.toString(), popularity);
+		}
+		for (int i = 0; i < 300; i++) {
+			tree.remove(words.get(random.nextInt(words.size())));
+		}
+
+		LoudsDictionary unit = LoudsDictionary.build(tree);
+		Assertions.assertEquals(tree.allWords(), unit.allWords());
+		for (String word : words) {
+			Assertions.assertEquals(tree.contains(word), unit.contains(word), word);
+			for (int length = 0; length <= word.length(); length++) {
+				String prefix = word.substring(0, length);
+				Assertions.assertEquals(tree.isPrefix(prefix), unit.isPrefix(prefix), prefix);
+			}
+		}
+		for (int i = 0; i < 500; i++) {
+			String word = words.get(i);
+			String prefix = word.substring(0, Math.min(word.length(), random.nextInt(4)));
+			for (int n : new int[] { 1, 5, DictionaryTree.TOP_K + 7, 200 }) {
+				Assertions.assertEquals(tree.predict(prefix, n), unit.predict(prefix, n), prefix + " " + n);
+			}
+			Assertions.assertEquals(tree.predict(prefix), unit.predict(prefix), prefix);
+		}
+	}
+
+	@Test
+	public void anEmptyTreeShouldHaveNoWords() {
+		LoudsDictionary unit = LoudsDictionary.build(new DictionaryTree());
+		Assertions.assertEquals(1, unit.size());
+		Assertions.assertFalse(unit.contains("a"));
+		Assertions.assertTrue(unit.isPrefix(""));
+		Assertions.assertEquals(0, unit.allWords().size());
+		Assertions.assertEquals(0, unit.predict("", 5).size());
+	}
+
+	@Test
+	public void bitVectorShouldRankAndSelect() {
+		Random random = new Random(3);
+		for (int length : new int[] { 1, 63, 64, 65, 1000, 5000 }) {
+			// Long runs of 1s and of 0s as well as random bits
+			long[] bits = new long[(length + 63) >>> 6];
+			boolean[] naive = new boolean[length];
+			for (int i = 0; i < length; i++) {
+				naive[i] = i % 1500 < 700 ? random.nextBoolean() : i % 1500 < 1100;
+				if (naive[i]) {
+					bits[i >>> 6] |= 1L << i;
+				}
+			}
+			LoudsDictionary.BitVector unit = new LoudsDictionary.BitVector(bits, length);
+			int ones = 0;
+			int zeros = 0;
+			for (int i = 0; i < length; i++) {
+				Assertions.assertEquals(ones, unit.rank1(i), "rank1 " + i);
+				Assertions.assertEquals(naive[i], unit.get(i));
+				if (naive[i]) {
+					ones++;
+				} else {
+					Assertions.assertEquals(i, unit.select0(zeros++), "select0 " + (zeros - 1));
+				}
+				int next = i;
+				while (next < length && naive[next]) {
+					next++;
+				}
+				Assertions.assertEquals(next, unit.nextClear(i), "nextClear " + i);
+			}
+		}
+	}
+
+	@Test
+	public void packedArrayShouldRoundTripValuesAcrossWords() {
+		for (int width : new int[] { 1, 5, 17, 31, 33, 63 }) {
+			LoudsDictionary.PackedArray unit = new LoudsDictionary.PackedArray(200, width);
+			Random random = new Random(width);
+			long[] values = new long[200];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = random.nextLong() >>> (64 - width);
+				unit.set(i, values[i]);
+			}
+			// Overwrite some, which must leave their neighbours alone
+			for (int i = 0; i < values.length; i += 3) {
+				values[i] = (1L << width) - 1 - values[i];
+				unit.set(i, values[i]);
+			}
+			for (int i = 0; i < values.length; i++) {
+				Assertions.assertEquals(values[i], unit.get(i), width + " " + i);
+			}
+		}
+	}
+
+	@Test
+	public void bucketsShouldBoundTheirValuesFromBelow() {
+		for (long value = 0; value < 1 << 20; value += 1 + value / 50) {
+			int bucket = LoudsDictionary.bucket(value);
+			long lowest = LoudsDictionary.lowest(bucket);
+			Assertions.assertTrue(lowest <= value && value - lowest <= value >> LoudsDictionary.BEST_SUB_BITS,
+					Long.toString(value));
+			Assertions.assertEquals(bucket, LoudsDictionary.bucket(lowest));
+			Assertions.assertTrue(LoudsDictionary.bucket(value + 1) >= bucket);
+		}
+	}
+
+}
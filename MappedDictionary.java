@@ -0,0 +1,395 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only dictionary served straight from a snapshot file mapped into
+ * memory, so that it is ready as soon as the file is mapped and several
+ * processes can share the same pages.
+ *
+ * A snapshot is written from a DictionaryTree by write(). It starts with a
+ * header:
+ *
+ * <pre>
+ * int  MAGIC
+ * int  VERSION
+ * int  number of nodes
+ * int  number of words
+ * long CRC32 of everything after the header
+ * long (reserved)
+ * </pre>
+ *
+ * followed by one NODE_BYTES record per node, numbered breadth first from the
+ * root (node 0) so that the children of a node are next to each other, in
+ * insertion order:
+ *
+ * <pre>
+ * int  index of the first child
+ * int  label &lt;&lt; 16 | word end &lt;&lt; 15 | number of children
+ * int  rank (the popularity, or 0 if none was given, adjusted for selections)
+ * int  best popularity in the subtree (Integer.MAX_VALUE if it has no words)
+ * </pre>
+ */
+public class MappedDictionary implements Dictionary {
+
+	static final int MAGIC = 0x44494354; // "DICT"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+	static final int NODE_BYTES = 16;
+
+	private static final int WORD_END = 1 << 15;
+	private static final int CHILD_COUNT = WORD_END - 1;
+
+	private final ByteBuffer nodes;
+	private final int nodeCount;
+	private final int wordCount;
+
+	private MappedDictionary(ByteBuffer nodes, int nodeCount, int wordCount) {
+		this.nodes = nodes;
+		this.nodeCount = nodeCount;
+		this.wordCount = wordCount;
+	}
+
+	/**
+	 * Writes a snapshot of the given tree to a file.
+	 *
+	 * @param tree
+	 *            the dictionary to write
+	 * @param f
+	 *            the file to write it to, which is replaced (atomically) if it
+	 *            exists
+	 * @throws IOException
+	 *             if there was a problem writing to the file
+	 */
+	static void write(DictionaryTree tree, File f) throws IOException {
+		// Number the nodes breadth first
+		List<DictionaryTree> order = new ArrayList<>();
+		List<Character> labels = new ArrayList<>();
+		order.add(tree);
+		labels.add('\0');
+		for (int i = 0; i < order.size(); i++) {
+			for (Entry<Character, DictionaryTree> child : order.get(i).getChildren().entrySet()) {
+				order.add(child.getValue());
+				labels.add(child.getKey());
+			}
+		}
+
+		ByteBuffer payload = ByteBuffer.allocate(order.size() * NODE_BYTES);
+		int next = 1;
+		int words = 0;
+		for (int i = 0; i < order.size(); i++) {
+			DictionaryTree d = order.get(i);
+			int children = d.getChildren().size();
+			if (children > CHILD_COUNT) {
+				throw new IOException("Too many children for the snapshot format: " + children);
+			}
+			payload.putInt(next);
+			payload.putInt(labels.get(i) << 16 | (d.wordEnd ? WORD_END : 0) | children);
+			payload.putInt(d.rank());
+			payload.putInt(d.bestPopularity());
+			next += children;
+			words += d.wordEnd ? 1 : 0;
+		}
+		payload.flip();
+
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(VERSION).putInt(order.size()).putInt(words).putLong(crc.getValue()).putLong(0);
+		header.flip();
+
+		// Written to a new file which then replaces f, so that a crash can't leave
+		// half a snapshot and processes with f mapped keep the old one. The new file
+		// is created like any other (with the umask's permissions), unique to this
+		// thread, and takes on the permissions of the snapshot it replaces.
+		Path target = f.getAbsoluteFile().toPath();
+		Path temporary = target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid() + "."
+				+ Thread.currentThread().getId() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				while (payload.hasRemaining()) {
+					channel.write(payload);
+				}
+				channel.force(true);
+			}
+			if (Files.exists(target)
+					&& Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+			}
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		// Makes the rename itself durable
+		try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+			directory.force(true);
+		}
+	}
+
+	/**
+	 * Maps a snapshot written by write() into memory, checking its checksum.
+	 *
+	 * @param f
+	 *            the snapshot file
+	 * @return the dictionary in the snapshot
+	 * @throws IOException
+	 *             if the file can't be read or isn't a valid snapshot
+	 */
+	static MappedDictionary open(File f) throws IOException {
+		return open(f, true);
+	}
+
+	/**
+	 * Maps a snapshot written by write() into memory.
+	 *
+	 * @param f
+	 *            the snapshot file
+	 * @param verify
+	 *            whether to check the checksum, which reads the whole file
+	 * @return the dictionary in the snapshot
+	 * @throws IOException
+	 *             if the file can't be read or isn't a valid snapshot
+	 */
+	static MappedDictionary open(File f, boolean verify) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(f, "r"); FileChannel channel = file.getChannel()) {
+			if (channel.size() < HEADER_BYTES) {
+				throw new IOException(f + " is too short to be a dictionary snapshot");
+			}
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(f + " is not a dictionary snapshot");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException(f + " has snapshot version " + buffer.getInt(4) + ", expected " + VERSION);
+			}
+			int nodeCount = buffer.getInt(8);
+			int wordCount = buffer.getInt(12);
+			if (channel.size() != HEADER_BYTES + (long) nodeCount * NODE_BYTES) {
+				throw new IOException(f + " is truncated");
+			}
+
+			buffer.position(HEADER_BYTES);
+			ByteBuffer nodes = buffer.slice();
+			if (verify) {
+				CRC32 crc = new CRC32();
+				crc.update(nodes.duplicate());
+				if (crc.getValue() != buffer.getLong(16)) {
+					throw new IOException(f + " failed its checksum");
+				}
+			}
+			return new MappedDictionary(nodes, nodeCount, wordCount);
+		}
+	}
+
+	/**
+	 * Always throws, as a MappedDictionary can't be changed.
+	 */
+	@Override
+	public void insert(String word) {
+		throw new UnsupportedOperationException("A MappedDictionary is read-only");
+	}
+
+	/**
+	 * Always throws, as a MappedDictionary can't be changed.
+	 */
+	@Override
+	public void insert(String word, int popularity) {
+		throw new UnsupportedOperationException("A MappedDictionary is read-only");
+	}
+
+	/**
+	 * Always throws, as a MappedDictionary can't be changed.
+	 */
+	@Override
+	public boolean remove(String word) {
+		throw new UnsupportedOperationException("A MappedDictionary is read-only");
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		int node = getNode(word);
+		return node != -1 && isWordEnd(node);
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return getNode(word) != -1;
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		int node = getNode(prefix);
+		if (node == -1) {
+			return Optional.empty();
+		}
+		StringBuilder word = new StringBuilder(prefix);
+		while (childCount(node) > 0 && !isWordEnd(node)) {
+			node = firstChild(node);
+			word.append(label(node));
+		}
+		return Optional.of(word.toString());
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (n >= 0);
+		assert (prefix != null);
+
+		List<String> sortedList = new LinkedList<String>();
+		int node = getNode(prefix);
+		if (node == -1 || best(node) == Integer.MAX_VALUE) {
+			return sortedList;
+		}
+
+		// The same best-first search as DictionaryTree.predict(prefix, n)
+		PriorityQueue<Candidate<Integer>> queue = new PriorityQueue<Candidate<Integer>>();
+		queue.add(new Candidate<Integer>(node, prefix, best(node)));
+		while (!queue.isEmpty() && sortedList.size() < n) {
+			Candidate<Integer> next = queue.poll();
+			if (next.node == null) {
+				sortedList.add(next.word);
+				continue;
+			}
+			if (isWordEnd(next.node)) {
+				queue.add(new Candidate<Integer>(null, next.word, popularity(next.node)));
+			}
+			int first = firstChild(next.node);
+			for (int c = first; c < first + childCount(next.node); c++) {
+				queue.add(new Candidate<Integer>(c, next.word + label(c), best(c)));
+			}
+		}
+		return sortedList;
+	}
+
+	@Override
+	public List<String> allWords() {
+		LinkedList<String> list = new LinkedList<String>();
+		allWords(0, new StringBuilder(), list);
+		return list;
+	}
+
+	private void allWords(int node, StringBuilder prefix, LinkedList<String> words) {
+		int first = firstChild(node);
+		for (int c = first; c < first + childCount(node); c++) {
+			prefix.append(label(c));
+			if (isWordEnd(c)) {
+				words.add(prefix.toString());
+			}
+			allWords(c, prefix, words);
+			prefix.setLength(prefix.length() - 1);
+		}
+	}
+
+	/**
+	 * @return the number of nodes in the snapshot, including the root
+	 */
+	int size() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return the number of words in the snapshot
+	 */
+	int wordCount() {
+		return wordCount;
+	}
+
+	private int getNode(String word) {
+		int node = 0;
+		for (int i = 0; i < word.length() && node != -1; i++) {
+			node = getChild(node, word.charAt(i));
+		}
+		return node;
+	}
+
+	private int getChild(int node, char c) {
+		int first = firstChild(node);
+		for (int child = first; child < first + childCount(node); child++) {
+			if (label(child) == c) {
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	private int firstChild(int node) {
+		return nodes.getInt(node * NODE_BYTES);
+	}
+
+	private char label(int node) {
+		return (char) (nodes.getInt(node * NODE_BYTES + 4) >>> 16);
+	}
+
+	private boolean isWordEnd(int node) {
+		return (nodes.getInt(node * NODE_BYTES + 4) & WORD_END) != 0;
+	}
+
+	private int childCount(int node) {
+		return nodes.getInt(node * NODE_BYTES + 4) & CHILD_COUNT;
+	}
+
+	private int popularity(int node) {
+		return nodes.getInt(node * NODE_BYTES + 8);
+	}
+
+	private int best(int node) {
+		return nodes.getInt(node * NODE_BYTES + 12);
+	}
+
+	/**
+	 * Writes a snapshot of a word file (loaded like CLI.loadWords) and then times
+	 * opening it again.
+	 *
+	 * Usage: java MappedDictionary word-popularity.txt words.snapshot
+	 */
+	public static void main(String[] args) throws IOException {
+		File words = new File(args[0]);
+		File snapshot = new File(args[1]);
+
+		long start = System.nanoTime();
+		DictionaryTree tree = CLI.loadWords(words);
+		System.out.printf("Loaded %s in %.1f ms%n", words, (System.nanoTime() - start) / 1e6);
+
+		start = System.nanoTime();
+		write(tree, snapshot);
+		System.out.printf("Wrote %s (%,d bytes) in %.1f ms%n", snapshot, snapshot.length(),
+				(System.nanoTime() - start) / 1e6);
+
+		start = System.nanoTime();
+		MappedDictionary d = open(snapshot);
+		System.out.printf("Opened %s (%,d words) in %.1f ms%n", snapshot, d.wordCount(),
+				(System.nanoTime() - start) / 1e6);
+
+		start = System.nanoTime();
+		d = open(snapshot, false);
+		System.out.printf("Opened without checking the checksum in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+	}
+
+}
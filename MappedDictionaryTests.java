@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class MappedDictionaryTests {
+
+	private static File snapshotOf(DictionaryTree tree) throws IOException {
+		File f = File.createTempFile("dictionary", ".snapshot");
+		f.deleteOnExit();
+		MappedDictionary.write(tree, f);
+		return f;
+	}
+
+	@Test
+	public void aSnapshotShouldAnswerLikeTheTreeItWasWrittenFrom() throws IOException {
+		DictionaryTree tree = new DictionaryTree();
+		tree.insert("teleport", 100);
+		tree.insert("telepath", 32);
+		tree.insert("teleportation", 79);
+		tree.insert("telekinetic", 89);
+		tree.insert("telephone", 378);
+		tree.insert("yell");
+
+		MappedDictionary unit = MappedDictionary.open(snapshotOf(tree));
+		Assertions.assertEquals(tree.size(), unit.size());
+		Assertions.assertEquals(6, unit.wordCount());
+		Assertions.assertTrue(unit.contains("telepath"));
+		Assertions.assertFalse(unit.contains("tele"));
+		Assertions.assertTrue(unit.isPrefix("tele"));
+		Assertions.assertEquals(tree.allWords(), unit.allWords());
+		Assertions.assertEquals(tree.predict("tele", 5), unit.predict("tele", 5));
+		Assertions.assertEquals(tree.predict("", 3), unit.predict("", 3));
+		Assertions.assertEquals(tree.predict("tel"), unit.predict("tel"));
+		Assertions.assertEquals(Optional.empty(), unit.predict("x"));
+	}
+
+	@Test(expected = IOException.class)
+	public void aCorruptedSnapshotShouldFailItsChecksum() throws IOException {
+		DictionaryTree tree = new DictionaryTree();
+		tree.insert("word", 1);
+		File f = snapshotOf(tree);
+		try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+			file.seek(f.length() - 1);
+			file.write(0x7f);
+		}
+		MappedDictionary.open(f);
+	}
+
+	@Test(expected = IOException.class)
+	public void aFileThatIsntASnapshotShouldBeRejected() throws IOException {
+		File f = File.createTempFile("dictionary", ".snapshot");
+		f.deleteOnExit();
+		try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+			file.write(new byte[MappedDictionary.HEADER_BYTES]);
+		}
+		MappedDictionary.open(f);
+	}
+
+	@Test
+	public void rewritingASnapshotShouldLeaveOpenMappingsAlone() throws IOException {
+		File directory = Files.createTempDirectory("snapshots").toFile();
+		directory.deleteOnExit();
+		File f = new File(directory, "words.snapshot");
+		f.deleteOnExit();
+		DictionaryTree old = new DictionaryTree();
+		old.insert("apple", 1);
+		MappedDictionary.write(old, f);
+		MappedDictionary mapped = MappedDictionary.open(f);
+
+		DictionaryTree replacement = new DictionaryTree();
+		replacement.insert("banana", 1);
+		replacement.insert("cherry", 2);
+		MappedDictionary.write(replacement, f);
+
+		Assertions.assertTrue(mapped.contains("apple"));
+		Assertions.assertEquals(Arrays.asList("banana", "cherry"), MappedDictionary.open(f).allWords());
+		Assertions.assertArrayEquals(new String[] { "words.snapshot" }, directory.list());
+	}
+
+	@Test
+	public void aSnapshotShouldBeReadableLikeAnyOtherFile() throws IOException {
+		File directory = Files.createTempDirectory("snapshots").toFile();
+		directory.deleteOnExit();
+		File plain = new File(directory, "plain");
+		plain.deleteOnExit();
+		Files.createFile(plain.toPath());
+		File f = new File(directory, "words.snapshot");
+		f.deleteOnExit();
+		DictionaryTree tree = new DictionaryTree();
+		tree.insert("apple", 1);
+
+		// A new snapshot gets the same permissions as a new file, not a temporary
+		// file's owner-only ones
+		MappedDictionary.write(tree, f);
+		Assertions.assertEquals(Files.getPosixFilePermissions(plain.toPath()),
+				Files.getPosixFilePermissions(f.toPath()));
+
+		// A rewritten one keeps its own
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+		Files.setPosixFilePermissions(f.toPath(), permissions);
+		MappedDictionary.write(tree, f);
+		Assertions.assertEquals(permissions, Files.getPosixFilePermissions(f.toPath()));
+	}
+
+}
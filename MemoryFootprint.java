@@ -0,0 +1,54 @@
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the heap used by the different dictionary engines once the same
+ * word list has been loaded into them.
+ * 
+ * Usage: java MemoryFootprint word-popularity.txt
+ */
+public class MemoryFootprint {
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+
+		report("DictionaryTree", () -> CLI.loadWords(f));
+		report("CompactDictionaryTree", () -> {
+			CompactDictionaryTree d = CLI.loadWords(f, new CompactDictionaryTree());
+			d.trimToSize();
+			return d;
+		});
+		report("RadixDictionaryTree", () -> CLI.loadWords(f, new RadixDictionaryTree()));
+		report("DawgDictionary", () -> CLI.loadDawg(f));
+		report("LoudsDictionary", () -> LoudsDictionary.build(CLI.loadWords(f)));
+	}
+
+	private static void report(String name, Callable<Dictionary> load) throws Exception {
+		long before = usedHeap();
+		Dictionary d = load.call();
+		long after = usedHeap();
+
+		int words = d.allWords().size();
+		System.out.printf("%-24s %,12d bytes  %,8.1f bytes/word%n", name, after - before,
+				(double) (after - before) / words);
+
+		// Keep d reachable until after it has been measured
+		if (d.contains("")) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * @return the heap in use once the garbage collector has settled
+	 */
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+}
@@ -0,0 +1,272 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to a dictionary, which is written
+ * before they are acknowledged so they can be replayed after a crash.
+ *
+ * Each record is:
+ *
+ * <pre>
+ * byte   type (INSERT, INSERT_WITH_POPULARITY or REMOVE)
+ * int    length of the word in UTF-8 bytes
+ * byte[] the word
+ * int    popularity (INSERT_WITH_POPULARITY only)
+ * int    CRC32 of all of the above
+ * </pre>
+ *
+ * append() only copies the record into a buffer; sync() makes it durable. The
+ * fsync is done by a group commit: the first thread to call sync() writes and
+ * forces everything appended so far while the threads that call sync() after
+ * it wait, and then the first of those writes everything that was appended in
+ * the meantime with a single fsync, and so on. The more threads are writing,
+ * the more records share each fsync.
+ */
+class MutationLog implements Closeable {
+
+	static final byte INSERT = 1;
+	static final byte INSERT_WITH_POPULARITY = 2;
+	static final byte REMOVE = 3;
+
+	private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+
+	/**
+	 * Records appended but not yet written, and an empty buffer to swap in while
+	 * they are (null while a sync is writing it).
+	 */
+	private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+	private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * The number of records appended, and how many of them are known to be on
+	 * disk.
+	 */
+	private long appended;
+	private long durable;
+	private boolean syncing;
+	private IOException failure;
+
+	/**
+	 * Opens a log for appending, creating it if it doesn't exist.
+	 *
+	 * @param file
+	 *            the log file
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	MutationLog(File file) throws IOException {
+		this.file = file;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Adds a record to the log buffer. It is not durable until sync() has been
+	 * called with the number returned, or a bigger one.
+	 *
+	 * @param type
+	 *            INSERT, INSERT_WITH_POPULARITY or REMOVE
+	 * @param word
+	 *            the word inserted or removed
+	 * @param popularity
+	 *            the popularity given, which is ignored unless the type is
+	 *            INSERT_WITH_POPULARITY
+	 * @return the number of the record, counting from 1
+	 */
+	synchronized long append(byte type, String word, int popularity) {
+		assert (type == INSERT || type == INSERT_WITH_POPULARITY || type == REMOVE);
+
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		int length = 1 + 4 + bytes.length + (type == INSERT_WITH_POPULARITY ? 4 : 0) + 4;
+		if (pending.remaining() < length) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + length));
+			pending.flip();
+			pending = bigger.put(pending);
+		}
+
+		int start = pending.position();
+		pending.put(type).putInt(bytes.length).put(bytes);
+		if (type == INSERT_WITH_POPULARITY) {
+			pending.putInt(popularity);
+		}
+		crc.reset();
+		crc.update(pending.array(), start, pending.position() - start);
+		pending.putInt((int) crc.getValue());
+		return ++appended;
+	}
+
+	/**
+	 * Waits until the given record, and every record before it, is on disk.
+	 *
+	 * @param record
+	 *            the number returned by append()
+	 * @throws IOException
+	 *             if the log couldn't be written, now or by an earlier sync
+	 */
+	void sync(long record) throws IOException {
+		ByteBuffer batch;
+		long target;
+		synchronized (this) {
+			while (syncing && durable < record && failure == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for " + file + " to be synced");
+				}
+			}
+			if (failure != null) {
+				throw new IOException(file + " could not be written", failure);
+			}
+			if (durable >= record) {
+				return;
+			}
+			// Lead the next group commit with everything appended so far
+			syncing = true;
+			batch = pending;
+			pending = spare;
+			spare = null;
+			target = appended;
+		}
+
+		IOException error = null;
+		try {
+			batch.flip();
+			while (batch.hasRemaining()) {
+				channel.write(batch);
+			}
+			channel.force(false);
+		} catch (IOException e) {
+			error = e;
+		}
+
+		synchronized (this) {
+			batch.clear();
+			spare = batch;
+			syncing = false;
+			if (error == null) {
+				durable = target;
+			} else {
+				failure = error;
+			}
+			notifyAll();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Waits until every record appended so far is on disk.
+	 *
+	 * @throws IOException
+	 *             if the log couldn't be written
+	 */
+	void sync() throws IOException {
+		long record;
+		synchronized (this) {
+			record = appended;
+		}
+		sync(record);
+	}
+
+	/**
+	 * Syncs the log and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return the log file
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Applies the records in a log to a dictionary, in order. A record that was
+	 * only partly written, or that fails its checksum, must be from a crash in the
+	 * middle of a write: it was never acknowledged, so it and anything after it
+	 * are dropped, and the file is cut back to the end of the last good record so
+	 * that new records can be appended after it.
+	 *
+	 * @param file
+	 *            the log file
+	 * @param d
+	 *            the dictionary to apply the records to
+	 * @return the number of records applied
+	 * @throws IOException
+	 *             if the file can't be read or cut back
+	 */
+	static long replay(File file, Dictionary d) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too big to replay");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+
+			CRC32 crc = new CRC32();
+			long records = 0;
+			int end = 0;
+			while (true) {
+				int start = buffer.position();
+				if (buffer.remaining() < 1 + 4) {
+					break;
+				}
+				byte type = buffer.get();
+				int length = buffer.getInt();
+				int popularityBytes = type == INSERT_WITH_POPULARITY ? 4 : 0;
+				if (type < INSERT || type > REMOVE || length < 0
+						|| buffer.remaining() < (long) length + popularityBytes + 4) {
+					break;
+				}
+				String word = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+				int popularity = popularityBytes == 0 ? 0 : buffer.getInt();
+				crc.reset();
+				crc.update(buffer.array(), start, buffer.position() - start);
+				if (buffer.getInt() != (int) crc.getValue()) {
+					break;
+				}
+
+				if (type == INSERT) {
+					d.insert(word);
+				} else if (type == INSERT_WITH_POPULARITY) {
+					d.insert(word, popularity);
+				} else {
+					d.remove(word);
+				}
+				records++;
+				end = buffer.position();
+			}
+
+			if (end < channel.size()) {
+				channel.truncate(end);
+				channel.force(true);
+			}
+			return records;
+		}
+	}
+
+}
@@ -0,0 +1,437 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Predicts the next word from the words before it, using how often each pair
+ * (bigram) and triple (trigram) of words follow each other in a text corpus,
+ * together with the popularity of the words in a DictionaryTree.
+ *
+ * Every word in the tree gets an ID: the position of its word end among all of
+ * the tree's word ends, taken in order of their labels, i.e. its index in the
+ * sorted list of words. So the words starting with a prefix have a contiguous
+ * range of IDs, which is found with two binary searches.
+ *
+ * The corpus is streamed once, counting n-grams in LongIntMaps keyed by the
+ * packed IDs of their words (words that aren't in the tree, and the ends of
+ * sentences, break the n-grams). The counts are then frozen into sorted
+ * arrays, like a compressed sparse row matrix: for each context (the previous
+ * word, or previous two words) the IDs of the words that followed it in order,
+ * and how often they did. A prediction reads the slice for each context and
+ * binary searches it for the prefix's range of IDs.
+ *
+ * The model is a snapshot of the tree's words when it was built: words added
+ * later are only predicted when there aren't enough known ones.
+ */
+public class NGramModel {
+
+	/**
+	 * How much the trigram, bigram and popularity scores count for.
+	 */
+	static final double TRIGRAM_WEIGHT = 0.6;
+	static final double BIGRAM_WEIGHT = 0.3;
+	static final double POPULARITY_WEIGHT = 0.1;
+
+	/**
+	 * The number of bits for a word ID in a packed trigram key.
+	 */
+	static final int ID_BITS = 21;
+
+	private final DictionaryTree tree;
+
+	/**
+	 * The words, sorted, so words[id] is the word with that ID, and the
+	 * probability of each word from its popularity alone.
+	 */
+	private final String[] words;
+	private final double[] prior;
+
+	/**
+	 * The words that followed word p are bigramNext[bigramStart[p] ...
+	 * bigramStart[p + 1]), sorted, each bigramCount[i] times, bigramTotal[p]
+	 * times in all.
+	 */
+	private final int[] bigramStart;
+	private final int[] bigramNext;
+	private final int[] bigramCount;
+	private final int[] bigramTotal;
+
+	/**
+	 * The same for the pairs of words that were followed by a word, numbered by
+	 * trigramContexts.
+	 */
+	private final LongIntMap trigramContexts;
+	private final int[] trigramStart;
+	private final int[] trigramNext;
+	private final int[] trigramCount;
+	private final int[] trigramTotal;
+
+	private NGramModel(DictionaryTree tree, String[] words, LongIntMap bigrams, LongIntMap trigrams) {
+		this.tree = tree;
+		this.words = words;
+
+		prior = new double[words.length];
+		double total = 0;
+		for (int id = 0; id < words.length; id++) {
+			// Popularities are ranks, so weight them like a Zipf distribution
+			prior[id] = 1.0 / (1 + Math.max(0, tree.getSubtree(words[id]).rank()));
+			total += prior[id];
+		}
+		for (int id = 0; id < words.length; id++) {
+			prior[id] /= total;
+		}
+
+		long[] keys = bigrams.keys();
+		Arrays.sort(keys);
+		bigramStart = new int[words.length + 1];
+		bigramNext = new int[keys.length];
+		bigramCount = new int[keys.length];
+		bigramTotal = new int[words.length];
+		for (int i = 0; i < keys.length; i++) {
+			int previous = (int) (keys[i] >>> 32);
+			bigramStart[previous + 1] = i + 1;
+			bigramNext[i] = (int) keys[i];
+			bigramCount[i] = bigrams.get(keys[i], 0);
+			bigramTotal[previous] += bigramCount[i];
+		}
+		fillGaps(bigramStart);
+
+		keys = trigrams.keys();
+		Arrays.sort(keys);
+		trigramContexts = new LongIntMap(keys.length / 2);
+		int[] starts = new int[keys.length + 1];
+		int contexts = 0;
+		trigramNext = new int[keys.length];
+		trigramCount = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			long context = keys[i] >>> ID_BITS;
+			if (i == 0 || context != keys[i - 1] >>> ID_BITS) {
+				trigramContexts.put(context, contexts);
+				starts[contexts++] = i;
+			}
+			trigramNext[i] = (int) (keys[i] & ((1 << ID_BITS) - 1));
+			trigramCount[i] = trigrams.get(keys[i], 0);
+		}
+		starts[contexts] = keys.length;
+		trigramStart = Arrays.copyOf(starts, contexts + 1);
+		trigramTotal = new int[trigramStart.length - 1];
+		for (int c = 0; c < trigramTotal.length; c++) {
+			for (int i = trigramStart[c]; i < trigramStart[c + 1]; i++) {
+				trigramTotal[c] += trigramCount[i];
+			}
+		}
+	}
+
+	/**
+	 * Sets the starts of the contexts that were never seen (still 0) to the end
+	 * of the context before them, so their slices are empty.
+	 */
+	private static void fillGaps(int[] starts) {
+		for (int i = 1; i < starts.length; i++) {
+			starts[i] = Math.max(starts[i], starts[i - 1]);
+		}
+	}
+
+	/**
+	 * Builds a model from a UTF-8 text file.
+	 *
+	 * @param tree
+	 *            the dictionary, whose words are the ones the model knows
+	 * @param corpus
+	 *            the text to count n-grams in
+	 * @return the model
+	 * @throws IOException
+	 *             if the corpus can't be read
+	 */
+	static NGramModel build(DictionaryTree tree, File corpus) throws IOException {
+		try (Reader in = new InputStreamReader(new FileInputStream(corpus), StandardCharsets.UTF_8)) {
+			return build(tree, in);
+		}
+	}
+
+	/**
+	 * Builds a model from a stream of text. Words are runs of letters, digits and
+	 * apostrophes, looked up in lower case, and '.', '!' and '?' end sentences.
+	 *
+	 * @param tree
+	 *            the dictionary, whose words are the ones the model knows
+	 * @param corpus
+	 *            the text to count n-grams in
+	 * @return the model
+	 * @throws IOException
+	 *             if the corpus can't be read
+	 */
+	static NGramModel build(DictionaryTree tree, Reader corpus) throws IOException {
+		String[] words = tree.allWords().toArray(new String[0]);
+		Arrays.sort(words);
+		if (words.length >= 1 << ID_BITS) {
+			throw new IllegalArgumentException("Too many words for " + ID_BITS + "-bit IDs: " + words.length);
+		}
+
+		Counter counter = new Counter(words);
+		StringBuilder token = new StringBuilder();
+		char[] buffer = new char[8192];
+		for (int read = corpus.read(buffer); read >= 0; read = corpus.read(buffer)) {
+			for (int i = 0; i < read; i++) {
+				char c = buffer[i];
+				if (Character.isLetterOrDigit(c) || c == '\'') {
+					token.append(Character.toLowerCase(c));
+					continue;
+				}
+				if (token.length() > 0) {
+					counter.word(token.toString());
+					token.setLength(0);
+				}
+				if (c == '.' || c == '!' || c == '?') {
+					counter.endSentence();
+				}
+			}
+		}
+		if (token.length() > 0) {
+			counter.word(token.toString());
+		}
+		return new NGramModel(tree, words, counter.bigrams, counter.trigrams);
+	}
+
+	/**
+	 * Counts the n-grams in a stream of words.
+	 */
+	private static final class Counter {
+
+		final String[] words;
+		final LongIntMap bigrams = new LongIntMap();
+		final LongIntMap trigrams = new LongIntMap();
+
+		/**
+		 * The IDs of the last two words, or -1 if there weren't two known words
+		 * since the start of the sentence.
+		 */
+		int first = -1;
+		int second = -1;
+
+		Counter(String[] words) {
+			this.words = words;
+		}
+
+		void word(String word) {
+			int id = Arrays.binarySearch(words, word);
+			if (id < 0) {
+				endSentence();
+				return;
+			}
+			if (second >= 0) {
+				bigrams.increment((long) second << 32 | id);
+				if (first >= 0) {
+					trigrams.increment(((long) first << ID_BITS | second) << ID_BITS | id);
+				}
+			}
+			first = second;
+			second = id;
+		}
+
+		void endSentence() {
+			first = second = -1;
+		}
+
+	}
+
+	/**
+	 * Predicts the (at most) n most likely next words. Each word's score is the
+	 * weighted sum of the probabilities of it following the last two words, of it
+	 * following the last word, and of it from its popularity alone; the last two
+	 * are all that count if the last two words were never seen together, and the
+	 * last one if the last word was never followed by anything. Words that
+	 * followed neither are ordered by popularity, like DictionaryTree.predict.
+	 *
+	 * @param previousWords
+	 *            the words typed before the one being predicted (only the last
+	 *            two are used)
+	 * @param prefix
+	 *            the start of the word being predicted
+	 * @param n
+	 *            the maximum number of words to return
+	 * @return the (at most) n most likely words starting with prefix, most likely
+	 *         first
+	 */
+	public List<String> predictNext(List<String> previousWords, String prefix, int n) {
+		assert (previousWords != null && prefix != null && n >= 0);
+
+		int size = previousWords.size();
+		int last = size > 0 ? id(previousWords.get(size - 1)) : -1;
+		int before = size > 1 ? id(previousWords.get(size - 2)) : -1;
+		int context = last >= 0 && before >= 0 ? trigramContexts.get((long) before << ID_BITS | last, -1) : -1;
+
+		// The IDs of the words starting with prefix, which all sort before prefix
+		// followed by the highest char
+		int from = lowerBound(words, prefix);
+		int to = lowerBound(words, prefix + Character.MAX_VALUE);
+
+		TopN top = new TopN(n);
+		int bigramsFrom = last < 0 ? 0 : search(bigramNext, bigramStart[last], bigramStart[last + 1], from);
+		int bigramsTo = last < 0 ? 0 : search(bigramNext, bigramsFrom, bigramStart[last + 1], to);
+		int trigramsFrom = context < 0 ? 0 : search(trigramNext, trigramStart[context], trigramStart[context + 1], from);
+		int trigramsTo = context < 0 ? 0 : search(trigramNext, trigramsFrom, trigramStart[context + 1], to);
+
+		// Merge the two sorted slices, so each word that followed either is scored
+		// once
+		for (int b = bigramsFrom, t = trigramsFrom; b < bigramsTo || t < trigramsTo;) {
+			int id = Math.min(b < bigramsTo ? bigramNext[b] : Integer.MAX_VALUE,
+					t < trigramsTo ? trigramNext[t] : Integer.MAX_VALUE);
+			double score = POPULARITY_WEIGHT * prior[id];
+			if (b < bigramsTo && bigramNext[b] == id) {
+				score += BIGRAM_WEIGHT * bigramCount[b++] / bigramTotal[last];
+			}
+			if (t < trigramsTo && trigramNext[t] == id) {
+				score += TRIGRAM_WEIGHT * trigramCount[t++] / trigramTotal[context];
+			}
+			top.offer(id, score);
+		}
+
+		// Then the most popular words, in case too few words followed the context
+		if (!top.isFull()) {
+			for (String word : tree.predict(prefix, n)) {
+				int id = id(word);
+				if (id >= 0 && !followed(bigramNext, bigramsFrom, bigramsTo, id)
+						&& !followed(trigramNext, trigramsFrom, trigramsTo, id)) {
+					top.offer(id, POPULARITY_WEIGHT * prior[id]);
+				}
+			}
+		}
+
+		List<String> result = new ArrayList<>(top.size());
+		for (int i = 0; i < top.size(); i++) {
+			result.add(words[top.ids[i]]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the ID of word (in lower case), or -1 if it isn't known
+	 */
+	private int id(String word) {
+		int id = Arrays.binarySearch(words, word.toLowerCase());
+		return Math.max(-1, id);
+	}
+
+	/**
+	 * @return the index of the first word that doesn't sort before key
+	 */
+	private static int lowerBound(String[] words, String key) {
+		int i = Arrays.binarySearch(words, key);
+		return i < 0 ? -i - 1 : i;
+	}
+
+	/**
+	 * @return the first index in ids[from ... to) (which is sorted) whose ID is
+	 *         at least id, or to if there isn't one
+	 */
+	private static int search(int[] ids, int from, int to, int id) {
+		int i = Arrays.binarySearch(ids, from, to, id);
+		if (i < 0) {
+			return -i - 1;
+		}
+		while (i > from && ids[i - 1] == id) {
+			i--;
+		}
+		return i;
+	}
+
+	private static boolean followed(int[] ids, int from, int to, int id) {
+		return from < to && Arrays.binarySearch(ids, from, to, id) >= 0;
+	}
+
+	/**
+	 * @return the number of words the model knows
+	 */
+	int vocabularySize() {
+		return words.length;
+	}
+
+	/**
+	 * @return the number of different bigrams counted
+	 */
+	int bigrams() {
+		return bigramNext.length;
+	}
+
+	/**
+	 * @return the number of different trigrams counted
+	 */
+	int trigrams() {
+		return trigramNext.length;
+	}
+
+	/**
+	 * @return how often word followed previous in the corpus
+	 */
+	int count(String previous, String word) {
+		int p = id(previous);
+		int id = id(word);
+		if (p < 0 || id < 0) {
+			return 0;
+		}
+		int i = Arrays.binarySearch(bigramNext, bigramStart[p], bigramStart[p + 1], id);
+		return i < 0 ? 0 : bigramCount[i];
+	}
+
+	/**
+	 * The (at most) n best IDs offered so far, best first, kept in arrays sorted
+	 * by insertion as n is small.
+	 */
+	private final class TopN {
+
+		final int[] ids;
+		final double[] scores;
+		private int size;
+
+		TopN(int n) {
+			ids = new int[n];
+			scores = new double[n];
+		}
+
+		void offer(int id, double score) {
+			int i = size;
+			while (i > 0 && better(id, score, ids[i - 1], scores[i - 1])) {
+				i--;
+			}
+			if (i == ids.length) {
+				return;
+			}
+			int moved = Math.min(size, ids.length - 1) - i;
+			System.arraycopy(ids, i, ids, i + 1, moved);
+			System.arraycopy(scores, i, scores, i + 1, moved);
+			ids[i] = id;
+			scores[i] = score;
+			size = Math.min(size + 1, ids.length);
+		}
+
+		/**
+		 * Higher scores first, then more popular words, then by ID.
+		 */
+		private boolean better(int id, double score, int otherId, double otherScore) {
+			if (score != otherScore) {
+				return score > otherScore;
+			}
+			if (prior[id] != prior[otherId]) {
+				return prior[id] > prior[otherId];
+			}
+			return id < otherId;
+		}
+
+		boolean isFull() {
+			return size == ids.length;
+		}
+
+		int size() {
+			return size;
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class NGramModelTests {
+
+	private static DictionaryTree tree() {
+		DictionaryTree tree = new DictionaryTree();
+		String[] words = { "the", "a", "on", "door", "dig", "cat", "mat", "dog", "sat", "ran" };
+		for (int i = 0; i < words.length; i++) {
+			tree.insert(words[i], i);
+		}
+		return tree;
+	}
+
+	private static NGramModel model() throws IOException {
+		return NGramModel.build(tree(), new StringReader("The cat sat on the mat. The dog ran!\nThe cat ran."));
+	}
+
+	@Test
+	public void wordsThatFollowedTheLastWordShouldComeFirst() throws IOException {
+		NGramModel unit = model();
+		Assertions.assertEquals(2, unit.count("the", "cat"));
+		// cat followed "the" twice, mat and dog once, so are ordered by popularity
+		Assertions.assertEquals(Arrays.asList("cat", "mat", "dog"), unit.predictNext(Arrays.asList("the"), "", 3));
+		Assertions.assertEquals(Arrays.asList("cat", "mat", "dog", "the"),
+				unit.predictNext(Arrays.asList("the"), "", 4));
+	}
+
+	@Test
+	public void theLastTwoWordsShouldOutweighTheLastOne() throws IOException {
+		NGramModel unit = model();
+		Assertions.assertEquals(Arrays.asList("mat", "cat"), unit.predictNext(Arrays.asList("on", "the"), "", 2));
+		Assertions.assertEquals(Arrays.asList("sat", "ran"), unit.predictNext(Arrays.asList("the", "cat"), "", 2));
+	}
+
+	@Test
+	public void onlyWordsStartingWithThePrefixShouldBePredicted() throws IOException {
+		NGramModel unit = model();
+		Assertions.assertEquals(Arrays.asList("dog", "door", "dig"), unit.predictNext(Arrays.asList("The"), "d", 5));
+		Assertions.assertEquals(Collections.emptyList(), unit.predictNext(Arrays.asList("the"), "x", 5));
+	}
+
+	@Test
+	public void sentenceEndsAndUnknownWordsShouldBreakTheNGrams() throws IOException {
+		NGramModel unit = model();
+		Assertions.assertEquals(0, unit.count("mat", "the"));
+		Assertions.assertEquals(0, unit.count("ran", "the"));
+		Assertions.assertEquals(6, unit.trigrams());
+		Assertions.assertEquals(tree().predict("", 3), unit.predictNext(Arrays.asList("xyzzy"), "", 3));
+		Assertions.assertEquals(tree().predict("", 3), unit.predictNext(Collections.emptyList(), "", 3));
+	}
+
+	@Test
+	public void countsShouldSurviveTheMapGrowing() {
+		LongIntMap unit = new LongIntMap();
+		for (long key = 0; key < 10_000; key++) {
+			for (int i = 0; i <= key % 3; i++) {
+				unit.increment(key << 32);
+			}
+		}
+		Assertions.assertEquals(10_000, unit.size());
+		for (long key = 0; key < 10_000; key++) {
+			Assertions.assertEquals(key % 3 + 1, unit.get(key << 32, 0));
+		}
+		Assertions.assertEquals(-1, unit.get(10_000L << 32, -1));
+	}
+
+}
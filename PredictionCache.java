@@ -0,0 +1,451 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A bounded cache of predictions by prefix, for CachedDictionary. Each entry
+ * holds the words predicted for a prefix with some n, and also answers any
+ * smaller n (the first words of a prediction are the prediction for fewer
+ * words), or any n at all if fewer than n words start with the prefix.
+ *
+ * The cache holds at most a maximum weight: a number of entries (ofEntries),
+ * or an estimate of the bytes they hold (ofBytes). Two eviction policies can
+ * be picked:
+ *
+ * LRU evicts the least recently used entry, so a burst of one-off prefixes can
+ * flush out the popular ones.
+ *
+ * TINY_LFU is W-TinyLFU: new entries go into a small LRU window (1% of the
+ * weight), and when one falls out of it, it is only admitted into the main
+ * space if it has been asked for more often than the entry it would evict
+ * there. How often each prefix has been asked for is estimated, whether it is
+ * cached or not, by a count-min sketch of 4-bit counters that are all halved
+ * every so often, so that old popularity fades. The main space is a segmented
+ * LRU: entries start on probation and are protected (80% of the space) once
+ * used again, so one hit isn't enough to push out the regulars.
+ *
+ * Every method takes the cache's lock. The segments are LinkedHashMaps in
+ * access order, so a hit is a few hash lookups.
+ */
+class PredictionCache {
+
+	/**
+	 * The eviction policies.
+	 */
+	enum Policy {
+		LRU, TINY_LFU
+	}
+
+	static final double WINDOW = 0.01;
+	static final double PROTECTED = 0.8;
+
+	private static final int WINDOW_SEGMENT = 0;
+	private static final int PROBATION_SEGMENT = 1;
+	private static final int PROTECTED_SEGMENT = 2;
+
+	private final Policy policy;
+	private final boolean byBytes;
+	private final long maximumWeight;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+
+	/**
+	 * The window, probation and protected segments, each in access order. LRU only
+	 * uses the first.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final LinkedHashMap<String, Entry>[] segments = new LinkedHashMap[3];
+	private final long[] weights = new long[3];
+	private final FrequencySketch sketch;
+
+	/**
+	 * Bumped by every invalidation, so that a prediction made while the dictionary
+	 * changed under it isn't cached.
+	 */
+	private long version = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long invalidations = 0;
+
+	private PredictionCache(Policy policy, boolean byBytes, long maximumWeight, long expectedEntries) {
+		assert (maximumWeight > 0);
+
+		this.policy = policy;
+		this.byBytes = byBytes;
+		this.maximumWeight = maximumWeight;
+		this.windowMaximum = policy == Policy.LRU ? maximumWeight : Math.max(1, (long) (WINDOW * maximumWeight));
+		this.protectedMaximum = (long) (PROTECTED * (maximumWeight - windowMaximum));
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new LinkedHashMap<>(16, 0.75f, true);
+		}
+		this.sketch = policy == Policy.LRU ? null : new FrequencySketch(expectedEntries);
+	}
+
+	/**
+	 * @param maximumEntries
+	 *            the most predictions to hold
+	 * @param policy
+	 *            the eviction policy
+	 * @return an empty cache holding at most maximumEntries predictions
+	 */
+	static PredictionCache ofEntries(int maximumEntries, Policy policy) {
+		return new PredictionCache(policy, false, maximumEntries, maximumEntries);
+	}
+
+	/**
+	 * @param maximumBytes
+	 *            the most bytes, as estimated by weigh(), to hold
+	 * @param policy
+	 *            the eviction policy
+	 * @return an empty cache holding at most maximumBytes of predictions
+	 */
+	static PredictionCache ofBytes(long maximumBytes, Policy policy) {
+		return new PredictionCache(policy, true, maximumBytes, Math.max(16, maximumBytes / 256));
+	}
+
+	/**
+	 * Estimates the bytes an entry holds: the entry, its map node, the list and
+	 * the strings in it (with one byte per character, as most words are Latin-1),
+	 * counting each string even though they may be shared with the dictionary.
+	 */
+	static int weigh(String prefix, List<String> words) {
+		int bytes = 128 + 48 + prefix.length();
+		for (String word : words) {
+			bytes += 8 + 48 + word.length();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Looks up the prediction for prefix, counting a hit or a miss.
+	 *
+	 * @param prefix
+	 *            the prefix
+	 * @param n
+	 *            the maximum number of words wanted
+	 * @return the (at most) n words, or null if they aren't cached
+	 */
+	synchronized List<String> get(String prefix, int n) {
+		if (sketch != null) {
+			sketch.increment(prefix);
+		}
+		Entry entry = segments[WINDOW_SEGMENT].get(prefix);
+		if (entry == null && policy == Policy.TINY_LFU) {
+			entry = segments[PROTECTED_SEGMENT].get(prefix);
+			if (entry == null) {
+				entry = segments[PROBATION_SEGMENT].get(prefix);
+				if (entry != null && entry.answers(n)) {
+					promote(entry);
+				}
+			}
+		}
+		if (entry == null || !entry.answers(n)) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return n >= entry.words.size() ? entry.words : entry.words.subList(0, n);
+	}
+
+	/**
+	 * @return the current version, to pass to put
+	 */
+	synchronized long version() {
+		return version;
+	}
+
+	/**
+	 * Caches the prediction for prefix, unless the cache has been invalidated
+	 * since the given version, or it's too heavy to ever fit.
+	 *
+	 * @param prefix
+	 *            the prefix
+	 * @param n
+	 *            the maximum number of words that were asked for
+	 * @param words
+	 *            the (at most) n words predicted, which are copied
+	 * @param version
+	 *            the version() read before predicting
+	 */
+	synchronized void put(String prefix, int n, List<String> words, long version) {
+		if (version != this.version) {
+			return;
+		}
+		Entry entry = new Entry(prefix, n, List.copyOf(words), byBytes ? weigh(prefix, words) : 1);
+		if (entry.weight > maximumWeight) {
+			return;
+		}
+		remove(prefix);
+		add(WINDOW_SEGMENT, entry);
+		while (weights[WINDOW_SEGMENT] > windowMaximum) {
+			Entry eldest = removeEldest(WINDOW_SEGMENT);
+			if (policy == Policy.LRU) {
+				evictions++;
+			} else {
+				admit(eldest);
+			}
+		}
+	}
+
+	/**
+	 * Moves a candidate out of the window into probation if it is used more often
+	 * than every entry that has to be evicted to make room for it. The victims
+	 * (the least recently used on probation, then protected) are all picked
+	 * before any is evicted, so that a rejected candidate doesn't cost the main
+	 * space anything.
+	 */
+	private void admit(Entry candidate) {
+		long mainMaximum = maximumWeight - windowMaximum;
+		int frequency = sketch.frequency(candidate.prefix);
+		long excess = weights[PROBATION_SEGMENT] + weights[PROTECTED_SEGMENT] + candidate.weight - mainMaximum;
+		List<Entry> victims = new ArrayList<>();
+		for (int segment = PROBATION_SEGMENT; segment <= PROTECTED_SEGMENT && excess > 0; segment++) {
+			Iterator<Entry> entries = segments[segment].values().iterator();
+			while (excess > 0 && entries.hasNext()) {
+				Entry victim = entries.next();
+				if (frequency <= sketch.frequency(victim.prefix)) {
+					evictions++;
+					return;
+				}
+				victims.add(victim);
+				excess -= victim.weight;
+			}
+		}
+		if (excess > 0) {
+			evictions++;
+			return;
+		}
+		for (Entry victim : victims) {
+			remove(victim.prefix);
+		}
+		evictions += victims.size();
+		add(PROBATION_SEGMENT, candidate);
+	}
+
+	/**
+	 * Moves an entry that was hit on probation into the protected segment,
+	 * demoting the least recently used protected entries back to probation if
+	 * that is full.
+	 */
+	private void promote(Entry entry) {
+		remove(entry.prefix);
+		add(PROTECTED_SEGMENT, entry);
+		while (weights[PROTECTED_SEGMENT] > protectedMaximum && segments[PROTECTED_SEGMENT].size() > 1) {
+			add(PROBATION_SEGMENT, removeEldest(PROTECTED_SEGMENT));
+		}
+	}
+
+	private void add(int segment, Entry entry) {
+		segments[segment].put(entry.prefix, entry);
+		weights[segment] += entry.weight;
+	}
+
+	private Entry removeEldest(int segment) {
+		Iterator<Entry> eldest = segments[segment].values().iterator();
+		Entry entry = eldest.next();
+		eldest.remove();
+		weights[segment] -= entry.weight;
+		return entry;
+	}
+
+	private boolean remove(String prefix) {
+		for (int segment = 0; segment < segments.length; segment++) {
+			Entry entry = segments[segment].remove(prefix);
+			if (entry != null) {
+				weights[segment] -= entry.weight;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drops the predictions that a change to the given word can affect: those for
+	 * every prefix of it, from the empty prefix to the word itself.
+	 *
+	 * @param word
+	 *            the word inserted or removed
+	 */
+	synchronized void invalidate(String word) {
+		version++;
+		for (int length = 0; length <= word.length(); length++) {
+			if (remove(word.substring(0, length))) {
+				invalidations++;
+			}
+		}
+	}
+
+	/**
+	 * Drops every prediction, for changes to the dictionary that don't go through
+	 * CachedDictionary.
+	 */
+	synchronized void invalidateAll() {
+		version++;
+		for (int segment = 0; segment < segments.length; segment++) {
+			invalidations += segments[segment].size();
+			segments[segment].clear();
+			weights[segment] = 0;
+		}
+	}
+
+	/**
+	 * @return whether the prediction for prefix is cached, without counting a hit
+	 *         or a miss
+	 */
+	synchronized boolean isCached(String prefix) {
+		for (LinkedHashMap<String, Entry> segment : segments) {
+			if (segment.containsKey(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of predictions cached
+	 */
+	synchronized int size() {
+		return segments[0].size() + segments[1].size() + segments[2].size();
+	}
+
+	/**
+	 * @return the weight of the predictions cached: their number, or the bytes
+	 *         they hold as estimated by weigh()
+	 */
+	synchronized long weight() {
+		return weights[0] + weights[1] + weights[2];
+	}
+
+	synchronized long hits() {
+		return hits;
+	}
+
+	synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * @return the fraction of lookups that were hits, or 0 if there have been none
+	 */
+	synchronized double hitRate() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	/**
+	 * @return the number of predictions evicted or not admitted for lack of room
+	 */
+	synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of predictions dropped by invalidate and invalidateAll
+	 */
+	synchronized long invalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Sets the hit, miss, eviction and invalidation counts back to 0.
+	 */
+	synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		invalidations = 0;
+	}
+
+	/**
+	 * A cached prediction.
+	 */
+	private static class Entry {
+
+		final String prefix;
+		final int n;
+		final List<String> words;
+		final int weight;
+
+		Entry(String prefix, int n, List<String> words, int weight) {
+			this.prefix = prefix;
+			this.n = n;
+			this.words = words;
+			this.weight = weight;
+		}
+
+		/**
+		 * @return whether this holds the prediction of n words
+		 */
+		boolean answers(int n) {
+			return n <= this.n || words.size() < this.n;
+		}
+
+	}
+
+	/**
+	 * Estimates how often each key has been seen, in 4 bits per counter: each key
+	 * has a counter in 4 of the longs (16 counters each), and its frequency is the
+	 * smallest of them. Once 10 increments per expected entry have been made,
+	 * every counter is halved.
+	 */
+	static class FrequencySketch {
+
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+
+		private final long[] table;
+		private final int mask;
+		private final long sampleSize;
+		private long additions = 0;
+
+		FrequencySketch(long expectedEntries) {
+			int size = Integer.highestOneBit((int) Math.min(1 << 24, Math.max(16, expectedEntries)) * 2 - 1);
+			this.table = new long[size];
+			this.mask = size - 1;
+			this.sampleSize = 10L * Math.max(16, expectedEntries);
+		}
+
+		void increment(Object key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				long h = (hash + SEEDS[i]) * SEEDS[i];
+				h ^= h >>> 32;
+				int index = (int) h & mask;
+				int shift = ((int) (h >>> 28) & 15) << 2;
+				if (((table[index] >>> shift) & 15) < 15) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+				}
+				additions /= 2;
+			}
+		}
+
+		int frequency(Object key) {
+			int hash = spread(key.hashCode());
+			int frequency = 15;
+			for (int i = 0; i < 4; i++) {
+				long h = (hash + SEEDS[i]) * SEEDS[i];
+				h ^= h >>> 32;
+				int shift = ((int) (h >>> 28) & 15) << 2;
+				frequency = Math.min(frequency, (int) ((table[(int) h & mask] >>> shift) & 15));
+			}
+			return frequency;
+		}
+
+		private static int spread(int x) {
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			return (x >>> 16) ^ x;
+		}
+
+	}
+
+}
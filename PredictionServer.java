@@ -0,0 +1,335 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves predictions from a dictionary over HTTP, on the JDK's built-in
+ * server:
+ *
+ * <pre>
+ * GET  /predict?prefix=te&amp;n=5   {"prefix":"te","words":["tea","team",...]}
+ * GET  /contains?word=tea        {"word":"tea","contains":true}
+ * POST /predict?n=5              body ["te","th"], returns {"words":[["tea",...],["the",...]]}
+ * </pre>
+ *
+ * n defaults to 5 and may be at most MAX_N; errors are returned as
+ * {"error":"..."} with a 4xx status. The responses are written by hand (see
+ * Json), as they are only lists of strings.
+ *
+ * Each request is handled on a virtual thread where the JDK has them (Java 21
+ * on), which is looked up reflectively so that this still builds and runs on
+ * older JDKs, which use a fixed pool of platform threads instead. The
+ * dictionary is only read, so any engine can be served, as long as nothing
+ * else changes it while the server runs (apart from the thread-safe engines).
+ */
+public class PredictionServer {
+
+	static final int DEFAULT_N = 5;
+	static final int MAX_N = 1000;
+	static final int MAX_BATCH = 10_000;
+	static final int MAX_PREFIX_BYTES = 256;
+	/**
+	 * The most bytes of a POST body that are read, so that a client can't make
+	 * the server buffer without limit.
+	 */
+	static final int MAX_BODY_BYTES = MAX_BATCH * MAX_PREFIX_BYTES;
+
+	private final Dictionary dictionary;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	private PredictionServer(Dictionary dictionary, HttpServer server, ExecutorService executor) {
+		this.dictionary = dictionary;
+		this.server = server;
+		this.executor = executor;
+	}
+
+	/**
+	 * Starts serving a dictionary.
+	 *
+	 * @param dictionary
+	 *            the dictionary to serve
+	 * @param address
+	 *            the address to listen on; port 0 picks a free port
+	 * @return the running server
+	 * @throws IOException
+	 *             if the server couldn't listen on the address
+	 */
+	static PredictionServer start(Dictionary dictionary, InetSocketAddress address) throws IOException {
+		HttpServer server = HttpServer.create(address, 1024);
+		ExecutorService executor = newRequestExecutor();
+		PredictionServer s = new PredictionServer(dictionary, server, executor);
+		server.createContext("/predict", s::predict);
+		server.createContext("/contains", s::contains);
+		server.setExecutor(executor);
+		server.start();
+		return s;
+	}
+
+	/**
+	 * Turns on TCP_NODELAY for every HttpServer in this JVM created from now on,
+	 * unless sun.net.httpserver.nodelay has been set already. The server writes
+	 * the headers and body of a response separately, so with Nagle's algorithm
+	 * on, every response on a kept-alive connection waits for the client's
+	 * delayed ACK (40 ms on Linux). The property is JVM-wide (and read once, when
+	 * the first server is created), so it is left to main() rather than start().
+	 */
+	static void useNoDelay() {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	/**
+	 * @return an executor that runs each task on a new virtual thread if this JDK
+	 *         has them, or else on a fixed pool of platform threads
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			// Before Java 21 (or 19 and 20 without --enable-preview)
+			return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+		}
+	}
+
+	/**
+	 * @return whether requests are handled on virtual threads
+	 */
+	boolean usesVirtualThreads() {
+		return !(executor instanceof ThreadPoolExecutor);
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server, waiting up to a second for the requests being handled.
+	 */
+	void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	private void predict(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestURI().getPath().equals("/predict")) {
+				throw new RequestException(404, "Not found");
+			}
+			Map<String, String> query = query(exchange);
+			int n = count(query.get("n"));
+			switch (exchange.getRequestMethod()) {
+			case "GET":
+				String prefix = required(query, "prefix");
+				respond(exchange, 200, "{\"prefix\":" + Json.quote(prefix) + ",\"words\":"
+						+ Json.array(dictionary.predict(prefix, n)) + "}");
+				break;
+			case "POST":
+				List<String> prefixes;
+				try {
+					prefixes = Json.parseStrings(readBody(exchange));
+				} catch (IllegalArgumentException e) {
+					throw new RequestException(400, e.getMessage());
+				}
+				if (prefixes.size() > MAX_BATCH) {
+					throw new RequestException(413, "At most " + MAX_BATCH + " prefixes can be sent at once");
+				}
+				List<List<String>> predictions = predictAll(prefixes, n);
+				StringBuilder json = new StringBuilder("{\"words\":[");
+				for (int i = 0; i < predictions.size(); i++) {
+					json.append(i > 0 ? "," : "").append(Json.array(predictions.get(i)));
+				}
+				respond(exchange, 200, json.append("]}").toString());
+				break;
+			default:
+				throw new RequestException(405, "Use GET or POST");
+			}
+		} catch (RequestException e) {
+			respond(exchange, e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+		} catch (RuntimeException e) {
+			failed(exchange, e);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private List<List<String>> predictAll(List<String> prefixes, int n) {
+		if (dictionary instanceof DictionaryTree) {
+			// Shares the walks down the tree between prefixes with the same start
+			return ((DictionaryTree) dictionary).predictAll(prefixes, n);
+		}
+		List<List<String>> predictions = new ArrayList<>(prefixes.size());
+		for (String prefix : prefixes) {
+			predictions.add(dictionary.predict(prefix, n));
+		}
+		return predictions;
+	}
+
+	private void contains(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestURI().getPath().equals("/contains")) {
+				throw new RequestException(404, "Not found");
+			}
+			if (!exchange.getRequestMethod().equals("GET")) {
+				throw new RequestException(405, "Use GET");
+			}
+			String word = required(query(exchange), "word");
+			respond(exchange, 200,
+					"{\"word\":" + Json.quote(word) + ",\"contains\":" + dictionary.contains(word) + "}");
+		} catch (RequestException e) {
+			respond(exchange, e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+		} catch (RuntimeException e) {
+			failed(exchange, e);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers a request that failed with an unexpected exception with a 500, if
+	 * the response hasn't been started already.
+	 */
+	private static void failed(HttpExchange exchange, RuntimeException e) throws IOException {
+		e.printStackTrace();
+		if (exchange.getResponseCode() == -1) {
+			respond(exchange, 500, "{\"error\":" + Json.quote("Internal error") + "}");
+		}
+	}
+
+	private static Map<String, String> query(HttpExchange exchange) throws RequestException {
+		Map<String, String> parameters = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				String name = equals < 0 ? parameter : parameter.substring(0, equals);
+				String value = equals < 0 ? "" : parameter.substring(equals + 1);
+				try {
+					parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+							URLDecoder.decode(value, StandardCharsets.UTF_8));
+				} catch (IllegalArgumentException e) {
+					throw new RequestException(400, "Badly encoded parameter: " + parameter);
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static String required(Map<String, String> query, String name) throws RequestException {
+		String value = query.get(name);
+		if (value == null) {
+			throw new RequestException(400, "Missing parameter: " + name);
+		}
+		return value;
+	}
+
+	private static int count(String n) throws RequestException {
+		if (n == null) {
+			return DEFAULT_N;
+		}
+		try {
+			int count = Integer.parseInt(n);
+			if (count >= 0 && count <= MAX_N) {
+				return count;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new RequestException(400, "n must be a number from 0 to " + MAX_N);
+	}
+
+	/**
+	 * @throws RequestException
+	 *             with a 413 if the body is longer than MAX_BODY_BYTES, which is
+	 *             found out without reading more than that
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException, RequestException {
+		try (InputStream in = exchange.getRequestBody()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) >= 0;) {
+				if (body.size() + n > MAX_BODY_BYTES) {
+					throw new RequestException(413, "The body can be at most " + MAX_BODY_BYTES + " bytes");
+				}
+				body.write(buffer, 0, n);
+			}
+			return body.toString(StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * A request that can't be answered, with the status to answer it with.
+	 */
+	static class RequestException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+
+	}
+
+	/**
+	 * Usage: java [-Dmetrics=seconds] PredictionServer word-popularity.txt [port] [engine]
+	 *
+	 * With -Dmetrics, a tree's operations are recorded by DictionaryMetrics,
+	 * registered over JMX and printed every that many seconds.
+	 */
+	public static void main(String[] args) throws IOException, JMException {
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		String engine = args.length > 2 ? args[2] : "tree";
+
+		System.out.print("Loading dictionary ... ");
+		Dictionary d = CLI.load(new File(args[0]), engine);
+		System.out.println("done");
+
+		String dumpSeconds = System.getProperty("metrics");
+		if (dumpSeconds != null && d instanceof DictionaryTree) {
+			DictionaryMetrics metrics = new DictionaryMetrics();
+			metrics.register("server");
+			((DictionaryTree) d).setMetrics(metrics);
+			metrics.dumpEvery(System.out, Long.parseLong(dumpSeconds), TimeUnit.SECONDS);
+		}
+
+		useNoDelay();
+		PredictionServer server = start(d, new InetSocketAddress(port));
+		System.out.printf("Serving %s on port %d (%s threads)%n", engine, server.getPort(),
+				server.usesVirtualThreads() ? "virtual" : "platform");
+	}
+
+}
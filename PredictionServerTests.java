@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class PredictionServerTests {
+
+	private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+	private static PredictionServer start() throws IOException {
+		DictionaryTree tree = new DictionaryTree();
+		String[] words = { "the", "then", "there", "tea", "team", "to", "a" };
+		for (int i = 0; i < words.length; i++) {
+			tree.insert(words[i], i);
+		}
+		return PredictionServer.start(tree, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	private static HttpResponse<String> send(PredictionServer server, String method, String path, String body)
+			throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+				.method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+						: HttpRequest.BodyPublishers.ofString(body))
+				.build();
+		return CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	@Test
+	public void getShouldPredictAndCheckWords() throws Exception {
+		PredictionServer server = start();
+		try {
+			HttpResponse<String> response = send(server, "GET", "/predict?prefix=th&n=2", null);
+			Assertions.assertEquals(200, response.statusCode());
+			Assertions.assertEquals("{\"prefix\":\"th\",\"words\":[\"the\",\"then\"]}", response.body());
+			Assertions.assertEquals("{\"prefix\":\"\",\"words\":[\"the\",\"then\",\"there\",\"tea\",\"team\"]}",
+					send(server, "GET", "/predict?prefix=", null).body());
+			Assertions.assertEquals("{\"word\":\"tea\",\"contains\":true}",
+					send(server, "GET", "/contains?word=tea", null).body());
+			Assertions.assertEquals("{\"word\":\"te a\",\"contains\":false}",
+					send(server, "GET", "/contains?word=te%20a", null).body());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void postShouldPredictABatch() throws Exception {
+		PredictionServer server = start();
+		try {
+			HttpResponse<String> response = send(server, "POST", "/predict?n=2", "[\"te\", \"x\", \"t\\u0068\"]");
+			Assertions.assertEquals(200, response.statusCode());
+			Assertions.assertEquals("{\"words\":[[\"tea\",\"team\"],[],[\"the\",\"then\"]]}", response.body());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void badRequestsShouldGetAnError() throws Exception {
+		PredictionServer server = start();
+		try {
+			Assertions.assertEquals(400, send(server, "GET", "/predict?n=2", null).statusCode());
+			Assertions.assertEquals(400, send(server, "GET", "/predict?prefix=t&n=-1", null).statusCode());
+			Assertions.assertEquals(400, send(server, "POST", "/predict", "[\"te\"").statusCode());
+			Assertions.assertEquals(404, send(server, "GET", "/predictions?prefix=t", null).statusCode());
+			Assertions.assertEquals(405, send(server, "DELETE", "/contains?word=a", null).statusCode());
+			Assertions.assertEquals("{\"error\":\"Missing parameter: word\"}",
+					send(server, "GET", "/contains", null).body());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void tooLongABodyShouldBeRejected() throws Exception {
+		PredictionServer server = start();
+		try {
+			StringBuilder body = new StringBuilder("[\"");
+			while (body.length() <= PredictionServer.MAX_BODY_BYTES) {
+				body.append("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+			}
+			Assertions.assertEquals(413, send(server, "POST", "/predict", body.append("\"]").toString()).statusCode());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void aFailingDictionaryShouldGetA500() throws Exception {
+		DictionaryTree failing = new DictionaryTree() {
+			@Override
+			public List<String> predict(String prefix, int n) {
+				throw new IllegalStateException("broken");
+			}
+		};
+		PredictionServer server = PredictionServer.start(failing,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		try {
+			HttpResponse<String> response = send(server, "GET", "/predict?prefix=t", null);
+			Assertions.assertEquals(500, response.statusCode());
+			Assertions.assertEquals("{\"error\":\"Internal error\"}", response.body());
+			Assertions.assertEquals(200, send(server, "GET", "/contains?word=t", null).statusCode());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void jsonStringsShouldRoundTrip() {
+		String tricky = "quote \" backslash \\ tab \t bell \u0007 \u00e9";
+		String json = Json.array(Arrays.asList(tricky, ""));
+		Assertions.assertEquals(Arrays.asList(tricky, ""), Json.parseStrings(json));
+		Assertions.assertEquals(Arrays.asList(), Json.parseStrings(" [ ] "));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parseStrings("[\"a\"] x"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parseStrings("[1]"));
+	}
+
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Predictions for text that is typed one character at a time. Instead of
+ * walking down from the root for every keystroke, the session keeps the node
+ * reached by each prefix of the typed text, so type() and backspace() only
+ * move one step, and it keeps the results for each prefix, so backspace()
+ * brings back the previous results without working them out again.
+ *
+ * The session holds on to nodes of the tree, so it has to be reset() if the
+ * dictionary is changed while it is in use.
+ */
+public class PredictionSession {
+
+	private final DictionaryTree tree;
+	private final StringBuilder typed = new StringBuilder();
+
+	/**
+	 * nodes.get(i) is the node reached by the first i typed characters, or null if
+	 * no word starts with them.
+	 */
+	private final List<DictionaryTree> nodes = new ArrayList<>();
+
+	/**
+	 * results.get(i) is the last results() for the first i typed characters (or
+	 * null), and resultCounts[i] the n they were asked for.
+	 */
+	private final List<List<String>> results = new ArrayList<>();
+	private int[] resultCounts = new int[16];
+
+	/**
+	 * @param tree
+	 *            the dictionary to predict words from
+	 */
+	public PredictionSession(DictionaryTree tree) {
+		assert (tree != null);
+
+		this.tree = tree;
+		reset();
+	}
+
+	/**
+	 * Adds a character to the end of the typed text.
+	 *
+	 * @param c
+	 *            the character typed
+	 * @return whether any word starts with the typed text
+	 */
+	public boolean type(char c) {
+		DictionaryTree d = nodes.get(typed.length());
+		DictionaryTree next = d == null ? null : d.getChild(c);
+		typed.append(c);
+		nodes.add(next);
+		results.add(null);
+		return next != null;
+	}
+
+	/**
+	 * Removes the last typed character, if there is one. The results for the
+	 * shorter text are the ones it had before, if results() was called for it.
+	 *
+	 * @return whether there was a character to remove
+	 */
+	public boolean backspace() {
+		if (typed.length() == 0) {
+			return false;
+		}
+		typed.setLength(typed.length() - 1);
+		nodes.remove(nodes.size() - 1);
+		results.remove(results.size() - 1);
+		return true;
+	}
+
+	/**
+	 * Starts again with no typed text.
+	 */
+	public void reset() {
+		typed.setLength(0);
+		nodes.clear();
+		results.clear();
+		nodes.add(tree);
+		results.add(null);
+	}
+
+	/**
+	 * @param n
+	 *            the maximum number of words to return
+	 * @return the (at most) n most popular words starting with the typed text, as
+	 *         an unmodifiable list
+	 */
+	public List<String> results(int n) {
+		assert (n >= 0);
+
+		int depth = typed.length();
+		if (results.get(depth) != null && resultCounts[depth] == n) {
+			return results.get(depth);
+		}
+
+		DictionaryTree d = nodes.get(depth);
+		List<String> words = d == null ? Collections.emptyList()
+				: Collections.unmodifiableList(d.completions(typed, 0, depth, n));
+		if (depth >= resultCounts.length) {
+			resultCounts = Arrays.copyOf(resultCounts, Math.max(2 * resultCounts.length, depth + 1));
+		}
+		results.set(depth, words);
+		resultCounts[depth] = n;
+		return words;
+	}
+
+	/**
+	 * @return the typed text
+	 */
+	public String getTyped() {
+		return typed.toString();
+	}
+
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class PredictionSessionTests {
+
+	private static DictionaryTree tree() {
+		DictionaryTree tree = new DictionaryTree();
+		String[] words = { "the", "then", "there", "these", "theme", "tea", "team", "to", "a" };
+		for (int i = 0; i < words.length; i++) {
+			tree.insert(words[i], i);
+		}
+		return tree;
+	}
+
+	@Test
+	public void resultsShouldMatchPredictAfterEachKeystroke() {
+		DictionaryTree tree = tree();
+		PredictionSession unit = new PredictionSession(tree);
+		Assertions.assertEquals(tree.predict("", 5), unit.results(5));
+		for (char c : "thex".toCharArray()) {
+			unit.type(c);
+			Assertions.assertEquals(tree.predict(unit.getTyped(), 5), unit.results(5));
+			Assertions.assertEquals(tree.predict(unit.getTyped(), 20), unit.results(20));
+		}
+		Assertions.assertEquals(Collections.emptyList(), unit.results(5));
+	}
+
+	@Test
+	public void typeShouldSayWhetherAnyWordStartsWithTheText() {
+		PredictionSession unit = new PredictionSession(tree());
+		Assertions.assertTrue(unit.type('t'));
+		Assertions.assertTrue(unit.type('e'));
+		Assertions.assertFalse(unit.type('x'));
+		Assertions.assertFalse(unit.type('a'));
+		Assertions.assertTrue(unit.backspace());
+		Assertions.assertTrue(unit.backspace());
+		Assertions.assertEquals("te", unit.getTyped());
+		Assertions.assertEquals(Arrays.asList("tea", "team"), unit.results(5));
+	}
+
+	@Test
+	public void backspaceShouldBringBackThePreviousResults() {
+		PredictionSession unit = new PredictionSession(tree());
+		unit.type('t');
+		unit.type('h');
+		Object before = unit.results(3);
+		unit.type('e');
+		unit.type('r');
+		Assertions.assertEquals(Arrays.asList("there"), unit.results(3));
+		unit.backspace();
+		unit.backspace();
+		Assertions.assertSame(before, unit.results(3));
+		unit.reset();
+		Assertions.assertFalse(unit.backspace());
+		Assertions.assertEquals(Arrays.asList("the", "then", "there"), unit.results(3));
+	}
+
+}
@@ -0,0 +1,405 @@
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * A compressed (radix) version of DictionaryTree, where the edge into each node
+ * holds a whole string instead of a single character. Chains of nodes with a
+ * single child and no word end are merged into one edge, so a node only exists
+ * where words branch or end.
+ *
+ * The structural queries (size, height, numLeaves, maximumBranching and
+ * longestWord) still describe the uncompressed tree, i.e. the one a
+ * DictionaryTree would have built from the same words.
+ */
+public class RadixDictionaryTree implements Dictionary {
+
+	/**
+	 * The characters on the edge into this node, which is empty for the root.
+	 */
+	private String label;
+
+	/**
+	 * The children of this node, keyed by the first character of their label.
+	 */
+	private Map<Character, RadixDictionaryTree> children = new LinkedHashMap<>();
+	public Optional<Integer> popularity = Optional.empty();
+	public boolean wordEnd = false;
+
+	/**
+	 * The best (lowest) popularity of any word in this subtree, used to order the
+	 * best-first search in predict(prefix, n).
+	 */
+	private int best = Integer.MAX_VALUE;
+
+	public RadixDictionaryTree() {
+		this("");
+	}
+
+	private RadixDictionaryTree(String label) {
+		this.label = label;
+	}
+
+	@Override
+	public void insert(String word) {
+		assert (word != null);
+
+		if (word.isEmpty()) {
+			return;
+		}
+		inserting(word, Optional.empty());
+	}
+
+	@Override
+	public void insert(String word, int popularity) {
+		assert (word != null);
+
+		if (word.isEmpty()) {
+			return;
+		}
+		inserting(word, Optional.of(popularity));
+	}
+
+	private void inserting(String word, Optional<Integer> popularity) {
+		List<RadixDictionaryTree> path = new LinkedList<>();
+		RadixDictionaryTree node = this;
+		int index = 0;
+		path.add(node);
+
+		while (index < word.length()) {
+			RadixDictionaryTree child = node.children.get(word.charAt(index));
+			if (child == null) {
+				child = new RadixDictionaryTree(word.substring(index));
+				node.children.put(child.label.charAt(0), child);
+				index = word.length();
+			} else {
+				int common = commonPrefixLength(child.label, word, index);
+				if (common < child.label.length()) {
+					child = split(node, child, common);
+				}
+				index += common;
+			}
+			node = child;
+			path.add(0, node);
+		}
+
+		if (node.wordEnd && !popularity.isPresent()) {
+			return;
+		}
+		if (popularity.isPresent()) {
+			node.popularity = popularity;
+		}
+		node.wordEnd = true;
+
+		for (RadixDictionaryTree d : path) {
+			d.updateBest();
+		}
+	}
+
+	/**
+	 * Splits the edge into child after its first length characters, so that a new
+	 * word can branch off (or end) there.
+	 *
+	 * @return the new node in the middle of the edge
+	 */
+	private static RadixDictionaryTree split(RadixDictionaryTree parent, RadixDictionaryTree child, int length) {
+		RadixDictionaryTree middle = new RadixDictionaryTree(child.label.substring(0, length));
+		child.label = child.label.substring(length);
+		middle.children.put(child.label.charAt(0), child);
+		middle.best = child.best;
+		// Replacing the value keeps the child's place in the LinkedHashMap
+		parent.children.put(middle.label.charAt(0), middle);
+		return middle;
+	}
+
+	@Override
+	public boolean remove(String word) {
+		assert (word != null);
+
+		if (word.isEmpty()) {
+			return false;
+		}
+
+		List<RadixDictionaryTree> path = new LinkedList<>();
+		RadixDictionaryTree node = this;
+		int index = 0;
+		while (index < word.length()) {
+			path.add(0, node);
+			node = node.children.get(word.charAt(index));
+			if (node == null || !word.startsWith(node.label, index)) {
+				return false;
+			}
+			index += node.label.length();
+		}
+		if (!node.wordEnd) {
+			return false;
+		}
+
+		node.wordEnd = false;
+		node.popularity = Optional.empty();
+
+		RadixDictionaryTree parent = path.get(0);
+		boolean deleted = node.children.isEmpty();
+		if (deleted) {
+			parent.children.remove(node.label.charAt(0));
+			// The parent may now be a plain link in a chain
+			if (parent != this && !parent.wordEnd && parent.children.size() == 1) {
+				parent.mergeWithChild();
+			}
+		} else if (node.children.size() == 1) {
+			node.mergeWithChild();
+		}
+
+		node.updateBest();
+		for (RadixDictionaryTree d : path) {
+			d.updateBest();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Absorbs this node's only child, appending its label to this one's.
+	 */
+	private void mergeWithChild() {
+		RadixDictionaryTree child = children.values().iterator().next();
+		label = label + child.label;
+		children = child.children;
+		popularity = child.popularity;
+		wordEnd = child.wordEnd;
+		best = child.best;
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		RadixDictionaryTree node = this;
+		int index = 0;
+		while (index < word.length()) {
+			node = node.children.get(word.charAt(index));
+			if (node == null || !word.startsWith(node.label, index)) {
+				return false;
+			}
+			index += node.label.length();
+		}
+		return node.wordEnd;
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+		return getEdge(word) != null;
+	}
+
+	/**
+	 * Follows word from this node, which may end part of the way along an edge.
+	 *
+	 * @return the node at the end of the edge that word ends on (this node if word
+	 *         is empty), or null if word isn't a prefix in this tree
+	 */
+	private RadixDictionaryTree getEdge(String word) {
+		RadixDictionaryTree node = this;
+		int index = 0;
+		while (index < word.length()) {
+			node = node.children.get(word.charAt(index));
+			if (node == null) {
+				return null;
+			}
+			int length = Math.min(node.label.length(), word.length() - index);
+			if (!word.regionMatches(index, node.label, 0, length)) {
+				return null;
+			}
+			index += node.label.length();
+		}
+		return node;
+	}
+
+	/**
+	 * @return prefix followed by the rest of the edge that it ends on, or null if
+	 *         prefix isn't a prefix in this tree
+	 */
+	private String completePrefix(String prefix) {
+		RadixDictionaryTree node = this;
+		int index = 0;
+		while (index < prefix.length()) {
+			node = node.children.get(prefix.charAt(index));
+			if (node == null) {
+				return null;
+			}
+			int length = Math.min(node.label.length(), prefix.length() - index);
+			if (!prefix.regionMatches(index, node.label, 0, length)) {
+				return null;
+			}
+			index += node.label.length();
+		}
+		return prefix + node.label.substring(node.label.length() - (index - prefix.length()));
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		RadixDictionaryTree node = getEdge(prefix);
+		if (node == null) {
+			return Optional.empty();
+		}
+		StringBuilder word = new StringBuilder(completePrefix(prefix));
+		while (!node.children.isEmpty() && !node.wordEnd) {
+			node = node.children.values().iterator().next();
+			word.append(node.label);
+		}
+		return Optional.of(word.toString());
+	}
+
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (n >= 0);
+		assert (prefix != null);
+
+		List<String> sortedList = new LinkedList<String>();
+		RadixDictionaryTree d = getEdge(prefix);
+		if (d == null || d.best == Integer.MAX_VALUE) {
+			return sortedList;
+		}
+
+		// The same best-first search as DictionaryTree.predict(prefix, n), except that
+		// a child adds its whole label to the word
+		PriorityQueue<Candidate<RadixDictionaryTree>> queue = new PriorityQueue<>();
+		queue.add(new Candidate<>(d, completePrefix(prefix), d.best));
+		while (!queue.isEmpty() && sortedList.size() < n) {
+			Candidate<RadixDictionaryTree> next = queue.poll();
+			if (next.node == null) {
+				sortedList.add(next.word);
+				continue;
+			}
+			if (next.node.wordEnd) {
+				queue.add(new Candidate<>(null, next.word, next.node.popularity.orElse(0)));
+			}
+			for (RadixDictionaryTree child : next.node.children.values()) {
+				queue.add(new Candidate<>(child, next.word + child.label, child.best));
+			}
+		}
+		return sortedList;
+	}
+
+	@Override
+	public List<String> allWords() {
+		LinkedList<String> list = new LinkedList<String>();
+		allWords2("", list);
+		return list;
+	}
+
+	void allWords2(String prefix, LinkedList<String> words) {
+		for (RadixDictionaryTree child : children.values()) {
+			String word = prefix + child.label;
+			if (child.wordEnd) {
+				words.add(word);
+			}
+			child.allWords2(word, words);
+		}
+	}
+
+	/**
+	 * @return the number of nodes the uncompressed tree would have, i.e. one for
+	 *         the root plus one for every character on every edge
+	 */
+	int size() {
+		int size = 1;
+		for (RadixDictionaryTree child : children.values()) {
+			size += child.size() - 1 + child.label.length();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of nodes actually stored in this tree
+	 */
+	int nodeCount() {
+		int count = 1;
+		for (RadixDictionaryTree child : children.values()) {
+			count += child.nodeCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the height of this tree, i.e. the length of the longest branch in
+	 *         characters
+	 */
+	int height() {
+		int maxHeight = 0;
+		for (RadixDictionaryTree child : children.values()) {
+			maxHeight = Math.max(maxHeight, child.label.length() + child.height());
+		}
+		return maxHeight;
+	}
+
+	/**
+	 * @return the number of leaves in this tree, i.e. the number of words which are
+	 *         not prefixes of any other word.
+	 */
+	int numLeaves() {
+		if (children.isEmpty()) {
+			return 1;
+		}
+		int numLeaves = 0;
+		for (RadixDictionaryTree child : children.values()) {
+			numLeaves += child.numLeaves();
+		}
+		return numLeaves;
+	}
+
+	/**
+	 * @return the maximum number of children held by any node in the uncompressed
+	 *         tree, where each character inside an edge has a single child
+	 */
+	int maximumBranching() {
+		int maxBranch = children.size();
+		for (RadixDictionaryTree child : children.values()) {
+			maxBranch = Math.max(maxBranch, child.label.length() > 1 ? 1 : 0);
+			maxBranch = Math.max(maxBranch, child.maximumBranching());
+		}
+		return maxBranch;
+	}
+
+	/**
+	 * @return the longest word in this tree, picking the first one in insertion
+	 *         order if there is a tie like DictionaryTree does
+	 */
+	String longestWord() {
+		RadixDictionaryTree longest = null;
+		int maxHeight = -1;
+		for (RadixDictionaryTree child : children.values()) {
+			int childHeight = child.label.length() + child.height();
+			if (childHeight > maxHeight) {
+				maxHeight = childHeight;
+				longest = child;
+			}
+		}
+		return longest == null ? "" : longest.label + longest.longestWord();
+	}
+
+	private void updateBest() {
+		int b = wordEnd ? popularity.orElse(0) : Integer.MAX_VALUE;
+		for (RadixDictionaryTree child : children.values()) {
+			b = Math.min(b, child.best);
+		}
+		best = b;
+	}
+
+	/**
+	 * @return the length of the common prefix of label and word from index onwards
+	 */
+	private static int commonPrefixLength(String label, String word, int index) {
+		int length = 0;
+		while (length < label.length() && index + length < word.length()
+				&& label.charAt(length) == word.charAt(index + length)) {
+			length++;
+		}
+		return length;
+	}
+
+}
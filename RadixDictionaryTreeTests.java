@@ -0,0 +1,67 @@
+import java.util.Optional;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class RadixDictionaryTreeTests {
+
+	private static final String[] WORDS = { "femur", "yellow", "yell", "feature", "telepathic", "teleport",
+			"telophase", "telephone", "telepath", "omnipotent", "omnicient", "longestwordandonlywordthatbeginswithl" };
+
+	@Test
+	public void structuralQueriesShouldMatchTheUncompressedTree() {
+		RadixDictionaryTree unit = new RadixDictionaryTree();
+		DictionaryTree tree = new DictionaryTree();
+		for (String word : WORDS) {
+			unit.insert(word);
+			tree.insert(word);
+		}
+		Assertions.assertEquals(tree.size(), unit.size());
+		Assertions.assertEquals(tree.height(), unit.height());
+		Assertions.assertEquals(tree.numLeaves(), unit.numLeaves());
+		Assertions.assertEquals(tree.maximumBranching(), unit.maximumBranching());
+		Assertions.assertEquals(tree.longestWord(), unit.longestWord());
+		Assertions.assertEquals(tree.allWords(), unit.allWords());
+		Assertions.assertTrue(unit.nodeCount() < tree.size());
+	}
+
+	@Test
+	public void insertingInsideAnEdgeShouldSplitIt() {
+		RadixDictionaryTree unit = new RadixDictionaryTree();
+		unit.insert("yellow");
+		Assertions.assertEquals(2, unit.nodeCount());
+		unit.insert("yell");
+		Assertions.assertEquals(3, unit.nodeCount());
+		Assertions.assertTrue(unit.contains("yell"));
+		Assertions.assertTrue(unit.contains("yellow"));
+		Assertions.assertFalse(unit.contains("yel"));
+		Assertions.assertTrue(unit.isPrefix("yel"));
+	}
+
+	@Test
+	public void removingShouldMergeEdgesBackTogether() {
+		RadixDictionaryTree unit = new RadixDictionaryTree();
+		unit.insert("yellow");
+		unit.insert("yell");
+		unit.insert("yelp");
+		Assertions.assertTrue(unit.remove("yelp"));
+		Assertions.assertEquals(3, unit.nodeCount()); // "yell" and "ow"
+		Assertions.assertFalse(unit.remove("yell"));
+		Assertions.assertEquals(2, unit.nodeCount()); // "yellow"
+		Assertions.assertEquals(7, unit.size());
+		Assertions.assertEquals(Optional.of("yellow"), unit.predict("ye"));
+	}
+
+	@Test
+	public void predictShouldFinishTheEdgeThePrefixEndsOn() {
+		RadixDictionaryTree unit = new RadixDictionaryTree();
+		unit.insert("teleport", 100);
+		unit.insert("telepath", 32);
+		unit.insert("telephone", 378);
+		Assertions.assertEquals(Optional.of("teleport"), unit.predict("telepo"));
+		Assertions.assertEquals("telepath", unit.predict("tel", 3).get(0));
+		Assertions.assertEquals("telephone", unit.predict("teleph", 3).get(0));
+		Assertions.assertTrue(unit.predict("telex", 3).isEmpty());
+	}
+
+}
@@ -0,0 +1,478 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A dictionary split across several DictionaryTree shards, so that it can hold
+ * more words than one tree comfortably can and each part can be built or
+ * replaced on its own. A Partitioner decides which shard each word lives in:
+ * byRange() by ranges of their first character, or byHash() by their hash.
+ *
+ * insert, remove and contains go to the word's shard. predict(prefix, n) asks
+ * every shard that can hold words starting with prefix (in parallel on a
+ * fork-join pool, when n is large enough for that to pay) and k-way merges
+ * their results by popularity; with byRange() a non-empty prefix only ever
+ * needs one shard, while with byHash() every prediction asks all of them.
+ *
+ * Each shard has its own read-write lock, so writes to one shard don't hold up
+ * reads (or writes) of the others, and loadShard() builds a replacement for a
+ * shard without any lock, only locking it to swap the new tree in.
+ */
+public class ShardedDictionary implements Dictionary {
+
+	/**
+	 * Decides which shard each word belongs to.
+	 */
+	interface Partitioner {
+
+		/**
+		 * @return the number of shards
+		 */
+		int shards();
+
+		/**
+		 * @return the shard word belongs to
+		 */
+		int shardOf(String word);
+
+		/**
+		 * @return the first shard that can hold words starting with prefix
+		 */
+		int firstShard(String prefix);
+
+		/**
+		 * @return the last shard that can hold words starting with prefix
+		 */
+		int lastShard(String prefix);
+
+	}
+
+	/**
+	 * Boundaries that split the words in word-popularity.txt into four shards of
+	 * about the same size: a-c, d-k, l-q and r onwards.
+	 */
+	static final char[] DEFAULT_RANGES = { 'd', 'l', 'r' };
+
+	private final Partitioner partitioner;
+	private final DictionaryTree[] shards;
+	private final ReadWriteLock[] locks;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Makes an empty dictionary.
+	 *
+	 * @param partitioner
+	 *            decides which shard each word belongs to
+	 * @param pool
+	 *            the pool to build shards and ask them for predictions on
+	 */
+	ShardedDictionary(Partitioner partitioner, ForkJoinPool pool) {
+		assert (partitioner.shards() > 0);
+
+		this.partitioner = partitioner;
+		this.pool = pool;
+		shards = new DictionaryTree[partitioner.shards()];
+		locks = new ReadWriteLock[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new DictionaryTree();
+			locks[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	/**
+	 * Builds a sharded dictionary from a list of words, giving each word its index
+	 * in the list as its popularity, like DictionaryTree.build().
+	 *
+	 * @param words
+	 *            the words, most popular first; empty words are skipped
+	 * @param partitioner
+	 *            decides which shard each word belongs to
+	 * @param pool
+	 *            the pool to build the shards on
+	 * @return the dictionary
+	 */
+	static ShardedDictionary build(String[] words, Partitioner partitioner, ForkJoinPool pool) {
+		ShardedDictionary d = new ShardedDictionary(partitioner, pool);
+		int[][] indices = d.partition(words, -1);
+		for (int s = 0; s < indices.length; s++) {
+			d.shards[s] = DictionaryTree.build(words, indices[s], pool);
+		}
+		return d;
+	}
+
+	/**
+	 * Builds one shard again from a list of words, from the words in it that
+	 * belong to that shard, and swaps it in. The rest of the dictionary can be
+	 * used while the new shard is built.
+	 *
+	 * @param shard
+	 *            the number of the shard
+	 * @param words
+	 *            the words, most popular first, of which the ones that don't
+	 *            belong to this shard and empty ones are skipped
+	 * @return the shard's old tree
+	 */
+	DictionaryTree loadShard(int shard, String[] words) {
+		return swapShard(shard, DictionaryTree.build(words, partition(words, shard)[shard], pool));
+	}
+
+	/**
+	 * Replaces one shard's tree, waiting for the reads and writes using the old
+	 * one to finish.
+	 *
+	 * @param shard
+	 *            the number of the shard
+	 * @param tree
+	 *            the new tree, which should only hold words that belong to the
+	 *            shard
+	 * @return the shard's old tree
+	 */
+	DictionaryTree swapShard(int shard, DictionaryTree tree) {
+		assert (tree != null);
+
+		locks[shard].writeLock().lock();
+		try {
+			DictionaryTree old = shards[shard];
+			shards[shard] = tree;
+			return old;
+		} finally {
+			locks[shard].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Splits the indices of the non-empty words by shard.
+	 *
+	 * @param only
+	 *            the only shard to collect the indices for, or -1 for all of them
+	 */
+	private int[][] partition(String[] words, int only) {
+		int[] shardOf = new int[words.length];
+		int[] counts = new int[shards.length];
+		for (int i = 0; i < words.length; i++) {
+			shardOf[i] = words[i].isEmpty() ? -1 : partitioner.shardOf(words[i]);
+			if (shardOf[i] >= 0 && (only < 0 || shardOf[i] == only)) {
+				counts[shardOf[i]]++;
+			}
+		}
+		int[][] indices = new int[shards.length][];
+		for (int s = 0; s < shards.length; s++) {
+			indices[s] = new int[counts[s]];
+			counts[s] = 0;
+		}
+		for (int i = 0; i < words.length; i++) {
+			int s = shardOf[i];
+			if (s >= 0 && (only < 0 || s == only)) {
+				indices[s][counts[s]++] = i;
+			}
+		}
+		return indices;
+	}
+
+	/**
+	 * @return the number of shards
+	 */
+	int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @return the number of words in each shard
+	 */
+	int[] shardSizes() {
+		int[] sizes = new int[shards.length];
+		for (int s = 0; s < shards.length; s++) {
+			sizes[s] = read(s, tree -> tree.allWords().size());
+		}
+		return sizes;
+	}
+
+	private <T> T read(int shard, Function<DictionaryTree, T> action) {
+		locks[shard].readLock().lock();
+		try {
+			return action.apply(shards[shard]);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	private <T> T write(int shard, Function<DictionaryTree, T> action) {
+		locks[shard].writeLock().lock();
+		try {
+			return action.apply(shards[shard]);
+		} finally {
+			locks[shard].writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void insert(String word) {
+		assert (word != null);
+
+		if (!word.isEmpty()) {
+			write(partitioner.shardOf(word), tree -> {
+				tree.insert(word);
+				return null;
+			});
+		}
+	}
+
+	@Override
+	public void insert(String word, int popularity) {
+		assert (word != null);
+
+		if (!word.isEmpty()) {
+			write(partitioner.shardOf(word), tree -> {
+				tree.insert(word, popularity);
+				return null;
+			});
+		}
+	}
+
+	@Override
+	public boolean remove(String word) {
+		assert (word != null);
+
+		return !word.isEmpty() && write(partitioner.shardOf(word), tree -> tree.remove(word));
+	}
+
+	@Override
+	public boolean contains(String word) {
+		assert (word != null);
+
+		return !word.isEmpty() && read(partitioner.shardOf(word), tree -> tree.contains(word));
+	}
+
+	@Override
+	public boolean isPrefix(String word) {
+		assert (word != null);
+
+		for (int s = partitioner.firstShard(word); s <= partitioner.lastShard(word); s++) {
+			if (read(s, tree -> tree.isPrefix(word))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Optional<String> predict(String prefix) {
+		assert (prefix != null);
+
+		for (int s = partitioner.firstShard(prefix); s <= partitioner.lastShard(prefix); s++) {
+			Optional<String> word = read(s, tree -> tree.predict(prefix));
+			if (word.isPresent()) {
+				return word;
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Predicts the (at most) n most popular words starting with prefix from the
+	 * shards that can hold them, merging their predictions. For n of at most
+	 * DictionaryTree.TOP_K each shard's predictions are just read from its cached
+	 * completions, which is far quicker than handing them to another thread, so
+	 * the shards are only asked in parallel (the first one on this thread) for
+	 * larger n.
+	 */
+	@Override
+	public List<String> predict(String prefix, int n) {
+		assert (prefix != null);
+		assert (n >= 0);
+
+		int first = partitioner.firstShard(prefix);
+		int last = partitioner.lastShard(prefix);
+		if (first == last) {
+			return read(first, tree -> tree.predict(prefix, n));
+		}
+
+		List<List<Word<String, Integer>>> predictions = new ArrayList<>();
+		if (n <= DictionaryTree.TOP_K) {
+			for (int s = first; s <= last; s++) {
+				predictions.add(read(s, tree -> {
+					DictionaryTree d = tree.getSubtree(prefix);
+					List<Word<String, Integer>> cached = d == null ? Collections.emptyList() : d.getTopK();
+					return new ArrayList<>(cached.subList(0, Math.min(n, cached.size())));
+				}));
+			}
+			return merge(predictions, n);
+		}
+
+		List<ForkJoinTask<List<Word<String, Integer>>>> tasks = new ArrayList<>();
+		for (int s = first + 1; s <= last; s++) {
+			int shard = s;
+			tasks.add(pool.submit(() -> ranked(shard, prefix, n)));
+		}
+		predictions.add(ranked(first, prefix, n));
+		for (ForkJoinTask<List<Word<String, Integer>>> task : tasks) {
+			predictions.add(task.join());
+		}
+		return merge(predictions, n);
+	}
+
+	/**
+	 * @return one shard's predictions with their popularities
+	 */
+	private List<Word<String, Integer>> ranked(int shard, String prefix, int n) {
+		return read(shard, tree -> {
+			List<Word<String, Integer>> words = new ArrayList<>();
+			for (String word : tree.predict(prefix, n)) {
+				words.add(new Word<String, Integer>(word, tree.getSubtree(word).rank()));
+			}
+			return words;
+		});
+	}
+
+	/**
+	 * Merges lists sorted by DictionaryTree.RANKING, keeping the first n words.
+	 */
+	static List<String> merge(List<List<Word<String, Integer>>> lists, int n) {
+		// Each queue entry is the position in one of the lists
+		PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> DictionaryTree.RANKING
+				.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+		for (int i = 0; i < lists.size(); i++) {
+			if (!lists.get(i).isEmpty()) {
+				heads.add(new int[] { i, 0 });
+			}
+		}
+		List<String> merged = new ArrayList<>(n);
+		while (merged.size() < n && !heads.isEmpty()) {
+			int[] head = heads.poll();
+			List<Word<String, Integer>> list = lists.get(head[0]);
+			merged.add(list.get(head[1]).getKey());
+			if (++head[1] < list.size()) {
+				heads.add(head);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the words of every shard, one shard after the other
+	 */
+	@Override
+	public List<String> allWords() {
+		List<String> words = new ArrayList<>();
+		for (int s = 0; s < shards.length; s++) {
+			words.addAll(read(s, DictionaryTree::allWords));
+		}
+		return words;
+	}
+
+	/**
+	 * @param boundaries
+	 *            the first characters of the shards after the first, in increasing
+	 *            order: shard i holds the words whose first character is at least
+	 *            boundaries[i - 1] and less than boundaries[i]
+	 * @return a partitioner by ranges of first characters
+	 */
+	static Partitioner byRange(char... boundaries) {
+		char[] copy = boundaries.clone();
+		for (int i = 1; i < copy.length; i++) {
+			assert (copy[i - 1] < copy[i]);
+		}
+		return new Partitioner() {
+
+			@Override
+			public int shards() {
+				return copy.length + 1;
+			}
+
+			@Override
+			public int shardOf(String word) {
+				int i = Arrays.binarySearch(copy, word.charAt(0));
+				return i >= 0 ? i + 1 : -i - 1;
+			}
+
+			@Override
+			public int firstShard(String prefix) {
+				return prefix.isEmpty() ? 0 : shardOf(prefix);
+			}
+
+			@Override
+			public int lastShard(String prefix) {
+				return prefix.isEmpty() ? copy.length : shardOf(prefix);
+			}
+
+		};
+	}
+
+	/**
+	 * Picks the boundaries for byRange() that split a list of words into shards
+	 * of about the same size, without splitting up the words that start with the
+	 * same character.
+	 *
+	 * @param words
+	 *            the words
+	 * @param shards
+	 *            the number of shards wanted
+	 * @return the boundaries, of which there may be fewer than shards - 1 if the
+	 *         words have too few different first characters
+	 */
+	static char[] balancedRanges(String[] words, int shards) {
+		int[] counts = new int[Character.MAX_VALUE + 1];
+		int total = 0;
+		for (String word : words) {
+			if (!word.isEmpty()) {
+				counts[word.charAt(0)]++;
+				total++;
+			}
+		}
+		StringBuilder boundaries = new StringBuilder();
+		long seen = 0;
+		for (int c = 0; c < counts.length && boundaries.length() < shards - 1; c++) {
+			// Start a new shard at the first character past the next share of words
+			if (seen * shards >= (long) total * (boundaries.length() + 1) && counts[c] > 0) {
+				boundaries.append((char) c);
+			}
+			seen += counts[c];
+		}
+		return boundaries.toString().toCharArray();
+	}
+
+	/**
+	 * @param shards
+	 *            the number of shards
+	 * @return a partitioner by the hash of the words, which spreads them evenly
+	 *         but means every prediction has to ask every shard
+	 */
+	static Partitioner byHash(int shards) {
+		assert (shards > 0);
+
+		return new Partitioner() {
+
+			@Override
+			public int shards() {
+				return shards;
+			}
+
+			@Override
+			public int shardOf(String word) {
+				// Spread the bits, as String.hashCode() of similar words differ little
+				int h = word.hashCode() * 0x9e3779b9;
+				return Math.floorMod(h ^ (h >>> 16), shards);
+			}
+
+			@Override
+			public int firstShard(String prefix) {
+				return 0;
+			}
+
+			@Override
+			public int lastShard(String prefix) {
+				return shards - 1;
+			}
+
+		};
+	}
+
+}
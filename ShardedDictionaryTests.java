@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ShardedDictionaryTests {
+
+	private static final String[] WORDS = { "the", "then", "there", "these", "theme", "thermal", "tea", "team",
+			"tear", "to", "toe", "token", "a", "apple", "banana", "band", "zebra", "dog", "door", "mango" };
+
+	private static void assertAnswersLikeOneTree(ShardedDictionary unit, DictionaryTree expected) {
+		List<String> all = new ArrayList<>(unit.allWords());
+		List<String> expectedAll = new ArrayList<>(expected.allWords());
+		Collections.sort(all);
+		Collections.sort(expectedAll);
+		Assertions.assertEquals(expectedAll, all);
+		for (String prefix : Arrays.asList("", "t", "th", "the", "ther", "ba", "z", "x")) {
+			Assertions.assertEquals(expected.isPrefix(prefix), unit.isPrefix(prefix));
+			for (int n : new int[] { 1, 3, 10, 11, 25 }) {
+				Assertions.assertEquals(expected.predict(prefix, n), unit.predict(prefix, n), prefix + " " + n);
+			}
+		}
+		for (String word : WORDS) {
+			Assertions.assertEquals(expected.contains(word), unit.contains(word));
+		}
+	}
+
+	@Test
+	public void shouldAnswerLikeOneTreeWithEitherPartitioner() {
+		for (ShardedDictionary.Partitioner partitioner : Arrays.asList(ShardedDictionary.byHash(3),
+				ShardedDictionary.byRange('b', 'm', 'u'))) {
+			ShardedDictionary unit = new ShardedDictionary(partitioner, ForkJoinPool.commonPool());
+			DictionaryTree expected = new DictionaryTree();
+			for (int i = 0; i < WORDS.length; i++) {
+				unit.insert(WORDS[i], (i * 7) % WORDS.length);
+				expected.insert(WORDS[i], (i * 7) % WORDS.length);
+			}
+			Assertions.assertEquals(expected.remove("these"), unit.remove("these"));
+			Assertions.assertEquals(expected.remove("to"), unit.remove("to"));
+			unit.insert("the", 30);
+			expected.insert("the", 30);
+			assertAnswersLikeOneTree(unit, expected);
+		}
+	}
+
+	@Test
+	public void buildShouldGiveTheSameWordsAsOneTree() {
+		DictionaryTree expected = DictionaryTree.build(WORDS, ForkJoinPool.commonPool());
+		ShardedDictionary unit = ShardedDictionary.build(WORDS, ShardedDictionary.byHash(4), ForkJoinPool.commonPool());
+		assertAnswersLikeOneTree(unit, expected);
+		Assertions.assertEquals(WORDS.length, Arrays.stream(unit.shardSizes()).sum());
+	}
+
+	@Test
+	public void loadShardShouldOnlyReplaceThatShard() {
+		ShardedDictionary.Partitioner partitioner = ShardedDictionary.byRange('m');
+		ShardedDictionary unit = ShardedDictionary.build(WORDS, partitioner, ForkJoinPool.commonPool());
+		DictionaryTree old = unit.loadShard(1, new String[] { "zoo", "apricot", "tree" });
+		Assertions.assertTrue(old.contains("the"));
+		Assertions.assertTrue(unit.contains("apple"));
+		Assertions.assertFalse(unit.contains("apricot"));
+		Assertions.assertFalse(unit.contains("the"));
+		Assertions.assertEquals(Arrays.asList("zoo", "tree"), unit.predict("", 50).subList(0, 2));
+	}
+
+	@Test
+	public void balancedRangesShouldSplitTheWordsEvenly() {
+		String[] words = { "a1", "a2", "a3", "b1", "c1", "c2", "d1", "d2", "e1" };
+		Assertions.assertEquals("bd", new String(ShardedDictionary.balancedRanges(words, 3)));
+		Assertions.assertEquals("", new String(ShardedDictionary.balancedRanges(new String[] { "x" }, 4)));
+	}
+
+}
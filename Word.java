@@ -0,0 +1,28 @@
+import java.util.Map;
+
+class Word<K, V> implements Map.Entry<K, V> {
+
+	private final K key;
+	private V value;
+
+	public Word(K key, V value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	@Override
+	public K getKey() {
+		return key;
+	}
+
+	@Override
+	public V getValue() {
+		return value;
+	}
+
+	@Override
+	public V setValue(V value) {
+		return this.value = value;
+	}
+
+}
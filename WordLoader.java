@@ -0,0 +1,400 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams a word list into a dictionary, for lists too big to read into memory
+ * in one go (unlike CLI.readLines). The file is UTF-8, plain or gzipped (which
+ * is recognised by its first two bytes, not its name), in one of two formats:
+ *
+ * LINES is one word per line, most popular first, so each word's popularity
+ * is its line number, like CLI.loadWords.
+ *
+ * COUNTS is word&lt;TAB&gt;count per line, in any order. The file is read twice:
+ * once for the counts, which are sorted, and once to insert each word with the
+ * number of words with a higher count as its popularity, so that popularities
+ * are still ranks.
+ *
+ * The bytes are decoded with a CharsetDecoder into one reused CharBuffer, and
+ * lines are handled where they are in it (only a line split across two reads
+ * is copied, into a reused array of MAX_LINE characters), so the only String
+ * made for a line is the word that is inserted. So apart from the dictionary,
+ * the memory used is fixed: the buffers, and for COUNTS, 8 bytes per line for
+ * the counts.
+ *
+ * With normalise set, words are trimmed, lower-cased and put in Unicode
+ * normal form C, so " Tea" and "tea" are the same word. If two lines
+ * have the same normal form, the first one's popularity is kept (for COUNTS, it
+ * isn't added to the other's count).
+ */
+class WordLoader {
+
+	/**
+	 * The formats of word lists.
+	 */
+	enum Format {
+		LINES, COUNTS
+	}
+
+	/**
+	 * Told how loading is going, every PROGRESS_EVERY words and once at the end.
+	 */
+	interface Progress {
+
+		/**
+		 * @param words
+		 *            the number of words inserted so far
+		 * @param bytes
+		 *            the number of bytes read so far (after decompressing)
+		 * @param wordsPerSecond
+		 *            the words inserted per second so far
+		 */
+		void report(long words, long bytes, double wordsPerSecond);
+
+	}
+
+	static final int BUFFER_SIZE = 1 << 16;
+	static final int MAX_LINE = 1 << 12;
+	static final long PROGRESS_EVERY = 1 << 20;
+
+	private final Format format;
+	private final boolean normalise;
+	private final Progress progress;
+
+	/**
+	 * @param format
+	 *            the format of the files to load
+	 * @param normalise
+	 *            whether to trim, lower-case and NFC-normalise the words
+	 * @param progress
+	 *            told how loading is going, or null
+	 */
+	WordLoader(Format format, boolean normalise, Progress progress) {
+		this.format = format;
+		this.normalise = normalise;
+		this.progress = progress;
+	}
+
+	/**
+	 * Handles one line of a file.
+	 */
+	private interface LineHandler {
+
+		/**
+		 * @param text
+		 *            holds the line at [start, end), without its line break, and is
+		 *            reused once this returns (so it can be changed)
+		 * @param number
+		 *            the index of the line in the file
+		 * @throws IOException
+		 *             if the line is malformed
+		 */
+		void line(char[] text, int start, int end, long number) throws IOException;
+
+	}
+
+	/**
+	 * Inserts the words in a file into a dictionary.
+	 *
+	 * @param f
+	 *            the file to load
+	 * @param d
+	 *            the dictionary to insert the words into
+	 * @return d
+	 * @throws IOException
+	 *             if the file can't be read or isn't valid UTF-8 in the format, in
+	 *             which case the words before the problem have been inserted
+	 */
+	<D extends Dictionary> D load(File f, D d) throws IOException {
+		long start = System.nanoTime();
+		long[] inserted = { 0 };
+		long[] bytes = { 0 };
+		if (format == Format.LINES) {
+			read(f, bytes, (text, from, to, number) -> {
+				if (insert(d, text, from, to, (int) Math.min(number, Integer.MAX_VALUE))) {
+					progress(++inserted[0], bytes[0], start);
+				}
+			});
+		} else {
+			long[] counts = readCounts(f);
+			read(f, bytes, (text, from, to, number) -> {
+				if (isBlank(text, from, to)) {
+					return;
+				}
+				int tab = tab(text, from, to, number);
+				long count = count(text, tab, to, number);
+				// The number of counts that are higher
+				int higher = counts.length - upperBound(counts, count);
+				if (insert(d, text, from, tab, higher)) {
+					progress(++inserted[0], bytes[0], start);
+				}
+			});
+		}
+		if (progress != null) {
+			progress.report(inserted[0], bytes[0], inserted[0] / Math.max(1e-9, (System.nanoTime() - start) / 1e9));
+		}
+		return d;
+	}
+
+	private void progress(long words, long bytes, long start) {
+		if (progress != null && words % PROGRESS_EVERY == 0) {
+			progress.report(words, bytes, words / Math.max(1e-9, (System.nanoTime() - start) / 1e9));
+		}
+	}
+
+	/**
+	 * @return the counts in a COUNTS file, sorted
+	 */
+	private long[] readCounts(File f) throws IOException {
+		long[][] counts = { new long[1024] };
+		int[] size = { 0 };
+		read(f, new long[1], (text, from, to, number) -> {
+			if (isBlank(text, from, to)) {
+				return;
+			}
+			if (size[0] == counts[0].length) {
+				if (size[0] == Integer.MAX_VALUE - 8) {
+					throw new IOException("Too many words in " + f);
+				}
+				counts[0] = Arrays.copyOf(counts[0], (int) Math.min(2L * size[0], Integer.MAX_VALUE - 8));
+			}
+			counts[0][size[0]++] = count(text, tab(text, from, to, number), to, number);
+		});
+		long[] sorted = Arrays.copyOf(counts[0], size[0]);
+		counts[0] = null;
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Inserts text[start, end) as a word, normalised if normalise is set.
+	 *
+	 * @return whether a word was inserted
+	 */
+	private boolean insert(Dictionary d, char[] text, int start, int end, int popularity) {
+		String word = normalise ? normalise(text, start, end) : new String(text, start, end - start);
+		if (word.isEmpty() || (normalise && d.contains(word))) {
+			return false;
+		}
+		d.insert(word, popularity);
+		return true;
+	}
+
+	/**
+	 * Trims text[start, end), lower-cases it in place and puts it in Unicode
+	 * normal form C. ASCII is already in normal form, so only lines with other
+	 * characters go through Normalizer.
+	 */
+	static String normalise(char[] text, int start, int end) {
+		while (start < end && Character.isWhitespace(text[start])) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(text[end - 1])) {
+			end--;
+		}
+		boolean ascii = true;
+		for (int i = start; i < end; i++) {
+			ascii &= text[i] < 0x80;
+			text[i] = Character.toLowerCase(text[i]);
+		}
+		if (!ascii) {
+			CharBuffer view = CharBuffer.wrap(text, start, end - start);
+			if (!Normalizer.isNormalized(view, Normalizer.Form.NFC)) {
+				return Normalizer.normalize(view, Normalizer.Form.NFC);
+			}
+		}
+		return new String(text, start, end - start);
+	}
+
+	private static boolean isBlank(char[] text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(text[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the index of the last tab in a COUNTS line
+	 */
+	private static int tab(char[] text, int start, int end, long number) throws IOException {
+		for (int i = end - 1; i >= start; i--) {
+			if (text[i] == '\t') {
+				return i;
+			}
+		}
+		throw new IOException("Line " + (number + 1) + ": expected word<TAB>count");
+	}
+
+	/**
+	 * Parses the count after the tab of a COUNTS line, without making a String of
+	 * it. Counts too big for a long are taken as Long.MAX_VALUE.
+	 */
+	static long count(char[] text, int tab, int end, long number) throws IOException {
+		while (end > tab + 1 && Character.isWhitespace(text[end - 1])) {
+			end--;
+		}
+		if (end == tab + 1) {
+			throw new IOException("Line " + (number + 1) + ": missing count");
+		}
+		long count = 0;
+		for (int i = tab + 1; i < end; i++) {
+			char c = text[i];
+			if (c < '0' || c > '9') {
+				throw new IOException("Line " + (number + 1) + ": bad count");
+			}
+			count = count > (Long.MAX_VALUE - (c - '0')) / 10 ? Long.MAX_VALUE : count * 10 + (c - '0');
+		}
+		return count;
+	}
+
+	/**
+	 * @return the index of the first count greater than count in sorted
+	 */
+	private static int upperBound(long[] sorted, long count) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle] <= count) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads a file line by line, splitting the lines like
+	 * BufferedReader.readLine.
+	 *
+	 * @param read
+	 *            where the number of bytes read so far (after decompressing) is
+	 *            kept, at index 0
+	 */
+	private static void read(File f, long[] read, LineHandler handler) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		// The start of a line that didn't end in the last read
+		char[] carried = new char[MAX_LINE];
+		int carriedLength = 0;
+		long number = 0;
+		// Whether the last read ended with a \r
+		boolean afterReturn = false;
+		boolean end = false;
+		try (ReadableByteChannel channel = open(f)) {
+			while (true) {
+				if (!end) {
+					int n = channel.read(bytes);
+					end = n < 0;
+					read[0] += Math.max(0, n);
+				}
+				bytes.flip();
+				CoderResult result = decoder.decode(bytes, chars, end);
+				// The lines before the bad bytes are split first, to count them
+				boolean malformed = result.isError();
+				boolean done = end && result.isUnderflow() && decoder.flush(chars).isUnderflow();
+				bytes.compact();
+
+				char[] text = chars.array();
+				int limit = chars.position();
+				int i = 0;
+				if (afterReturn && limit > 0) {
+					// The \n of a \r\n split across two reads
+					afterReturn = false;
+					if (text[0] == '\n') {
+						i++;
+					}
+				}
+				int start = i;
+				for (; i < limit; i++) {
+					char c = text[i];
+					if (c == '\n' || c == '\r') {
+						if (carriedLength > 0) {
+							carriedLength = carry(carried, carriedLength, text, start, i, number);
+							handler.line(carried, 0, carriedLength, number++);
+							carriedLength = 0;
+						} else if (i - start > MAX_LINE) {
+							throw tooLong(number);
+						} else {
+							handler.line(text, start, i, number++);
+						}
+						if (c == '\r') {
+							if (i + 1 == limit) {
+								afterReturn = true;
+							} else if (text[i + 1] == '\n') {
+								i++;
+							}
+						}
+						start = i + 1;
+					}
+				}
+				carriedLength = carry(carried, carriedLength, text, start, limit, number);
+				chars.clear();
+				if (malformed) {
+					throw new IOException("Line " + (number + 1) + ": malformed UTF-8 in " + f);
+				}
+				if (done) {
+					break;
+				}
+			}
+		}
+		if (carriedLength > 0) {
+			handler.line(carried, 0, carriedLength, number);
+		}
+	}
+
+	/**
+	 * Appends text[start, end) to the carried line.
+	 *
+	 * @return the length of the carried line
+	 */
+	private static int carry(char[] carried, int length, char[] text, int start, int end, long number)
+			throws IOException {
+		if (length + end - start > MAX_LINE) {
+			throw tooLong(number);
+		}
+		System.arraycopy(text, start, carried, length, end - start);
+		return length + end - start;
+	}
+
+	private static IOException tooLong(long number) {
+		return new IOException("Line " + (number + 1) + " is longer than " + MAX_LINE + " characters");
+	}
+
+	/**
+	 * Opens a file, decompressing it if it starts with the gzip magic number.
+	 */
+	private static ReadableByteChannel open(File f) throws IOException {
+		FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(2);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// Files can be shorter than two bytes
+			}
+			channel.position(0);
+			if (magic.position() == 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b) {
+				return Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+			}
+			return channel;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+}
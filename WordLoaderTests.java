@@ -0,0 +1,152 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class WordLoaderTests {
+
+	private static File write(String text, boolean gzip) throws IOException {
+		File f = File.createTempFile("words", gzip ? ".gz" : ".txt");
+		f.deleteOnExit();
+		try (OutputStream out = gzip ? new GZIPOutputStream(new FileOutputStream(f)) : new FileOutputStream(f)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		return f;
+	}
+
+	private static DictionaryTree load(WordLoader.Format format, boolean normalise, File f) throws IOException {
+		return new WordLoader(format, normalise, null).load(f, new DictionaryTree());
+	}
+
+	@Test
+	public void shouldLoadLinesLikeLoadWords() throws IOException {
+		String text = "the\r\nof\rand\n\nto\na";
+		for (boolean gzip : new boolean[] { false, true }) {
+			File f = write(text, gzip);
+			DictionaryTree unit = load(WordLoader.Format.LINES, false, f);
+			Assertions.assertEquals(Arrays.asList("the", "of", "and", "to", "a"), unit.predict("", 10));
+			Assertions.assertEquals(5, unit.allWords().size());
+		}
+		File plain = write(text, false);
+		Assertions.assertEquals(Arrays.asList(CLI.readLines(plain)).subList(0, 3),
+				CLI.loadWords(plain).predict("", 3));
+	}
+
+	@Test
+	public void shouldLoadLinesLongerThanTheBuffer() throws IOException {
+		StringBuilder text = new StringBuilder();
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < 50_000; i++) {
+			words.add("w" + i);
+			text.append("w").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+		}
+		DictionaryTree unit = load(WordLoader.Format.LINES, false, write(text.toString(), true));
+		Assertions.assertEquals(words.size(), unit.allWords().size());
+		Assertions.assertEquals(words.subList(0, 5), unit.predict("", 5));
+		Assertions.assertEquals("w49999", unit.predict("w49999", 1).get(0));
+	}
+
+	@Test
+	public void shouldJoinALineBreakSplitAcrossReads() throws IOException {
+		StringBuilder text = new StringBuilder();
+		int words = 0;
+		while (text.length() < WordLoader.BUFFER_SIZE - 100) {
+			text.append("w").append(words++).append('\n');
+		}
+		// So that the \r is the last character of the first read
+		char[] padding = new char[WordLoader.BUFFER_SIZE - 1 - text.length()];
+		Arrays.fill(padding, 'x');
+		text.append(padding).append("\r\nlast\n");
+		Map<String, Integer> popularities = new HashMap<>();
+		new WordLoader(WordLoader.Format.LINES, false, null).load(write(text.toString(), false), new DictionaryTree() {
+			@Override
+			public void insert(String word, int popularity) {
+				popularities.put(word, popularity);
+			}
+		});
+		Assertions.assertEquals(words + 2, popularities.size());
+		Assertions.assertEquals(words, popularities.get(new String(padding)));
+		// Not words + 2, as it would be if the \n were taken as an empty line
+		Assertions.assertEquals(words + 1, popularities.get("last"));
+	}
+
+	@Test
+	public void shouldRankCounts() throws IOException {
+		File f = write("tea\t5\nthe\t100\nten\t5\nto\t40\n\ntoe\t1", false);
+		DictionaryTree unit = load(WordLoader.Format.COUNTS, false, f);
+		Assertions.assertEquals(Arrays.asList("the", "to", "tea", "ten", "toe"), unit.predict("", 10));
+		// Ties get the same rank, the number of words counted more often
+		Assertions.assertEquals(Arrays.asList("tea", "ten"), unit.predict("te", 2));
+		Assertions.assertEquals(Arrays.asList("the", "to", "tea", "ten", "toe"),
+				load(WordLoader.Format.COUNTS, false, write("toe\t1\nto\t40\nthe\t100\nten\t5\ntea\t5\n", true))
+						.predict("", 10));
+	}
+
+	@Test
+	public void shouldNormaliseWords() throws IOException {
+		// e followed by a combining acute accent, and the precomposed letter
+		String decomposed = "Cafe\u0301";
+		String composed = "caf\u00e9";
+		File f = write("  The \nthe\n" + decomposed + "\n" + composed + "\ncafe\n", false);
+		DictionaryTree unit = load(WordLoader.Format.LINES, true, f);
+		Assertions.assertEquals(Arrays.asList("the", composed, "cafe"), unit.predict("", 10));
+		Assertions.assertTrue(unit.contains(composed));
+		Assertions.assertFalse(unit.contains("The"));
+
+		DictionaryTree raw = load(WordLoader.Format.LINES, false, f);
+		Assertions.assertEquals(5, raw.allWords().size());
+	}
+
+	@Test
+	public void shouldRejectMalformedFiles() throws IOException {
+		Assertions.assertThrows(IOException.class,
+				() -> load(WordLoader.Format.COUNTS, false, write("the\t1\nof\n", false)));
+		Assertions.assertThrows(IOException.class,
+				() -> load(WordLoader.Format.COUNTS, false, write("the\t1\nof\tmany\n", false)));
+		Assertions.assertThrows(IOException.class,
+				() -> load(WordLoader.Format.COUNTS, false, write("the\t\n", false)));
+		File invalid = File.createTempFile("words", ".txt");
+		invalid.deleteOnExit();
+		Files.write(invalid.toPath(), new byte[] { 't', 'h', 'e', '\n', 'o', 'f', '\r', '\n', 'a', (byte) 0xff,
+				(byte) 0xfe, '\n', 't', 'o', '\n' });
+		IOException malformed = Assertions.assertThrows(IOException.class,
+				() -> load(WordLoader.Format.LINES, false, invalid));
+		Assertions.assertEquals("Line 3: malformed UTF-8 in " + invalid, malformed.getMessage());
+		char[] tooLong = new char[WordLoader.MAX_LINE + 1];
+		Arrays.fill(tooLong, 'a');
+		Assertions.assertThrows(IOException.class,
+				() -> load(WordLoader.Format.LINES, false, write(new String(tooLong), false)));
+		Assertions.assertThrows(IOException.class,
+				() -> CLI.loadWords(new File("no-such-file.txt"), new DictionaryTree()));
+	}
+
+	@Test
+	public void shouldReportProgress() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("w").append(i).append('\n');
+		}
+		File f = write(text.toString(), false);
+		long[] last = new long[3];
+		new WordLoader(WordLoader.Format.LINES, false, (words, bytes, wordsPerSecond) -> {
+			last[0]++;
+			last[1] = words;
+			last[2] = bytes;
+		}).load(f, new DictionaryTree());
+		Assertions.assertEquals(1, last[0]);
+		Assertions.assertEquals(1000, last[1]);
+		Assertions.assertEquals(f.length(), last[2]);
+	}
+
+}
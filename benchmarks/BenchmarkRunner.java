@@ -0,0 +1,463 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness in the style of JMH, which can't be used here as it
+ * refuses benchmark classes in the default package (where all of the
+ * dictionary classes live).
+ *
+ * Each benchmark is warmed up for a number of iterations and then measured for
+ * some more. Within an iteration the operation is called in batches sized so
+ * that a batch takes about BATCH_NANOS, which keeps the cost of reading the
+ * clock out of the result for fast operations. The harness reports the mean
+ * time per operation with a 99.9% confidence interval across iterations, the
+ * 50th/99th percentiles of the batch times (single calls for anything slower
+ * than BATCH_NANOS) and the bytes allocated per operation by the measuring
+ * thread, which is what JMH's GC profiler reports as gc.alloc.rate.norm.
+ *
+ * runThreads() measures an operation called from several threads at once
+ * instead, like a JMH benchmark with @Threads.
+ */
+public class BenchmarkRunner {
+
+	static final int WARMUP_ITERATIONS = 3;
+	static final int MEASUREMENT_ITERATIONS = 5;
+	static final long ITERATION_NANOS = 500_000_000L;
+	static final long BATCH_NANOS = 10_000L;
+
+	/**
+	 * An operation to measure.
+	 */
+	interface Operation {
+
+		/**
+		 * @param i
+		 *            the number of the call, for picking inputs
+		 * @return a result that will be consumed so the call can't be optimised away
+		 */
+		Object run(int i) throws Exception;
+
+	}
+
+	/**
+	 * The measurements for one benchmark.
+	 */
+	static class Result {
+
+		final String name;
+		final String engine;
+		final double nsPerOp;
+		final double error;
+		final double p50;
+		final double p99;
+		final double allocatedBytesPerOp;
+
+		Result(String name, String engine, double nsPerOp, double error, double p50, double p99,
+				double allocatedBytesPerOp) {
+			this.name = name;
+			this.engine = engine;
+			this.nsPerOp = nsPerOp;
+			this.error = error;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.allocatedBytesPerOp = allocatedBytesPerOp;
+		}
+
+		double opsPerSecond() {
+			return 1e9 / nsPerOp;
+		}
+
+	}
+
+	/**
+	 * Consumes results so that the JIT can't remove the calls that made them.
+	 */
+	static volatile Object sink;
+
+	/**
+	 * Tells the threads started by threadIteration() to stop.
+	 */
+	private static volatile boolean stopped;
+
+	private final Pattern filter;
+	private final String engine;
+	private final List<Result> results = new ArrayList<>();
+
+	/**
+	 * @param filter
+	 *            a regular expression; only benchmarks whose names contain a match
+	 *            are run
+	 * @param engine
+	 *            the name of the dictionary engine being measured, for the report
+	 */
+	BenchmarkRunner(String filter, String engine) {
+		this.filter = Pattern.compile(filter);
+		this.engine = engine;
+	}
+
+	/**
+	 * @return whether the benchmark with this name would be run
+	 */
+	boolean selected(String name) {
+		return filter.matcher(name).find();
+	}
+
+	/**
+	 * Measures an operation, if its name matches the filter.
+	 *
+	 * @param name
+	 *            the name of the benchmark
+	 * @param opsPerCall
+	 *            the number of operations done by each call, e.g. the number of
+	 *            words inserted by a bulk load, so times are per operation
+	 * @param op
+	 *            the operation
+	 */
+	void run(String name, int opsPerCall, Operation op) throws Exception {
+		if (!selected(name)) {
+			return;
+		}
+		System.out.printf("%-40s", name);
+		System.out.flush();
+
+		int batch = calibrate(op);
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration(op, batch, null);
+		}
+		// Calibrate again now that the JIT has compiled op
+		batch = calibrate(op);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		double[] means = new double[MEASUREMENT_ITERATIONS];
+		// Sized up front so that recording batch times doesn't allocate
+		Batches batches = new Batches(2 * MEASUREMENT_ITERATIONS * (int) (ITERATION_NANOS / BATCH_NANOS));
+		long calls = 0;
+		long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+			long[] done = iteration(op, batch, batches);
+			means[i] = (double) done[1] / done[0] / opsPerCall;
+			calls += done[0];
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+		double mean = Arrays.stream(means).average().getAsDouble();
+		double variance = Arrays.stream(means).map(m -> (m - mean) * (m - mean)).sum() / (means.length - 1);
+		// t-distribution for 4 degrees of freedom at 99.9%
+		double error = 8.610 * Math.sqrt(variance / means.length);
+		double p50 = batches.percentile(0.5) / opsPerCall;
+		double p99 = batches.percentile(0.99) / opsPerCall;
+
+		Result result = new Result(name, engine, mean, error, p50, p99, (double) allocated / calls / opsPerCall);
+		results.add(result);
+		System.out.printf("%14.1f +- %10.1f ns/op %14.0f ops/s  p50 %12.1f  p99 %12.1f  %10.1f B/op%n", result.nsPerOp,
+				result.error, result.opsPerSecond(), result.p50, result.p99, result.allocatedBytesPerOp);
+	}
+
+	/**
+	 * Measures an operation called from several threads at once, if its name
+	 * matches the filter. The time per operation is the iteration time divided by
+	 * the calls made by all of the threads, so opsPerSecond() is their combined
+	 * throughput. The percentiles are of the time per call seen by each thread in
+	 * each iteration, and the allocation is across all of the threads.
+	 *
+	 * @param name
+	 *            the name of the benchmark
+	 * @param threadCount
+	 *            the number of threads calling op
+	 * @param op
+	 *            the operation, which must be safe to call from several threads
+	 */
+	void runThreads(String name, int threadCount, Operation op) throws Exception {
+		if (!selected(name)) {
+			return;
+		}
+		System.out.printf("%-40s", name);
+		System.out.flush();
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			threadIteration(op, threadCount, null);
+		}
+
+		double[] means = new double[MEASUREMENT_ITERATIONS];
+		Batches perThread = new Batches(MEASUREMENT_ITERATIONS * threadCount);
+		long calls = 0;
+		long allocated = 0;
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+			long[] done = threadIteration(op, threadCount, perThread);
+			means[i] = (double) done[1] / done[0];
+			calls += done[0];
+			allocated += done[2];
+		}
+
+		double mean = Arrays.stream(means).average().getAsDouble();
+		double variance = Arrays.stream(means).map(m -> (m - mean) * (m - mean)).sum() / (means.length - 1);
+		double error = 8.610 * Math.sqrt(variance / means.length);
+
+		Result result = new Result(name, engine, mean, error, perThread.percentile(0.5), perThread.percentile(0.99),
+				(double) allocated / calls);
+		results.add(result);
+		System.out.printf("%14.1f +- %10.1f ns/op %14.0f ops/s  p50 %12.1f  p99 %12.1f  %10.1f B/op%n", result.nsPerOp,
+				result.error, result.opsPerSecond(), result.p50, result.p99, result.allocatedBytesPerOp);
+	}
+
+	/**
+	 * Calls an operation from several threads at once for a fixed time, timing
+	 * every call, like a load test. Unlike runThreads() this keeps every time, so
+	 * the tail of the distribution can be seen.
+	 *
+	 * @param threadCount
+	 *            the number of threads calling op
+	 * @param nanos
+	 *            how long to call it for
+	 * @param op
+	 *            the operation, which must be safe to call from several threads
+	 * @return the time of every call in nanoseconds, sorted
+	 */
+	static long[] timeEveryCall(int threadCount, long nanos, Operation op) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		long[][] times = new long[threadCount][];
+		int[] counts = new int[threadCount];
+		Thread[] workers = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			int thread = t;
+			workers[t] = new Thread(() -> {
+				long[] mine = new long[1 << 16];
+				int count = 0;
+				try {
+					start.await();
+					long end = System.nanoTime() + nanos;
+					int i = thread << 20;
+					for (long now = System.nanoTime(); now < end;) {
+						Object result = op.run(i++);
+						if (result == Batches.class) {
+							sink = result;
+						}
+						long after = System.nanoTime();
+						if (count == mine.length) {
+							mine = Arrays.copyOf(mine, 2 * count);
+						}
+						mine[count++] = after - now;
+						now = after;
+					}
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				}
+				times[thread] = mine;
+				counts[thread] = count;
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+
+		long[] all = new long[Arrays.stream(counts).sum()];
+		for (int t = 0, at = 0; t < threadCount; at += counts[t], t++) {
+			System.arraycopy(times[t], 0, all, at, counts[t]);
+		}
+		Arrays.sort(all);
+		return all;
+	}
+
+	/**
+	 * @param sorted
+	 *            the sorted times of calls, from timeEveryCall()
+	 * @param nanos
+	 *            how long the calls were made for
+	 * @return the throughput and the 50th/99th/99.9th percentile and maximum
+	 *         times of the calls
+	 */
+	static String latencySummary(long[] sorted, long nanos) {
+		int n = Math.max(1, sorted.length);
+		long[] times = sorted.length == 0 ? new long[1] : sorted;
+		return String.format("%,10.0f ops/s  p50 %8.3f ms  p99 %8.3f ms  p99.9 %8.3f ms  max %8.3f ms",
+				sorted.length / (nanos / 1e9), times[(int) (n * 0.5)] / 1e6, times[(int) (n * 0.99)] / 1e6,
+				times[(int) (n * 0.999)] / 1e6, times[n - 1] / 1e6);
+	}
+
+	/**
+	 * Calls op from threadCount threads until ITERATION_NANOS have passed.
+	 *
+	 * @param perThread
+	 *            collects the time per call of each thread, if not null
+	 * @return the number of calls made by all of the threads, the nanoseconds
+	 *         they took and the bytes they allocated
+	 */
+	private static long[] threadIteration(Operation op, int threadCount, Batches perThread) throws Exception {
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		long[] calls = new long[threadCount];
+		long[] times = new long[threadCount];
+		long[] allocated = new long[threadCount];
+		Thread[] workers = new Thread[threadCount];
+		stopped = false;
+
+		for (int t = 0; t < threadCount; t++) {
+			int thread = t;
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+					long id = Thread.currentThread().getId();
+					long allocatedBefore = mx.getThreadAllocatedBytes(id);
+					long began = System.nanoTime();
+					int i = thread << 20;
+					long n = 0;
+					while (!stopped) {
+						// Only publish the results that can't happen, so the threads don't
+						// all write to the same field
+						Object result = op.run(i++);
+						if (result == Batches.class) {
+							sink = result;
+						}
+						n++;
+					}
+					times[thread] = System.nanoTime() - began;
+					calls[thread] = n;
+					allocated[thread] = mx.getThreadAllocatedBytes(id) - allocatedBefore;
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			workers[t].start();
+		}
+
+		long began = System.nanoTime();
+		start.countDown();
+		Thread.sleep(ITERATION_NANOS / 1_000_000);
+		stopped = true;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - began;
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+
+		long totalCalls = 0;
+		long totalAllocated = 0;
+		for (int t = 0; t < threadCount; t++) {
+			totalCalls += calls[t];
+			totalAllocated += allocated[t];
+			if (perThread != null) {
+				perThread.add((double) times[t] / Math.max(1, calls[t]));
+			}
+		}
+		return new long[] { Math.max(1, totalCalls), elapsed, totalAllocated };
+	}
+
+	/**
+	 * @return the number of calls to make between reading the clock
+	 */
+	private static int calibrate(Operation op) throws Exception {
+		int calls = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink = op.run(calls++);
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 10 * BATCH_NANOS && calls < 1_000_000);
+		return (int) Math.max(1, calls * BATCH_NANOS / elapsed);
+	}
+
+	/**
+	 * Calls op in batches for ITERATION_NANOS (and at least one batch).
+	 *
+	 * @param batches
+	 *            collects the time per call of each batch, if not null
+	 * @return the number of calls made and the nanoseconds they took
+	 */
+	private static long[] iteration(Operation op, int batch, Batches batches) throws Exception {
+		long calls = 0;
+		long total = 0;
+		int i = 0;
+		while (total < ITERATION_NANOS) {
+			long start = System.nanoTime();
+			for (int j = 0; j < batch; j++) {
+				sink = op.run(i++);
+			}
+			long elapsed = System.nanoTime() - start;
+			total += elapsed;
+			calls += batch;
+			if (batches != null) {
+				batches.add((double) elapsed / batch);
+			}
+		}
+		return new long[] { calls, total };
+	}
+
+	/**
+	 * The time per call of each batch in the measurement iterations.
+	 */
+	private static class Batches {
+
+		private double[] times;
+		private int size = 0;
+
+		Batches(int capacity) {
+			times = new double[capacity];
+		}
+
+		void add(double time) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+			}
+			times[size++] = time;
+		}
+
+		double percentile(double p) {
+			double[] sorted = Arrays.copyOf(times, size);
+			Arrays.sort(sorted);
+			return sorted[(int) (size * p)];
+		}
+
+	}
+
+	/**
+	 * @return the results of the benchmarks run so far
+	 */
+	List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Writes the results of the benchmarks run so far as a JSON array.
+	 *
+	 * @param f
+	 *            the file to write to
+	 * @throws IOException
+	 *             if there was a problem writing to the file
+	 */
+	void writeJson(File f) throws IOException {
+		try (PrintWriter out = new PrintWriter(f, "UTF-8")) {
+			out.println("[");
+			for (int i = 0; i < results.size(); i++) {
+				Result r = results.get(i);
+				out.printf(Locale.ROOT,
+						"  {\"benchmark\": \"%s\", \"engine\": \"%s\", \"score\": %.3f, \"scoreError\": %.3f, "
+								+ "\"scoreUnit\": \"ns/op\", \"opsPerSecond\": %.1f, \"p50\": %.3f, \"p99\": %.3f, "
+								+ "\"gc.alloc.rate.norm\": %.3f}%s%n",
+						r.name, r.engine, r.nsPerOp, r.error, r.opsPerSecond(), r.p50, r.p99, r.allocatedBytesPerOp,
+						i < results.size() - 1 ? "," : "");
+			}
+			out.println("]");
+		}
+	}
+
+}
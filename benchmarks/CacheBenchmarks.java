@@ -0,0 +1,133 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Replays a trace of typed prefixes against a CachedDictionary, for each cache
+ * size and policy, and prints the hit rate and the memory the cache took after
+ * one pass, then measures the time per prediction against the dictionary
+ * without a cache.
+ *
+ * Usage: java CacheBenchmarks word-popularity.txt [engine] [filter] [results.json]
+ *
+ * The trace is TRACE_LENGTH prefixes of words picked with a Zipf distribution
+ * over their popularity rank, each typed out one character at a time (so short
+ * prefixes make up most of it). The ".writes" runs also insert the word being
+ * typed, with its own popularity, every WRITE_EVERY predictions, which doesn't
+ * change the dictionary but invalidates the predictions for the word's
+ * prefixes.
+ */
+public class CacheBenchmarks {
+
+	static final int TRACE_LENGTH = 1 << 20;
+	static final int WRITE_EVERY = 100;
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+		String engine = args.length > 1 ? args[1] : "tree";
+		String filter = args.length > 2 ? args[2] : "";
+		File results = new File(args.length > 3 ? args[3] : "benchmark-results.json");
+
+		String[] words = DictionaryBenchmarks.readWords(f);
+		Dictionary d = CLI.load(f, engine);
+		BenchmarkRunner runner = new BenchmarkRunner(filter, engine);
+		int[] typed = new int[TRACE_LENGTH];
+		String[] trace = trace(words, new Random(42), typed);
+		int mask = TRACE_LENGTH - 1;
+		long short3 = Arrays.stream(trace).filter(p -> p.length() <= 3).count();
+		System.out.printf("Trace: %,d predictions of %,d distinct prefixes, %.0f%% of them 1-3 characters%n",
+				trace.length, Arrays.stream(trace).distinct().count(), 100.0 * short3 / trace.length);
+
+		List<String> names = new ArrayList<>();
+		List<Supplier<PredictionCache>> caches = new ArrayList<>();
+		for (PredictionCache.Policy policy : PredictionCache.Policy.values()) {
+			String label = policy.name().toLowerCase(Locale.ROOT).replace("_", "");
+			for (int entries : new int[] { 1000, 10_000 }) {
+				names.add(label + ".entries" + entries);
+				caches.add(() -> PredictionCache.ofEntries(entries, policy));
+			}
+			names.add(label + ".bytes1m");
+			caches.add(() -> PredictionCache.ofBytes(1 << 20, policy));
+		}
+		// Room for every prefix in the trace, so that after the first pass every
+		// prediction is a hit
+		names.add("all");
+		caches.add(() -> PredictionCache.ofEntries(TRACE_LENGTH, PredictionCache.Policy.LRU));
+
+		for (int n : new int[] { 5, 20 }) {
+			runner.run("replay" + n + ".uncached", 1, i -> d.predict(trace[i & mask], n));
+			for (int c = 0; c < caches.size(); c++) {
+				for (boolean writes : new boolean[] { false, true }) {
+					replay(runner, "replay" + n + "." + names.get(c) + (writes ? ".writes" : ""), d, caches.get(c),
+							words, trace, typed, n, writes);
+				}
+			}
+		}
+
+		runner.writeJson(results);
+		System.out.println("Results written to " + results);
+	}
+
+	/**
+	 * Replays the whole trace into a new cache and prints its hit rate and the
+	 * memory it holds, then measures replaying it.
+	 */
+	private static void replay(BenchmarkRunner runner, String name, Dictionary d, Supplier<PredictionCache> cache,
+			String[] words, String[] trace, int[] typed, int n, boolean writes) throws Exception {
+		if (!runner.selected(name)) {
+			return;
+		}
+		long before = MemoryFootprint.usedHeap();
+		CachedDictionary cached = new CachedDictionary(d, cache.get());
+		for (int i = 0; i < TRACE_LENGTH; i++) {
+			replay(cached, words, trace, typed, i, n, writes);
+		}
+		long after = MemoryFootprint.usedHeap();
+		PredictionCache filled = cached.getCache();
+		System.out.printf("%-40shit rate %5.1f%%, %,6d entries, %,10d bytes%n", name, 100 * filled.hitRate(),
+				filled.size(), after - before);
+		runner.run(name, 1, i -> replay(cached, words, trace, typed, i & (TRACE_LENGTH - 1), n, writes));
+	}
+
+	/**
+	 * Predicts for trace[i], after inserting the word being typed if writes is set
+	 * and i is a multiple of WRITE_EVERY.
+	 */
+	private static Object replay(CachedDictionary d, String[] words, String[] trace, int[] typed, int i, int n,
+			boolean writes) {
+		if (writes && i % WRITE_EVERY == 0) {
+			d.insert(words[typed[i]], typed[i]);
+		}
+		return d.predict(trace[i], n);
+	}
+
+	/**
+	 * @param typed
+	 *            where the index of the word each prefix was typed from is put
+	 * @return TRACE_LENGTH prefixes, of words picked with a Zipf distribution
+	 *         over their rank and typed out in full
+	 */
+	static String[] trace(String[] words, Random random, int[] typed) {
+		double[] cumulative = new double[words.length];
+		double total = 0;
+		for (int i = 0; i < words.length; i++) {
+			total += 1.0 / (i + 1);
+			cumulative[i] = total;
+		}
+		String[] trace = new String[TRACE_LENGTH];
+		for (int i = 0; i < TRACE_LENGTH;) {
+			int found = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+			int index = found < 0 ? Math.min(-found - 1, words.length - 1) : found;
+			for (int length = 1; length <= words[index].length() && i < TRACE_LENGTH; length++) {
+				typed[i] = index;
+				trace[i++] = words[index].substring(0, length);
+			}
+		}
+		return trace;
+	}
+
+}
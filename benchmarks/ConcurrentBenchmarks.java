@@ -0,0 +1,92 @@
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how the read throughput of a ConcurrentDictionaryTree scales with
+ * the number of reading threads while another thread keeps writing to it.
+ *
+ * Usage: java ConcurrentBenchmarks word-popularity.txt [filter] [results.json] [writes per second]
+ *
+ * The readers call contains() and predict(prefix, 5) with 1, 2, 4, ... threads
+ * up to the number of available processors. The writer changes the popularity
+ * of random words and removes and re-inserts others, at the given rate (1000
+ * per second by default, 0 for no writer).
+ */
+public class ConcurrentBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+		String filter = args.length > 1 ? args[1] : "";
+		File results = new File(args.length > 2 ? args[2] : "benchmark-results.json");
+		int writesPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+		String[] words = DictionaryBenchmarks.readWords(f);
+		ConcurrentDictionaryTree d = (ConcurrentDictionaryTree) CLI.load(f, "concurrent");
+		BenchmarkRunner runner = new BenchmarkRunner(filter, "concurrent");
+		Random random = new Random(42);
+		String[] hits = DictionaryBenchmarks.sample(words, random, Integer.MAX_VALUE);
+		String[] prefixes = DictionaryBenchmarks.sample(words, random, 2);
+		int mask = DictionaryBenchmarks.SAMPLES - 1;
+
+		Writer writer = new Writer(d, words, writesPerSecond);
+		if (writesPerSecond > 0) {
+			writer.start();
+		}
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1;; threads = Math.min(2 * threads, processors)) {
+			runner.runThreads("contains.threads" + threads, threads, i -> d.contains(hits[i & mask]));
+			runner.runThreads("predict5.threads" + threads, threads, i -> d.predict(prefixes[i & mask], 5));
+			if (threads == processors) {
+				break;
+			}
+		}
+
+		writer.interrupt();
+		writer.join();
+		System.out.printf("%,d writes during the benchmarks%n", writer.writes);
+
+		runner.writeJson(results);
+		System.out.println("Results written to " + results);
+	}
+
+	/**
+	 * Writes to the dictionary at a fixed rate until interrupted.
+	 */
+	private static class Writer extends Thread {
+
+		private final ConcurrentDictionaryTree d;
+		private final String[] words;
+		private final long interval;
+		volatile long writes = 0;
+
+		Writer(ConcurrentDictionaryTree d, String[] words, int writesPerSecond) {
+			this.d = d;
+			this.words = words;
+			this.interval = writesPerSecond > 0 ? 1_000_000_000L / writesPerSecond : 0;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			Random random = new Random(7);
+			long next = System.nanoTime();
+			while (!isInterrupted()) {
+				int w = random.nextInt(words.length);
+				if (random.nextBoolean()) {
+					d.insert(words[w], random.nextInt(words.length));
+				} else {
+					d.remove(words[w]);
+					d.insert(words[w], w);
+				}
+				writes++;
+
+				next += interval;
+				LockSupport.parkNanos(next - System.nanoTime());
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,260 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks for loading a word list into a dictionary and for the hot
+ * queries on it.
+ *
+ * Usage: java DictionaryBenchmarks word-popularity.txt [engine] [filter] [results.json]
+ *
+ * The engine is one of the CLI's engine names (tree by default), and only
+ * benchmarks whose names contain a match for the filter regular expression are
+ * run. The structural queries only exist on DictionaryTree and
+ * RadixDictionaryTree, so they are skipped for the other engines.
+ */
+public class DictionaryBenchmarks {
+
+	/**
+	 * The number of inputs sampled for each lookup benchmark.
+	 */
+	static final int SAMPLES = 4096;
+
+	static final int MAX_PREFIX_LENGTH = 6;
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+		String engine = args.length > 1 ? args[1] : "tree";
+		String filter = args.length > 2 ? args[2] : "";
+		File results = new File(args.length > 3 ? args[3] : "benchmark-results.json");
+
+		String[] words = readWords(f);
+		Dictionary d = CLI.load(f, engine);
+		BenchmarkRunner runner = new BenchmarkRunner(filter, engine);
+		Random random = new Random(42);
+
+		if (!readOnly(engine)) {
+			runner.run("load.insert", words.length, i -> {
+				Dictionary loaded = CLI.newDictionary(engine);
+				for (int w = 0; w < words.length; w++) {
+					loaded.insert(words[w], w);
+				}
+				return loaded;
+			});
+		}
+		if (engine.equals("tree")) {
+			runner.run("load.build", words.length, i -> DictionaryTree.build(words, ForkJoinPool.commonPool()));
+		}
+		if (engine.startsWith("sharded")) {
+			runner.run("load.build", words.length, i -> CLI.buildSharded(words, engine));
+		}
+
+		String[] hits = sample(words, random, Integer.MAX_VALUE);
+		String[] misses = new String[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			// Mostly near-misses, which have to walk most of the way down
+			String hit = hits[i];
+			misses[i] = hit.substring(0, hit.length() - 1) + (char) (hit.charAt(hit.length() - 1) + 1) + "q";
+		}
+		runner.run("contains.hit", 1, i -> d.contains(hits[i & (SAMPLES - 1)]));
+		runner.run("contains.miss", 1, i -> d.contains(misses[i & (SAMPLES - 1)]));
+
+		for (int length = 0; length <= MAX_PREFIX_LENGTH; length++) {
+			String[] prefixes = sample(words, random, length);
+			runner.run("predict.prefix" + length, 1, i -> d.predict(prefixes[i & (SAMPLES - 1)]));
+			runner.run("predict5.prefix" + length, 1, i -> d.predict(prefixes[i & (SAMPLES - 1)], 5));
+		}
+
+		runner.run("allWords", 1, i -> d.allWords());
+
+		if (!readOnly(engine)) {
+			Map<String, Integer> popularities = new HashMap<>();
+			for (int w = 0; w < words.length; w++) {
+				popularities.put(words[w], w);
+			}
+			// Put each word straight back, so the dictionary stays the same size
+			runner.run("remove", 1, i -> {
+				String word = hits[i & (SAMPLES - 1)];
+				d.remove(word);
+				d.insert(word, popularities.get(word));
+				return d;
+			});
+		}
+
+		if (d instanceof DictionaryTree) {
+			DictionaryTree tree = (DictionaryTree) d;
+			runner.run("height", 1, i -> tree.height());
+			runner.run("size", 1, i -> tree.size());
+			runner.run("longestWord", 1, i -> tree.longestWord());
+			for (int length = 3; length <= 8; length++) {
+				String[] typos = typos(sample(words, random, length), random);
+				for (int edits = 1; edits <= 2; edits++) {
+					int maxEdits = edits;
+					runner.run("fuzzy" + edits + ".prefix" + length, 1,
+							i -> tree.predictFuzzy(typos[i & (SAMPLES - 1)], maxEdits, 5));
+				}
+			}
+
+			for (int batch : new int[] { 50, 4096 }) {
+				List<String> prefixes = new ArrayList<>();
+				for (int i = 0; i < batch; i++) {
+					prefixes.add(hits[i].substring(0, 1 + random.nextInt(Math.min(6, hits[i].length()))));
+				}
+				for (int n : new int[] { 5, 20 }) {
+					runner.run("predictLoop" + n + ".batch" + batch, batch, i -> {
+						List<List<String>> predictions = new ArrayList<>(prefixes.size());
+						for (String prefix : prefixes) {
+							predictions.add(tree.predict(prefix, n));
+						}
+						return predictions;
+					});
+					runner.run("predictAll" + n + ".batch" + batch, batch, i -> tree.predictAll(prefixes, n));
+				}
+			}
+
+			// Typing a whole word, with the top 5 after each keystroke
+			runner.run("typing.predict5", 1, i -> {
+				String word = hits[i & (SAMPLES - 1)];
+				Object last = null;
+				for (int k = 1; k <= word.length(); k++) {
+					last = tree.predict(word.substring(0, k), 5);
+				}
+				return last;
+			});
+			PredictionSession session = new PredictionSession(tree);
+			runner.run("typing.session5", 1, i -> {
+				String word = hits[i & (SAMPLES - 1)];
+				Object last = null;
+				session.reset();
+				for (int k = 0; k < word.length(); k++) {
+					session.type(word.charAt(k));
+					last = session.results(5);
+				}
+				return last;
+			});
+			runner.runThreads("recordSelection.threads" + Runtime.getRuntime().availableProcessors(),
+					Runtime.getRuntime().availableProcessors(), i -> tree.recordSelection(hits[i & (SAMPLES - 1)]));
+			runner.run("applySelections", SAMPLES, i -> {
+				for (String word : hits) {
+					tree.recordSelection(word);
+				}
+				tree.applySelections(0.9);
+				return tree;
+			});
+
+			runner.run("wordIterator", 1, i -> {
+				// Touch every word without copying it
+				int length = 0;
+				for (Iterator<CharSequence> all = tree.wordIterator(""); all.hasNext();) {
+					length += all.next().length();
+				}
+				return length;
+			});
+			runner.run("wordIterator.page50", 1, i -> {
+				Iterator<CharSequence> after = tree.wordIterator("", hits[i & (SAMPLES - 1)]);
+				String[] page = new String[50];
+				for (int w = 0; w < page.length && after.hasNext(); w++) {
+					page[w] = after.next().toString();
+				}
+				return page;
+			});
+			runner.run("fold.size", 1, i -> tree.fold(tree.sizeFun));
+			runner.run("intFold.size", 1, i -> tree.fold(DictionaryTree.SIZE_FOLD));
+			runner.run("parallelFold.size", 1, i -> tree.parallelFold(DictionaryTree.SIZE_FOLD, ForkJoinPool.commonPool()));
+
+			// The same lookups without and then with metrics recorded, one after the
+			// other so that they can be compared
+			if (runner.selected("metrics")) {
+				DictionaryMetrics metrics = new DictionaryMetrics();
+				String[][] prefixes = { sample(words, new Random(1), 1), sample(words, new Random(3), 3) };
+				for (String state : new String[] { "off", "on" }) {
+					tree.setMetrics(state.equals("on") ? metrics : null);
+					runner.run("metrics." + state + ".contains.hit", 1, i -> tree.contains(hits[i & (SAMPLES - 1)]));
+					for (String[] sampled : prefixes) {
+						for (int n : new int[] { 5, 50 }) {
+							runner.run("metrics." + state + ".predict" + n + ".prefix" + sampled[0].length(), 1,
+									i -> tree.predict(sampled[i & (SAMPLES - 1)], n));
+						}
+					}
+				}
+				tree.setMetrics(null);
+				System.out.print(metrics.dump());
+			}
+		} else if (d instanceof RadixDictionaryTree) {
+			RadixDictionaryTree tree = (RadixDictionaryTree) d;
+			runner.run("height", 1, i -> tree.height());
+			runner.run("size", 1, i -> tree.size());
+			runner.run("longestWord", 1, i -> tree.longestWord());
+		}
+
+		runner.writeJson(results);
+		System.out.println("Results written to " + results);
+	}
+
+	/**
+	 * @return whether the engine's dictionaries can't be changed
+	 */
+	static boolean readOnly(String engine) {
+		return engine.equals("dawg") || engine.equals("mapped") || engine.equals("louds");
+	}
+
+	/**
+	 * @return the words in the file, in popularity order
+	 */
+	static String[] readWords(File f) throws Exception {
+		List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+		return lines.stream().filter(w -> !w.isEmpty()).toArray(String[]::new);
+	}
+
+	/**
+	 * @return the prefixes, each with one character replaced by a random letter
+	 */
+	static String[] typos(String[] prefixes, Random random) {
+		String[] typos = new String[prefixes.length];
+		for (int i = 0; i < prefixes.length; i++) {
+			char[] chars = prefixes[i].toCharArray();
+			if (chars.length > 0) {
+				chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+			}
+			typos[i] = new String(chars);
+		}
+		return typos;
+	}
+
+	/**
+	 * Samples SAMPLES prefixes the way a user types them: words are picked with a
+	 * Zipf distribution over their popularity rank (so "the" is picked far more
+	 * often than "zygote"), and cut down to the given length.
+	 *
+	 * @param words
+	 *            the words, most popular first
+	 * @param length
+	 *            the length of the prefixes, or Integer.MAX_VALUE for whole words
+	 * @return the sampled prefixes
+	 */
+	static String[] sample(String[] words, Random random, int length) {
+		double[] cumulative = new double[words.length];
+		double total = 0;
+		for (int i = 0; i < words.length; i++) {
+			total += 1.0 / (i + 1);
+			cumulative[i] = total;
+		}
+
+		String[] samples = new String[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+			String word = words[index < 0 ? Math.min(-index - 1, words.length - 1) : index];
+			samples[i] = word.substring(0, Math.min(length, word.length()));
+		}
+		return samples;
+	}
+
+}
@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the cost of making a DurableDictionary's changes survive a crash:
+ * how long an insert waits for its log record to be synced under sustained
+ * load, and how long recovery takes.
+ *
+ * Usage: java DurabilityBenchmarks word-popularity.txt [filter] [results.json] [log records]
+ *
+ * insert.threadsN inserts from N threads at once (1, 4 and 16, as the threads
+ * spend most of their time waiting for fsyncs rather than on a processor), and
+ * also prints the 50th/99th/99.9th percentile and maximum latency of every
+ * insert over a few seconds of sustained load. recovery.log replays a log of
+ * 1,000,000 changes by default, and recovery.checkpoint loads the checkpoint
+ * taken of the result.
+ */
+public class DurabilityBenchmarks {
+
+	static final long LATENCY_NANOS = 3_000_000_000L;
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+		String filter = args.length > 1 ? args[1] : "";
+		File results = new File(args.length > 2 ? args[2] : "benchmark-results.json");
+		int records = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+
+		String[] words = DictionaryBenchmarks.readWords(f);
+		BenchmarkRunner runner = new BenchmarkRunner(filter, "durable");
+
+		for (int threads : new int[] { 1, 4, 16 }) {
+			String name = "insert.threads" + threads;
+			if (!runner.selected(name)) {
+				continue;
+			}
+			File directory = Files.createTempDirectory("durable").toFile();
+			try (DurableDictionary d = DurableDictionary.open(directory)) {
+				runner.runThreads(name, threads, i -> {
+					d.insert(words[i % words.length], i);
+					return null;
+				});
+				printLatencies(d, words, threads);
+			} finally {
+				delete(directory);
+			}
+		}
+
+		if (runner.selected("recovery")) {
+			File directory = Files.createTempDirectory("durable").toFile();
+			try {
+				writeLog(directory, words, records);
+				runner.run("recovery.log", records, i -> {
+					DurableDictionary d = DurableDictionary.open(directory);
+					d.close();
+					return d;
+				});
+				try (DurableDictionary d = DurableDictionary.open(directory)) {
+					d.checkpoint();
+					System.out.printf("Checkpoint of %,d words: %,d bytes%n", d.allWords().size(),
+							new File(directory, DurableDictionary.CHECKPOINT).length());
+				}
+				runner.run("recovery.checkpoint", 1, i -> {
+					DurableDictionary d = DurableDictionary.open(directory);
+					d.close();
+					return d;
+				});
+			} finally {
+				delete(directory);
+			}
+		}
+
+		runner.writeJson(results);
+		System.out.println("Results written to " + results);
+	}
+
+	/**
+	 * Inserts from the given number of threads for LATENCY_NANOS, timing every
+	 * insert, and prints the distribution of the times.
+	 */
+	private static void printLatencies(DurableDictionary d, String[] words, int threadCount) throws Exception {
+		long[][] latencies = new long[threadCount][];
+		int[] counts = new int[threadCount];
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			int thread = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(thread);
+				long[] times = new long[1 << 16];
+				int count = 0;
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long end = System.nanoTime() + LATENCY_NANOS;
+				for (long now = System.nanoTime(); now < end;) {
+					d.insert(words[random.nextInt(words.length)], random.nextInt(words.length));
+					long after = System.nanoTime();
+					if (count == times.length) {
+						times = Arrays.copyOf(times, 2 * count);
+					}
+					times[count++] = after - now;
+					now = after;
+				}
+				latencies[thread] = times;
+				counts[thread] = count;
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		int total = Arrays.stream(counts).sum();
+		long[] all = new long[total];
+		for (int t = 0, at = 0; t < threadCount; at += counts[t], t++) {
+			System.arraycopy(latencies[t], 0, all, at, counts[t]);
+		}
+		Arrays.sort(all);
+		System.out.printf("insert latency, %d threads: %,.0f inserts/s, p50 %.3f ms, p99 %.3f ms, "
+				+ "p99.9 %.3f ms, max %.3f ms%n", threadCount, total / (LATENCY_NANOS / 1e9),
+				all[(int) (total * 0.5)] / 1e6, all[(int) (total * 0.99)] / 1e6, all[(int) (total * 0.999)] / 1e6,
+				all[total - 1] / 1e6);
+	}
+
+	/**
+	 * Writes a log of random changes: mostly inserts with a popularity, and some
+	 * plain inserts and removes.
+	 */
+	private static void writeLog(File directory, String[] words, int records) throws IOException {
+		Random random = new Random(42);
+		try (MutationLog log = new MutationLog(DurableDictionary.logFile(directory, 0))) {
+			for (int i = 0; i < records; i++) {
+				String word = words[random.nextInt(words.length)];
+				int kind = random.nextInt(10);
+				if (kind == 0) {
+					log.append(MutationLog.REMOVE, word, 0);
+				} else if (kind == 1) {
+					log.append(MutationLog.INSERT, word, 0);
+				} else {
+					log.append(MutationLog.INSERT_WITH_POPULARITY, word, random.nextInt(words.length));
+				}
+			}
+		}
+		System.out.printf("Log of %,d changes: %,d bytes%n", records,
+				DurableDictionary.logFile(directory, 0).length());
+	}
+
+	private static void delete(File directory) {
+		File[] files = directory.listFiles();
+		for (File file : files == null ? new File[0] : files) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+}
@@ -0,0 +1,195 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares WordLoader with reading a whole file with CLI.readLines and with a
+ * BufferedReader, loading a generated word list of LINES words into a
+ * dictionary that only counts them, so that only the loading is measured.
+ *
+ * Usage: java LoaderBenchmarks word-popularity.txt [filter] [results.json]
+ *
+ * The list is the words of word-popularity.txt repeated with numbered
+ * suffixes, written as plain and gzipped LINES and COUNTS files. Before each
+ * benchmark is timed, one load is made while sampling the live heap every
+ * SAMPLE_EVERY words, and the largest sample above the heap before the load is
+ * printed. The times and allocations are per word.
+ */
+public class LoaderBenchmarks {
+
+	static final int LINES = 1 << 20;
+	static final int SAMPLE_EVERY = 1 << 18;
+
+	/**
+	 * A dictionary that only counts the words inserted into it, and can sample
+	 * the live heap as it goes.
+	 */
+	static class Sink implements Dictionary {
+
+		long words;
+		long baseline = -1;
+		long peak;
+
+		@Override
+		public void insert(String word) {
+			insert(word, 0);
+		}
+
+		@Override
+		public void insert(String word, int popularity) {
+			BenchmarkRunner.sink = word;
+			if (++words % SAMPLE_EVERY == 0 && baseline >= 0) {
+				peak = Math.max(peak, MemoryFootprint.usedHeap() - baseline);
+			}
+		}
+
+		@Override
+		public boolean remove(String word) {
+			return false;
+		}
+
+		@Override
+		public boolean contains(String word) {
+			return false;
+		}
+
+		@Override
+		public boolean isPrefix(String word) {
+			return false;
+		}
+
+		@Override
+		public Optional<String> predict(String prefix) {
+			return Optional.empty();
+		}
+
+		@Override
+		public List<String> predict(String prefix, int n) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<String> allWords() {
+			return Collections.emptyList();
+		}
+
+	}
+
+	/**
+	 * A way of loading a file into a dictionary.
+	 */
+	interface Loader {
+
+		void load(File f, Dictionary d) throws IOException;
+
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] words = DictionaryBenchmarks.readWords(new File(args[0]));
+		String filter = args.length > 1 ? args[1] : "";
+		File results = new File(args.length > 2 ? args[2] : "benchmark-results.json");
+
+		BenchmarkRunner runner = new BenchmarkRunner(filter, "loader");
+		File lines = generate(words, false, false);
+		File linesGzip = generate(words, false, true);
+		File counts = generate(words, true, false);
+		File countsGzip = generate(words, true, true);
+		System.out.printf("Files: %,d words; LINES %,d bytes (%,d gzipped), COUNTS %,d bytes (%,d gzipped)%n", LINES,
+				lines.length(), linesGzip.length(), counts.length(), countsGzip.length());
+
+		WordLoader linesLoader = new WordLoader(WordLoader.Format.LINES, false, null);
+		WordLoader normalising = new WordLoader(WordLoader.Format.LINES, true, null);
+		WordLoader countsLoader = new WordLoader(WordLoader.Format.COUNTS, false, null);
+
+		measure(runner, "load.lines.readlines", lines, (f, d) -> {
+			String[] read = CLI.readLines(f);
+			for (int i = 0; i < read.length; i++) {
+				d.insert(read[i], i);
+			}
+		});
+		measure(runner, "load.lines.bufferedreader", lines, (f, d) -> readLines(f, false, d));
+		measure(runner, "load.lines.wordloader", lines, linesLoader::load);
+		measure(runner, "load.lines.wordloader.normalise", lines, normalising::load);
+		measure(runner, "load.gzip.bufferedreader", linesGzip, (f, d) -> readLines(f, true, d));
+		measure(runner, "load.gzip.wordloader", linesGzip, linesLoader::load);
+		measure(runner, "load.counts.wordloader", counts, countsLoader::load);
+		measure(runner, "load.counts.gzip.wordloader", countsGzip, countsLoader::load);
+
+		for (File f : new File[] { lines, linesGzip, counts, countsGzip }) {
+			f.delete();
+		}
+		runner.writeJson(results);
+		System.out.println("Results written to " + results);
+	}
+
+	/**
+	 * Loads the file once while sampling the heap and prints the peak, then
+	 * measures loading it.
+	 */
+	private static void measure(BenchmarkRunner runner, String name, File f, Loader loader) throws Exception {
+		if (!runner.selected(name)) {
+			return;
+		}
+		Sink sampled = new Sink();
+		sampled.baseline = MemoryFootprint.usedHeap();
+		loader.load(f, sampled);
+		System.out.printf("%-40speak live heap %,12d bytes%n", name, sampled.peak);
+		runner.run(name, LINES, i -> {
+			Sink sink = new Sink();
+			loader.load(f, sink);
+			return sink.words;
+		});
+	}
+
+	/**
+	 * Loads a LINES file with a BufferedReader, as CLI.loadWords used to.
+	 */
+	private static void readLines(File f, boolean gzip, Dictionary d) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				gzip ? new GZIPInputStream(new FileInputStream(f)) : new FileInputStream(f), StandardCharsets.UTF_8))) {
+			String word;
+			int popularity = 0;
+			while ((word = reader.readLine()) != null) {
+				d.insert(word, popularity++);
+			}
+		}
+	}
+
+	/**
+	 * Writes LINES words, each word of the list followed by the number of times it
+	 * has been used before (after the first time), most popular first.
+	 */
+	static File generate(String[] words, boolean counts, boolean gzip) throws IOException {
+		File f = File.createTempFile("words", gzip ? ".gz" : ".txt");
+		f.deleteOnExit();
+		try (OutputStream out = gzip ? new GZIPOutputStream(new FileOutputStream(f)) : new FileOutputStream(f);
+				Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < LINES; i++) {
+				int round = i / words.length;
+				writer.write(words[i % words.length]);
+				if (round > 0) {
+					writer.write(Integer.toString(round));
+				}
+				if (counts) {
+					writer.write('\t');
+					writer.write(Integer.toString(LINES - i));
+				}
+				writer.write('\n');
+			}
+		}
+		return f;
+	}
+
+}
@@ -0,0 +1,115 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures building an NGramModel from a corpus, its memory per n-gram and
+ * the latency of predictNext.
+ *
+ * Usage: java NGramBenchmarks word-popularity.txt [filter] [results.json] [corpus.txt]
+ *
+ * Without a corpus, one of about 10 MB is generated from the word list: every
+ * word has a few favourite followers, picked most of the time, and otherwise
+ * the next word is picked with a Zipf distribution over popularity rank, so
+ * the n-grams have a realistic long tail.
+ */
+public class NGramBenchmarks {
+
+	static final int CORPUS_WORDS = 1_500_000;
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+		String filter = args.length > 1 ? args[1] : "";
+		File results = new File(args.length > 2 ? args[2] : "benchmark-results.json");
+		File corpus = args.length > 3 ? new File(args[3]) : generateCorpus(DictionaryBenchmarks.readWords(f));
+
+		DictionaryTree tree = CLI.loadWords(f);
+		BenchmarkRunner runner = new BenchmarkRunner(filter, "ngram");
+		System.out.printf("Corpus: %s, %,d bytes%n", corpus, corpus.length());
+
+		long before = MemoryFootprint.usedHeap();
+		NGramModel model = NGramModel.build(tree, corpus);
+		long after = MemoryFootprint.usedHeap();
+		long ngrams = (long) model.bigrams() + model.trigrams();
+		System.out.printf("Model: %,d bigrams, %,d trigrams, %,d bytes, %.1f bytes per n-gram%n", model.bigrams(),
+				model.trigrams(), after - before, (double) (after - before) / ngrams);
+
+		runner.run("ngram.build", (int) (corpus.length() / 1024), i -> NGramModel.build(tree, corpus));
+		System.out.println("(ngram.build is per KB of corpus)");
+
+		// Contexts and next words taken from the corpus itself
+		Random random = new Random(42);
+		String[] text = new String(Files.readAllBytes(corpus.toPath()), StandardCharsets.UTF_8).split("[ .\n]+");
+		int mask = DictionaryBenchmarks.SAMPLES - 1;
+		List<List<String>> contexts = new ArrayList<>();
+		String[] next = new String[DictionaryBenchmarks.SAMPLES];
+		for (int i = 0; i < DictionaryBenchmarks.SAMPLES; i++) {
+			int at = 2 + random.nextInt(text.length - 2);
+			contexts.add(Arrays.asList(text[at - 2], text[at - 1]));
+			next[i] = text[at];
+		}
+		for (int length = 0; length <= 3; length++) {
+			String[] prefixes = new String[next.length];
+			for (int i = 0; i < next.length; i++) {
+				prefixes[i] = next[i].substring(0, Math.min(length, next[i].length()));
+			}
+			runner.run("predictNext5.prefix" + length, 1,
+					i -> model.predictNext(contexts.get(i & mask), prefixes[i & mask], 5));
+			runner.run("predict5.prefix" + length, 1, i -> tree.predict(prefixes[i & mask], 5));
+		}
+
+		runner.writeJson(results);
+		System.out.println("Results written to " + results);
+	}
+
+	private static File generateCorpus(String[] words) throws IOException {
+		double[] cumulative = new double[words.length];
+		double total = 0;
+		for (int i = 0; i < words.length; i++) {
+			total += 1.0 / (i + 1);
+			cumulative[i] = total;
+		}
+
+		File corpus = File.createTempFile("corpus", ".txt");
+		corpus.deleteOnExit();
+		Random random = new Random(42);
+		try (Writer out = Files.newBufferedWriter(corpus.toPath(), StandardCharsets.UTF_8)) {
+			int previous = 0;
+			for (int w = 0, sentence = 0; w < CORPUS_WORDS; w++) {
+				int next;
+				if (sentence > 0 && random.nextInt(10) < 7) {
+					// One of the previous word's 8 favourites, mostly the first
+					Random favourites = new Random(previous);
+					int pick = Integer.numberOfTrailingZeros(random.nextInt() | 1 << 7);
+					next = 0;
+					for (int i = 0; i <= pick; i++) {
+						next = zipf(cumulative, total, favourites);
+					}
+				} else {
+					next = zipf(cumulative, total, random);
+				}
+				out.write(words[next]);
+				previous = next;
+				if (++sentence >= 5 && random.nextInt(10) == 0) {
+					out.write(".\n");
+					sentence = 0;
+				} else {
+					out.write(' ');
+				}
+			}
+		}
+		return corpus;
+	}
+
+	private static int zipf(double[] cumulative, double total, Random random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+		return index < 0 ? Math.min(-index - 1, cumulative.length - 1) : index;
+	}
+
+}
@@ -0,0 +1,130 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A load generator for PredictionServer: clients send requests back to back
+ * (a closed loop), and the throughput and the 50th/99th/99.9th percentile and
+ * maximum latency of every request are printed for each number of clients.
+ * The highest throughput is the most the server managed.
+ *
+ * Usage: java ServerBenchmarks word-popularity.txt [seconds per run] [server URL]
+ *
+ * Without a URL, the word list is loaded into a DictionaryTree and served from
+ * this JVM on a free port. The prefixes are sampled like in
+ * DictionaryBenchmarks, 1 to 4 characters long.
+ */
+public class ServerBenchmarks {
+
+	static final int[] CLIENTS = { 1, 4, 16, 64 };
+	static final int BATCH = 100;
+
+	public static void main(String[] args) throws Exception {
+		File f = new File(args[0]);
+		long nanos = (args.length > 1 ? Long.parseLong(args[1]) : 5) * 1_000_000_000L;
+
+		String[] words = DictionaryBenchmarks.readWords(f);
+		PredictionServer server = null;
+		String url;
+		if (args.length > 2) {
+			url = args[2];
+		} else {
+			PredictionServer.useNoDelay();
+			server = PredictionServer.start(CLI.load(f, "tree"),
+					new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			url = "http://localhost:" + server.getPort();
+			System.out.printf("Serving %,d words on %s with %s threads%n", words.length, url,
+					server.usesVirtualThreads() ? "virtual" : "platform");
+		}
+
+		Random random = new Random(42);
+		String[] prefixes = new String[DictionaryBenchmarks.SAMPLES];
+		for (int length = 1, i = 0; i < prefixes.length; length = length % 4 + 1) {
+			for (String prefix : DictionaryBenchmarks.sample(words, random, length)) {
+				if (i < prefixes.length) {
+					prefixes[i++] = URLEncoder.encode(prefix, StandardCharsets.UTF_8);
+				}
+			}
+		}
+		String[] hits = DictionaryBenchmarks.sample(words, random, Integer.MAX_VALUE);
+		List<String> batches = new ArrayList<>();
+		for (int b = 0; b < DictionaryBenchmarks.SAMPLES / BATCH; b++) {
+			List<String> batch = new ArrayList<>();
+			for (int i = 0; i < BATCH; i++) {
+				batch.add(hits[b * BATCH + i].substring(0, Math.min(3, hits[b * BATCH + i].length())));
+			}
+			batches.add(Json.array(batch));
+		}
+		int mask = DictionaryBenchmarks.SAMPLES - 1;
+
+		// Warm up the server and the client
+		BenchmarkRunner.timeEveryCall(4, nanos, i -> get(url + "/predict?n=5&prefix=" + prefixes[i & mask]));
+
+		double best = 0;
+		for (int clients : CLIENTS) {
+			long[] times = BenchmarkRunner.timeEveryCall(clients, nanos,
+					i -> get(url + "/predict?n=5&prefix=" + prefixes[i & mask]));
+			best = Math.max(best, times.length / (nanos / 1e9));
+			System.out.printf("GET /predict      %2d clients: %s%n", clients, BenchmarkRunner.latencySummary(times, nanos));
+		}
+		for (int clients : CLIENTS) {
+			long[] times = BenchmarkRunner.timeEveryCall(clients, nanos,
+					i -> get(url + "/contains?word=" + URLEncoder.encode(hits[i & mask], StandardCharsets.UTF_8)));
+			System.out.printf("GET /contains     %2d clients: %s%n", clients, BenchmarkRunner.latencySummary(times, nanos));
+		}
+		for (int clients : CLIENTS) {
+			long[] times = BenchmarkRunner.timeEveryCall(clients, nanos,
+					i -> post(url + "/predict?n=5", batches.get(i % batches.size())));
+			System.out.printf("POST /predict x%d %2d clients: %s%n", BATCH, clients,
+					BenchmarkRunner.latencySummary(times, nanos));
+		}
+		System.out.printf("Highest GET /predict throughput: %,.0f requests/s%n", best);
+
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	private static String get(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		return read(connection);
+	}
+
+	private static String post(String url, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "application/json");
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return read(connection);
+	}
+
+	/**
+	 * Reads the whole response, so that the connection can be kept alive and
+	 * used again.
+	 */
+	private static String read(HttpURLConnection connection) throws IOException {
+		if (connection.getResponseCode() != 200) {
+			throw new IOException(connection.getURL() + " returned " + connection.getResponseCode());
+		}
+		try (InputStream in = connection.getInputStream()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			in.transferTo(body);
+			return body.toString(StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+#!/bin/bash
+
+set -e
+
+if [ $# -lt 1 ]; then
+    echo "Usage: ./run-benchmarks.sh [SOURCE DIRECTORY] [ENGINE] [FILTER] [RESULTS FILE]"
+    echo "       BENCHMARKS=CacheBenchmarks ./run-benchmarks.sh [SOURCE DIRECTORY] [ENGINE] [FILTER] [RESULTS FILE]"
+    echo "       BENCHMARKS=ConcurrentBenchmarks ./run-benchmarks.sh [SOURCE DIRECTORY] [FILTER] [RESULTS FILE] [WRITES PER SECOND]"
+    echo "       BENCHMARKS=DurabilityBenchmarks ./run-benchmarks.sh [SOURCE DIRECTORY] [FILTER] [RESULTS FILE] [LOG RECORDS]"
+    echo "       BENCHMARKS=LoaderBenchmarks ./run-benchmarks.sh [SOURCE DIRECTORY] [FILTER] [RESULTS FILE]"
+    echo "       BENCHMARKS=NGramBenchmarks ./run-benchmarks.sh [SOURCE DIRECTORY] [FILTER] [RESULTS FILE] [CORPUS FILE]"
+    echo "       BENCHMARKS=ServerBenchmarks ./run-benchmarks.sh [SOURCE DIRECTORY] [SECONDS PER RUN] [SERVER URL]"
+    exit 1
+fi
+
+sourceDirectory=$1
+shift
+outputDirectory=$(mktemp -d)
+benchmarks=${BENCHMARKS:-DictionaryBenchmarks}
+
+function banner() {
+    echo "===== $1 ====="
+}
+
+function compileSource() {
+    banner "compiling source and benchmark files"
+    (set -x ; find "$sourceDirectory" -name '*.java' -not -name '*Tests.java' | xargs javac -d "$outputDirectory")
+}
+
+function runBenchmarks() {
+    banner "running benchmarks"
+    (set -x ; java -Xss16m -cp "$outputDirectory" "$benchmarks" "$sourceDirectory/word-popularity.txt" "$@")
+}
+
+compileSource
+runBenchmarks "$@"
+rm -rf "$outputDirectory"
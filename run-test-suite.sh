@@ -20,12 +20,12 @@ function clean() {
 
 function compileSource() {
     banner "compiling source files"
-    (set -x ; find "$sourceDirectory" -name '*.java' | xargs javac -cp junit.jar)
+    (set -x ; find "$sourceDirectory" -name '*.java' -not -path '*/benchmarks/*' | xargs javac -cp junit.jar)
 }
 
 function runTests() {
     banner "running tests"
-    (set -x ; java -jar junit.jar --cp "$sourceDirectory" -c DictionaryTreeTests)
+    (set -x ; java -jar junit.jar --cp "$sourceDirectory" -c DictionaryTreeTests -c CompactDictionaryTreeTests -c RadixDictionaryTreeTests -c DawgDictionaryTests -c MappedDictionaryTests -c ConcurrentDictionaryTreeTests -c PredictionSessionTests -c DurableDictionaryTests -c NGramModelTests -c ShardedDictionaryTests -c PredictionServerTests -c DictionaryMetricsTests -c CachedDictionaryTests -c WordLoaderTests -c LoudsDictionaryTests)
 }
 
 clean